@@ -53,6 +53,34 @@ layout(std430, binding = 0) readonly buffer modelbuffer_in {
   modelinfo ol[];
 };
 
+#include vertex_config
+
+#ifdef MODEL_CACHE
+// set on models whose geometry is resident in the model cache buffers
+#define FLAG_MODEL_CACHE (1 << 27)
+#endif
+
+#ifdef INDEXED_SCENE
+// one index per scene vertex into the unique vertices in vb and texb
+layout(std430, binding = 7) readonly buffer sceneindex_in {
+  uint sceneindex[];
+};
+
+#define scene_index(i) sceneindex[i]
+#else
+#define scene_index(i) (i)
+#endif
+
+#ifdef PACKED_VERTICES
+// 3 ints per vertex: x | y << 16, z, alpha/priority/hsl
+layout(std430, binding = 1) readonly buffer vertexbuffer_in {
+  int vb[];
+};
+
+layout(std430, binding = 2) readonly buffer tempvertexbuffer_in {
+  int tempvb[];
+};
+#else
 layout(std430, binding = 1) readonly buffer vertexbuffer_in {
   ivec4 vb[];
 };
@@ -60,6 +88,7 @@ layout(std430, binding = 1) readonly buffer vertexbuffer_in {
 layout(std430, binding = 2) readonly buffer tempvertexbuffer_in {
   ivec4 tempvb[];
 };
+#endif
 
 layout(std430, binding = 3) writeonly buffer vertex_out {
   ivec4 vout[];
@@ -69,10 +98,101 @@ layout(std430, binding = 4) writeonly buffer uv_out {
   vec4 uvout[];
 };
 
+#ifdef PACKED_VERTICES
+// 2 uints per vertex: texture | half u << 16, half v | half w << 16
+layout(std430, binding = 5) readonly buffer texturebuffer_in {
+  uint texb[];
+};
+
+layout(std430, binding = 6) readonly buffer temptexturebuffer_in {
+  uint temptexb[];
+};
+
+#ifdef MODEL_CACHE
+layout(std430, binding = 8) readonly buffer cachevertexbuffer_in {
+  int cachevb[];
+};
+
+layout(std430, binding = 9) readonly buffer cachetexturebuffer_in {
+  uint cachetexb[];
+};
+#endif
+
+ivec4 unpack_vertex(int a, int b, int c) {
+  return ivec4((a << 16) >> 16, a >> 16, (b << 16) >> 16, c);
+}
+
+vec4 unpack_uv(uint a, uint b) {
+  return vec4(float(a & 0xffffu), unpackHalf2x16(a).y, unpackHalf2x16(b));
+}
+
+// Grab a vertex from the scene buffer if flags is negative, the model cache if flagged, otherwise from the temp buffer
+ivec4 get_vertex(int flags, uint i) {
+  if (flags < 0) {
+    uint j = scene_index(i);
+    return unpack_vertex(vb[j * 3u], vb[j * 3u + 1u], vb[j * 3u + 2u]);
+#ifdef MODEL_CACHE
+  } else if ((flags & FLAG_MODEL_CACHE) != 0) {
+    return unpack_vertex(cachevb[i * 3u], cachevb[i * 3u + 1u], cachevb[i * 3u + 2u]);
+#endif
+  } else {
+    return unpack_vertex(tempvb[i * 3u], tempvb[i * 3u + 1u], tempvb[i * 3u + 2u]);
+  }
+}
+
+vec4 get_uv(int flags, uint i) {
+  if (flags < 0) {
+    uint j = scene_index(i);
+    return unpack_uv(texb[j * 2u], texb[j * 2u + 1u]);
+#ifdef MODEL_CACHE
+  } else if ((flags & FLAG_MODEL_CACHE) != 0) {
+    return unpack_uv(cachetexb[i * 2u], cachetexb[i * 2u + 1u]);
+#endif
+  } else {
+    return unpack_uv(temptexb[i * 2u], temptexb[i * 2u + 1u]);
+  }
+}
+#else
 layout(std430, binding = 5) readonly buffer texturebuffer_in {
   vec4 texb[];
 };
 
 layout(std430, binding = 6) readonly buffer temptexturebuffer_in {
   vec4 temptexb[];
-};
\ No newline at end of file
+};
+
+#ifdef MODEL_CACHE
+layout(std430, binding = 8) readonly buffer cachevertexbuffer_in {
+  ivec4 cachevb[];
+};
+
+layout(std430, binding = 9) readonly buffer cachetexturebuffer_in {
+  vec4 cachetexb[];
+};
+#endif
+
+// Grab a vertex from the scene buffer if flags is negative, the model cache if flagged, otherwise from the temp buffer
+ivec4 get_vertex(int flags, uint i) {
+  if (flags < 0) {
+    return vb[scene_index(i)];
+#ifdef MODEL_CACHE
+  } else if ((flags & FLAG_MODEL_CACHE) != 0) {
+    return cachevb[i];
+#endif
+  } else {
+    return tempvb[i];
+  }
+}
+
+vec4 get_uv(int flags, uint i) {
+  if (flags < 0) {
+    return texb[scene_index(i)];
+#ifdef MODEL_CACHE
+  } else if ((flags & FLAG_MODEL_CACHE) != 0) {
+    return cachetexb[i];
+#endif
+  } else {
+    return temptexb[i];
+  }
+}
+#endif
@@ -27,7 +27,11 @@
 
 #include "comp_common.glsl"
 
-layout(local_size_x = 6) in;
+// tile paints and tile models have at most 6 faces, other models loop over theirs
+layout(local_size_x = 64) in;
+
+#include "common.glsl"
+#include "hillskew.glsl"
 
 void main() {
   uint groupId = gl_WorkGroupID.x;
@@ -40,44 +44,40 @@ void main() {
   int toffset = minfo.toffset;
   int flags = minfo.flags;
 
-  if (localId >= size) {
-    return;
-  }
+  ivec4 pos = ivec4(minfo.x, minfo.y, minfo.z, 0);
+  int orientation = flags & 0x7ff;
+  int plane = (flags >> 24) & 3;
+  int hillskew = (flags >> 26) & 1;
 
-  uint ssboOffset = localId;
-  ivec4 thisA, thisB, thisC;
+  // faces are written in model order, so these models must not need sorting
+  for (uint face = localId; face < size; face += gl_WorkGroupSize.x) {
+    // Grab triangle vertices from the correct buffer
+    ivec4 thisA = get_vertex(flags, offset + face * 3);
+    ivec4 thisB = get_vertex(flags, offset + face * 3 + 1);
+    ivec4 thisC = get_vertex(flags, offset + face * 3 + 2);
 
-  // Grab triangle vertices from the correct buffer
-  if (flags < 0) {
-    thisA = vb[offset + ssboOffset * 3];
-    thisB = vb[offset + ssboOffset * 3 + 1];
-    thisC = vb[offset + ssboOffset * 3 + 2];
-  } else {
-    thisA = tempvb[offset + ssboOffset * 3];
-    thisB = tempvb[offset + ssboOffset * 3 + 1];
-    thisC = tempvb[offset + ssboOffset * 3 + 2];
-  }
+    // rotate for model orientation, position in scene and apply hillskew
+    thisA = hillskew_vertex(pos + rotate(thisA, orientation), hillskew, minfo.y, plane);
+    thisB = hillskew_vertex(pos + rotate(thisB, orientation), hillskew, minfo.y, plane);
+    thisC = hillskew_vertex(pos + rotate(thisC, orientation), hillskew, minfo.y, plane);
 
-  uint myOffset = localId;
-  ivec4 pos = ivec4(minfo.x, minfo.y, minfo.z, 0);
-  ivec4 texPos = pos.wxyz;
+    // write to out buffer
+    vout[outOffset + face * 3] = thisA;
+    vout[outOffset + face * 3 + 1] = thisB;
+    vout[outOffset + face * 3 + 2] = thisC;
 
-  // position vertices in scene and write to out buffer
-  vout[outOffset + myOffset * 3] = pos + thisA;
-  vout[outOffset + myOffset * 3 + 1] = pos + thisB;
-  vout[outOffset + myOffset * 3 + 2] = pos + thisC;
+    if (toffset < 0) {
+      uvout[outOffset + face * 3] = vec4(0);
+      uvout[outOffset + face * 3 + 1] = vec4(0);
+      uvout[outOffset + face * 3 + 2] = vec4(0);
+    } else {
+      vec4 texA = get_uv(flags, toffset + face * 3);
+      vec4 texB = get_uv(flags, toffset + face * 3 + 1);
+      vec4 texC = get_uv(flags, toffset + face * 3 + 2);
 
-  if (toffset < 0) {
-    uvout[outOffset + myOffset * 3] = vec4(0);
-    uvout[outOffset + myOffset * 3 + 1] = vec4(0);
-    uvout[outOffset + myOffset * 3 + 2] = vec4(0);
-  } else if (flags >= 0) {
-    uvout[outOffset + myOffset * 3] = texPos + temptexb[toffset + localId * 3];
-    uvout[outOffset + myOffset * 3 + 1] = texPos + temptexb[toffset + localId * 3 + 1];
-    uvout[outOffset + myOffset * 3 + 2] = texPos + temptexb[toffset + localId * 3 + 2];
-  } else {
-    uvout[outOffset + myOffset * 3] = texPos + texb[toffset + localId * 3];
-    uvout[outOffset + myOffset * 3 + 1] = texPos + texb[toffset + localId * 3 + 1];
-    uvout[outOffset + myOffset * 3 + 2] = texPos + texb[toffset + localId * 3 + 2];
+      uvout[outOffset + face * 3] = vec4(texA.x, rotatef(texA.yzw, orientation) + pos.xyz);
+      uvout[outOffset + face * 3 + 1] = vec4(texB.x, rotatef(texB.yzw, orientation) + pos.xyz);
+      uvout[outOffset + face * 3 + 2] = vec4(texC.x, rotatef(texC.yzw, orientation) + pos.xyz);
+    }
   }
 }
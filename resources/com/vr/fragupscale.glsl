@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2018, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+#version 330
+
+#define SAMPLING_MITCHELL 1
+#define SAMPLING_CATROM 2
+
+uniform sampler2DArray tex;
+uniform int layer;
+uniform vec2 scale;
+
+#include "scale/bicubic.glsl"
+
+in vec2 TexCoord;
+
+out vec4 FragColor;
+
+// Catmull-Rom upscale of the reduced resolution eye, the same kernel as textureCubic() but reading
+// one layer, and clamped to the part of the layer the scene was drawn to.
+void main() {
+  vec2 texSize = vec2(textureSize(tex, 0).xy);
+  vec2 texelSize = 1.0 / texSize;
+  vec2 minCoord = 0.5 * texelSize;
+  vec2 maxCoord = scale - 0.5 * texelSize;
+
+  vec2 texelFCoords = TexCoord * texSize - 0.5;
+  vec2 coordFract = fract(texelFCoords);
+  vec2 texCoords = (texelFCoords - coordFract + 0.5) * texelSize;
+
+  vec4 nSum = vec4(0.0);
+  vec4 nDenom = vec4(0.0);
+  vec4 min_sample = vec4(FLT_MAX);
+  vec4 max_sample = vec4(FLT_MIN);
+  for (int m = -1; m <= 2; m++) {
+    for (int n = -1; n <= 2; n++) {
+      vec2 uv = clamp(texCoords + vec2(m, n) * texelSize, minCoord, maxCoord);
+      vec4 vecData = texture(tex, vec3(uv, layer));
+
+      min_sample = min(min_sample, vecData);
+      max_sample = max(max_sample, vecData);
+
+      float w = catmull_rom(d(vec2(m, n), coordFract));
+      nSum += vecData * w;
+      nDenom += w;
+    }
+  }
+
+  vec4 c = nSum / nDenom;
+  // anti-ringing, as in textureCubic()
+  c = mix(c, clamp(c, min_sample, max_sample), CR_AR_STRENGTH);
+  c.a = 1.0;
+
+  FragColor = c;
+}
@@ -24,7 +24,7 @@
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
-#version 330
+#include geometry_header
 
 #include texture_config
 
@@ -32,7 +32,12 @@
 // 128x128px - so this is equivalent to +1px
 #define TEXTURE_ANIM_UNIT (1.0f / 128.0f)
 
+#ifdef STEREO_VIEWS
+// one invocation per eye, each writing its copy of the triangle to that eye's layer
+layout(triangles, invocations = STEREO_VIEWS) in;
+#else
 layout(triangles) in;
+#endif
 layout(triangle_strip, max_vertices = 3) out;
 
 layout(std140) uniform uniforms {
@@ -53,8 +58,13 @@ uniform vec2 textureAnimations[TEXTURE_COUNT];
 uniform int tick;
 uniform mat4 projectionMatrix;
 
+#ifdef STEREO_VIEWS
+uniform mat4 viewMatrix[STEREO_VIEWS];
+uniform mat4 projection[STEREO_VIEWS];
+#else
 uniform mat4 viewMatrix;
 uniform mat4 projection;
+#endif
 
 in ivec3 gVertex[3];
 in vec4 gColor[3];
@@ -87,13 +97,22 @@ void main() {
     uv[2] = vec2(0);
   }
 
+#ifdef STEREO_VIEWS
+  mat4 eyeMatrix = projection[gl_InvocationID] * viewMatrix[gl_InvocationID] * projectionMatrix;
+#else
+  mat4 eyeMatrix = projection * viewMatrix * projectionMatrix;
+#endif
+
   for (int i = 0; i < 3; ++i) {
     fColor = gColor[i];
     fHsl = gHsl[i];
     fTextureId = gTextureId[i];
     fUv = uv[i];
     fFogAmount = gFogAmount[i]; //
-    gl_Position = projection * viewMatrix * projectionMatrix * vec4(gVertex[i], 1);
+    gl_Position = eyeMatrix * vec4(gVertex[i], 1);
+#ifdef STEREO_VIEWS
+    gl_Layer = gl_InvocationID;
+#endif
     EmitVertex();
   }
 
@@ -23,7 +23,7 @@
  * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
-layout(binding = 2) uniform isampler3D tileHeightSampler;
+#include "hillskew.glsl"
 
 // Calculate adjusted priority for a face with a given priority, distance, and
 // model global min10 and face distance averages. This allows positioning faces
@@ -108,15 +108,9 @@ void get_face(uint localId, modelinfo minfo, float cameraYaw, float cameraPitch,
   ivec4 thisC;
 
   // Grab triangle vertices from the correct buffer
-  if (flags < 0) {
-    thisA = vb[offset + ssboOffset * 3];
-    thisB = vb[offset + ssboOffset * 3 + 1];
-    thisC = vb[offset + ssboOffset * 3 + 2];
-  } else {
-    thisA = tempvb[offset + ssboOffset * 3];
-    thisB = tempvb[offset + ssboOffset * 3 + 1];
-    thisC = tempvb[offset + ssboOffset * 3 + 2];
-  }
+  thisA = get_vertex(flags, offset + ssboOffset * 3);
+  thisB = get_vertex(flags, offset + ssboOffset * 3 + 1);
+  thisC = get_vertex(flags, offset + ssboOffset * 3 + 2);
 
   if (localId < size) {
     int radius = (flags >> 12) & 0xfff;
@@ -212,26 +206,6 @@ void insert_face(uint localId, modelinfo minfo, int adjPrio, int distance, int p
   }
 }
 
-int tile_height(int z, int x, int y) {
-#define ESCENE_OFFSET 40 // (184-104)/2
-  return texelFetch(tileHeightSampler, ivec3(x + ESCENE_OFFSET, y + ESCENE_OFFSET, z), 0).r << 3;
-}
-
-ivec4 hillskew_vertex(ivec4 v, int hillskew, int y, int plane) {
-  if (hillskew == 1) {
-    int px = v.x & 127;
-    int pz = v.z & 127;
-    int sx = v.x >> 7;
-    int sz = v.z >> 7;
-    int h1 = px * tile_height(plane, sx + 1, sz) + (128 - px) * tile_height(plane, sx, sz) >> 7;
-    int h2 = px * tile_height(plane, sx + 1, sz + 1) + (128 - px) * tile_height(plane, sx, sz + 1) >> 7;
-    int h3 = pz * h2 + (128 - pz) * h1 >> 7;
-    return ivec4(v.x, v.y + h3 - y, v.z, v.w);
-  } else {
-    return v;
-  }
-}
-
 void sort_and_insert(uint localId, modelinfo minfo, int thisPriority, int thisDistance, ivec4 thisrvA, ivec4 thisrvB, ivec4 thisrvC) {
   int size = minfo.size;
 
@@ -278,17 +252,9 @@ void sort_and_insert(uint localId, modelinfo minfo, int thisPriority, int thisDi
       uvout[outOffset + myOffset * 3 + 1] = vec4(0);
       uvout[outOffset + myOffset * 3 + 2] = vec4(0);
     } else {
-      vec4 texA, texB, texC;
-
-      if (flags >= 0) {
-        texA = temptexb[toffset + localId * 3];
-        texB = temptexb[toffset + localId * 3 + 1];
-        texC = temptexb[toffset + localId * 3 + 2];
-      } else {
-        texA = texb[toffset + localId * 3];
-        texB = texb[toffset + localId * 3 + 1];
-        texC = texb[toffset + localId * 3 + 2];
-      }
+      vec4 texA = get_uv(flags, toffset + localId * 3);
+      vec4 texB = get_uv(flags, toffset + localId * 3 + 1);
+      vec4 texC = get_uv(flags, toffset + localId * 3 + 2);
 
       int orientation = flags & 0x7ff;
       uvout[outOffset + myOffset * 3] = vec4(texA.x, rotatef(texA.yzw, orientation) + pos.xyz);
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A bucket of temporary models sorted by a single compute dispatch. Each tier is sized for models of
+ * up to {@link #size} faces, so that a model is sorted by the smallest workgroup able to hold it
+ * rather than paying for the shared memory and idle threads of the largest one.
+ */
+@Slf4j
+class ComputeTier
+{
+	static final String DEFAULT_TIERS = "128,512,1024,2048,6144";
+
+	// GL_MAX_COMPUTE_WORK_GROUP_INVOCATIONS is at least 1024
+	private static final int MAX_THREAD_COUNT = 1024;
+
+	/**
+	 * largest face count of models in this tier
+	 */
+	final int size;
+	final int threadCount;
+	final int facesPerThread;
+
+	final GLBuffer glBuffer;
+	final PersistentBuffer streamBuffer;
+	GpuIntBuffer modelBuffer;
+
+	/**
+	 * number of models in this tier this frame
+	 */
+	int models;
+
+	int glProgram = -1;
+	int uniBlock;
+
+	private ComputeTier(int size)
+	{
+		this.size = size;
+		threadCount = Math.min(size, MAX_THREAD_COUNT);
+		facesPerThread = (size + threadCount - 1) / threadCount;
+		glBuffer = new GLBuffer("model buffer " + size);
+		streamBuffer = new PersistentBuffer("stream model buffer " + size);
+	}
+
+	/**
+	 * Build the tiers from a comma separated list of face counts. The list is sorted, and a tier for
+	 * {@link VRPlugin#MAX_TRIANGLE} is always added so that every model has a tier to go to.
+	 */
+	static ComputeTier[] create(String tiers)
+	{
+		TreeSet<Integer> sizes = new TreeSet<>();
+		for (String s : tiers.split(","))
+		{
+			s = s.trim();
+			if (s.isEmpty())
+			{
+				continue;
+			}
+
+			try
+			{
+				int size = Integer.parseInt(s);
+				if (size > 0 && size <= VRPlugin.MAX_TRIANGLE)
+				{
+					sizes.add(size);
+					continue;
+				}
+			}
+			catch (NumberFormatException ignored)
+			{
+			}
+			log.warn("Ignoring invalid compute tier {}", s);
+		}
+		sizes.add(VRPlugin.MAX_TRIANGLE);
+
+		List<ComputeTier> list = new ArrayList<>(sizes.size());
+		for (int size : sizes)
+		{
+			list.add(new ComputeTier(size));
+		}
+		log.debug("Compute tiers: {}", sizes);
+		return list.toArray(new ComputeTier[0]);
+	}
+
+	/**
+	 * Find the smallest tier able to sort a model
+	 */
+	static ComputeTier forTriangles(ComputeTier[] tiers, int triangles)
+	{
+		for (ComputeTier tier : tiers)
+		{
+			if (triangles <= tier.size)
+			{
+				return tier;
+			}
+		}
+		return tiers[tiers.length - 1];
+	}
+}
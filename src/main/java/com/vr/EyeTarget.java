@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import java.nio.ByteBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.opengl.GL43C;
+
+/**
+ * Offscreen target the scene is drawn into at a reduced resolution when the GPU can't keep up with
+ * the headset. Each layer holds one eye, and is upscaled into the swapchain image before the hands,
+ * menus and HUD are drawn on top at full resolution. The scale follows the GPU time of the eye draws,
+ * measured with timer queries, against the display period of the headset. Only the draws are timed,
+ * not the waits on the client thread's compute or on the compositor between them.
+ */
+@Slf4j
+class EyeTarget
+{
+	private static final int STATS_FRAMES = 600;
+	// timer results are read a few frames late so reading them never stalls
+	private static final int QUERY_FRAMES = 4;
+	// timed draws in a frame, one per eye plus the single pass scene
+	private static final int MAX_DRAWS = 4;
+
+	// fraction of the display period the GPU time is brought back to when it is dropped
+	private static final float TARGET_LOAD = 0.8f;
+	// the scale is dropped once the GPU time is above this fraction of the display period...
+	private static final float DROP_LOAD = 0.9f;
+	private static final int DROP_FRAMES = 3;
+	// ...and only raised again after it stayed below this one for a while
+	private static final float RAISE_LOAD = 0.65f;
+	private static final int RAISE_FRAMES = 45;
+	private static final float RAISE_STEP = 0.05f;
+	private static final float SMOOTHING = 0.1f;
+
+	private int width;
+	private int height;
+	private int colorTexture;
+	private int depthTexture;
+	private int framebuffer;
+	private int vao;
+
+	private int program;
+	private int uniTex;
+	private int uniLayer;
+	private int uniScale;
+
+	private final int[] queries = new int[QUERY_FRAMES * MAX_DRAWS];
+	// timed draws of each frame in the ring
+	private final int[] queryCounts = new int[QUERY_FRAMES];
+	private int queryFrame;
+	private int draws;
+	private long drawStart;
+	private long drawNanos;
+
+	private float minimumScale;
+	private float scale = 1f;
+	// the scale used by the frame being drawn
+	private float frameScale = 1f;
+	private float gpuTime;
+	private float cpuTime;
+	private int overFrames;
+	private int underFrames;
+
+	private int frame;
+	private int drops;
+
+	/**
+	 * Create the target textures, sized to fit the largest view
+	 *
+	 * @param program the upscale program
+	 * @param colorFormat internal format of the swapchain images
+	 * @param minimumScale lowest fraction of the view resolution the scene is drawn at
+	 */
+	void init(int program, int width, int height, int layers, int colorFormat, float minimumScale)
+	{
+		this.program = program;
+		this.width = width;
+		this.height = height;
+		this.minimumScale = minimumScale;
+
+		uniTex = GL43C.glGetUniformLocation(program, "tex");
+		uniLayer = GL43C.glGetUniformLocation(program, "layer");
+		uniScale = GL43C.glGetUniformLocation(program, "scale");
+
+		colorTexture = createTexture(layers, colorFormat, GL43C.GL_RGBA, GL43C.GL_UNSIGNED_BYTE);
+		depthTexture = createTexture(layers, GL43C.GL_DEPTH_COMPONENT32, GL43C.GL_DEPTH_COMPONENT, GL43C.GL_FLOAT);
+		framebuffer = GL43C.glGenFramebuffers();
+		// the upscale triangle is generated from gl_VertexID, but a vao must still be bound
+		vao = GL43C.glGenVertexArrays();
+		GL43C.glGenQueries(queries);
+	}
+
+	private int createTexture(int layers, int internalFormat, int format, int type)
+	{
+		int texture = GL43C.glGenTextures();
+		GL43C.glBindTexture(GL43C.GL_TEXTURE_2D_ARRAY, texture);
+		// the upscale filter samples texel centers itself
+		GL43C.glTexParameteri(GL43C.GL_TEXTURE_2D_ARRAY, GL43C.GL_TEXTURE_MAG_FILTER, GL43C.GL_NEAREST);
+		GL43C.glTexParameteri(GL43C.GL_TEXTURE_2D_ARRAY, GL43C.GL_TEXTURE_MIN_FILTER, GL43C.GL_NEAREST);
+		GL43C.glTexParameteri(GL43C.GL_TEXTURE_2D_ARRAY, GL43C.GL_TEXTURE_WRAP_S, GL43C.GL_CLAMP_TO_EDGE);
+		GL43C.glTexParameteri(GL43C.GL_TEXTURE_2D_ARRAY, GL43C.GL_TEXTURE_WRAP_T, GL43C.GL_CLAMP_TO_EDGE);
+		GL43C.glTexImage3D(GL43C.GL_TEXTURE_2D_ARRAY, 0, internalFormat, width, height, layers, 0, format, type, (ByteBuffer) null);
+		GL43C.glBindTexture(GL43C.GL_TEXTURE_2D_ARRAY, 0);
+		return texture;
+	}
+
+	void destroy()
+	{
+		GL43C.glDeleteTextures(colorTexture);
+		GL43C.glDeleteTextures(depthTexture);
+		GL43C.glDeleteFramebuffers(framebuffer);
+		GL43C.glDeleteVertexArrays(vao);
+		GL43C.glDeleteQueries(queries);
+		colorTexture = depthTexture = framebuffer = vao = 0;
+	}
+
+	/**
+	 * Start a frame, and fix the scale it is drawn at
+	 */
+	void beginFrame()
+	{
+		frameScale = scale;
+		draws = 0;
+		drawNanos = 0;
+	}
+
+	/**
+	 * Start timing a draw of the eyes
+	 */
+	void beginDraw()
+	{
+		if (draws < MAX_DRAWS)
+		{
+			GL43C.glBeginQuery(GL43C.GL_TIME_ELAPSED, queries[(queryFrame % QUERY_FRAMES) * MAX_DRAWS + draws]);
+		}
+		drawStart = System.nanoTime();
+	}
+
+	void endDraw()
+	{
+		drawNanos += System.nanoTime() - drawStart;
+		if (draws < MAX_DRAWS)
+		{
+			GL43C.glEndQuery(GL43C.GL_TIME_ELAPSED);
+			++draws;
+		}
+	}
+
+	/**
+	 * Finish a frame and adjust the scale of the next ones from the time its draws took
+	 *
+	 * @param displayPeriod predicted display period of the headset in nanoseconds
+	 */
+	void endFrame(long displayPeriod)
+	{
+		queryCounts[queryFrame % QUERY_FRAMES] = draws;
+		++queryFrame;
+		cpuTime += (drawNanos - cpuTime) * SMOOTHING;
+
+		if (queryFrame >= QUERY_FRAMES)
+		{
+			// the oldest frame of the ring, whose queries the next frame reuses
+			final int slot = queryFrame % QUERY_FRAMES;
+			final int count = queryCounts[slot];
+			boolean available = count > 0;
+			long nanos = 0;
+			for (int i = 0; i < count && available; ++i)
+			{
+				final int query = queries[slot * MAX_DRAWS + i];
+				available = GL43C.glGetQueryObjecti(query, GL43C.GL_QUERY_RESULT_AVAILABLE) != 0;
+				if (available)
+				{
+					nanos += GL43C.glGetQueryObjecti64(query, GL43C.GL_QUERY_RESULT);
+				}
+			}
+
+			if (available)
+			{
+				gpuTime = gpuTime == 0 ? nanos : gpuTime + (nanos - gpuTime) * SMOOTHING;
+				if (displayPeriod > 0)
+				{
+					adjust(gpuTime / displayPeriod, cpuTime / displayPeriod);
+				}
+			}
+		}
+
+		if (++frame % STATS_FRAMES == 0)
+		{
+			log.debug("Eye resolution: {}% scale, gpu {}ms, cpu {}ms, period {}ms, {} drops",
+				Math.round(scale * 100), String.format("%.2f", gpuTime / 1e6), String.format("%.2f", cpuTime / 1e6),
+				String.format("%.2f", displayPeriod / 1e6), drops);
+		}
+	}
+
+	private void adjust(float load, float cpuLoad)
+	{
+		// a frame that takes this long to submit isn't held back by the GPU, drawing less wouldn't help
+		if (load > DROP_LOAD && cpuLoad < DROP_LOAD)
+		{
+			underFrames = 0;
+			if (++overFrames >= DROP_FRAMES && scale > minimumScale)
+			{
+				// the cost of the scene follows the pixel count, which is the square of the scale
+				float dropped = Math.max(minimumScale, scale * (float) Math.sqrt(TARGET_LOAD / load));
+				// expect the new scale's time, instead of dropping again on the frames already queued
+				gpuTime *= (dropped / scale) * (dropped / scale);
+				scale = dropped;
+				overFrames = 0;
+				++drops;
+			}
+		}
+		else if (load < RAISE_LOAD)
+		{
+			overFrames = 0;
+			if (++underFrames >= RAISE_FRAMES && scale < 1f)
+			{
+				scale = Math.min(1f, scale + RAISE_STEP);
+				underFrames = 0;
+			}
+		}
+		else
+		{
+			overFrames = underFrames = 0;
+		}
+	}
+
+	/**
+	 * @return if the frame being drawn is drawn at a reduced resolution. When it isn't, the scene is
+	 * drawn straight to the swapchain image.
+	 */
+	boolean scaling()
+	{
+		return frameScale < 1f;
+	}
+
+	private int scaled(int size)
+	{
+		return Math.max(1, Math.round(size * frameScale));
+	}
+
+	/**
+	 * Bind every layer of the target to draw the scene for all eyes at once
+	 */
+	void bindLayered(int viewWidth, int viewHeight)
+	{
+		GL43C.glBindFramebuffer(GL43C.GL_FRAMEBUFFER, framebuffer);
+		GL43C.glFramebufferTexture(GL43C.GL_FRAMEBUFFER, GL43C.GL_COLOR_ATTACHMENT0, colorTexture, 0);
+		GL43C.glFramebufferTexture(GL43C.GL_FRAMEBUFFER, GL43C.GL_DEPTH_ATTACHMENT, depthTexture, 0);
+		GL43C.glViewport(0, 0, scaled(viewWidth), scaled(viewHeight));
+	}
+
+	/**
+	 * Bind one layer of the target to draw the scene for one eye
+	 */
+	void bindLayer(int layer, int viewWidth, int viewHeight)
+	{
+		GL43C.glBindFramebuffer(GL43C.GL_FRAMEBUFFER, framebuffer);
+		GL43C.glFramebufferTextureLayer(GL43C.GL_FRAMEBUFFER, GL43C.GL_COLOR_ATTACHMENT0, colorTexture, 0, layer);
+		GL43C.glFramebufferTextureLayer(GL43C.GL_FRAMEBUFFER, GL43C.GL_DEPTH_ATTACHMENT, depthTexture, 0, layer);
+		GL43C.glViewport(0, 0, scaled(viewWidth), scaled(viewHeight));
+	}
+
+	/**
+	 * Upscale one eye's layer into the bound swapchain image. Depth is copied too, so what is drawn
+	 * afterwards is still hidden behind the scene. The swapchain framebuffer is left bound, with
+	 * depth testing and blending enabled.
+	 */
+	void resolve(int swapchainFramebuffer, int layer, int viewWidth, int viewHeight)
+	{
+		final int sw = scaled(viewWidth);
+		final int sh = scaled(viewHeight);
+
+		GL43C.glBindFramebuffer(GL43C.GL_READ_FRAMEBUFFER, framebuffer);
+		GL43C.glFramebufferTextureLayer(GL43C.GL_READ_FRAMEBUFFER, GL43C.GL_COLOR_ATTACHMENT0, colorTexture, 0, layer);
+		GL43C.glFramebufferTextureLayer(GL43C.GL_READ_FRAMEBUFFER, GL43C.GL_DEPTH_ATTACHMENT, depthTexture, 0, layer);
+		GL43C.glBindFramebuffer(GL43C.GL_DRAW_FRAMEBUFFER, swapchainFramebuffer);
+		// depth can only be blit with nearest filtering
+		GL43C.glBlitFramebuffer(0, 0, sw, sh, 0, 0, viewWidth, viewHeight, GL43C.GL_DEPTH_BUFFER_BIT, GL43C.GL_NEAREST);
+
+		GL43C.glBindFramebuffer(GL43C.GL_FRAMEBUFFER, swapchainFramebuffer);
+		GL43C.glViewport(0, 0, viewWidth, viewHeight);
+		GL43C.glDisable(GL43C.GL_DEPTH_TEST);
+		GL43C.glDisable(GL43C.GL_BLEND);
+
+		GL43C.glUseProgram(program);
+		GL43C.glUniform1i(uniTex, 0);
+		GL43C.glUniform1i(uniLayer, layer);
+		GL43C.glUniform2f(uniScale, (float) sw / width, (float) sh / height);
+		GL43C.glActiveTexture(GL43C.GL_TEXTURE0);
+		GL43C.glBindTexture(GL43C.GL_TEXTURE_2D_ARRAY, colorTexture);
+		GL43C.glBindVertexArray(vao);
+		GL43C.glDrawArrays(GL43C.GL_TRIANGLES, 0, 3);
+
+		GL43C.glBindVertexArray(0);
+		GL43C.glBindTexture(GL43C.GL_TEXTURE_2D_ARRAY, 0);
+		GL43C.glUseProgram(0);
+		GL43C.glEnable(GL43C.GL_DEPTH_TEST);
+		GL43C.glEnable(GL43C.GL_BLEND);
+	}
+}
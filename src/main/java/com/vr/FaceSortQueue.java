@@ -0,0 +1,1039 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import com.google.common.base.Stopwatch;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Client;
+import net.runelite.api.IntProjection;
+import net.runelite.api.Model;
+import net.runelite.api.Perspective;
+import net.runelite.api.Projection;
+
+/**
+ * Face sorting for when compute shaders are unavailable. Models are transformed on the client thread
+ * as they are drawn, since the client reuses model instances, and a sort job is queued with the range
+ * of the vertex buffer it will write. The jobs are sorted across the common fork-join pool at the end
+ * of the scene, each with its own scratch buffers, and the unused tail of each range is compacted away.
+ * <p>
+ * Models drawn again at the same placement keep their face order from the last sort. It is reused as is
+ * while the camera stays close to where it was sorted from, and otherwise re-sorted from the old order
+ * with an insertion sort, which is cheap since the order barely changes between frames.
+ */
+@Singleton
+@Slf4j
+class FaceSortQueue
+{
+	private static final int MAX_DIAMETER = 6000;
+	private static final int ZSORT_GROUP_SIZE = 1024;
+	private static final int MAX_FACES_PER_PRIORITY = 4000;
+	// jobs per pool thread, so uneven models still balance out
+	private static final int CHUNKS_PER_THREAD = 4;
+	// below this many faces a frame isn't worth handing to the pool
+	private static final int MIN_PARALLEL_FACES = 4096;
+
+	private static final int SORT_FULL = 0;
+	private static final int SORT_RESORT = 1;
+	private static final int SORT_REUSE = 2;
+
+	// camera movement, in local units and the sine of the angle (1 << 16 scale), up to which the last
+	// order is reused as is, or re-sorted from
+	private static final int REUSE_DISTANCE = 32;
+	private static final int REUSE_ANGLE = 1144; // ~1 degree
+	private static final int RESORT_DISTANCE = 512;
+	private static final int RESORT_ANGLE = 11380; // ~10 degrees
+	// an insertion sort moving faces further than this on average is abandoned for a full sort
+	private static final int RESORT_SHIFTS_PER_FACE = 8;
+	private static final int EVICT_FRAMES = 120;
+	private static final int STATS_FRAMES = 600;
+
+	private final Client client;
+	private final VRPluginConfig config;
+
+	private final List<Job> jobs = new ArrayList<>();
+	private int jobCount;
+	private int queuedFaces;
+
+	private final Map<Long, CachedOrder> orders = new HashMap<>();
+	private int frame;
+
+	private int reused;
+	private int resorted;
+	private int sortedNew;
+	private int sortedGeometryChanged;
+	private int sortedCameraMoved;
+	private int sortedResortCostly;
+	private int uncached;
+
+	private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+	@Inject
+	FaceSortQueue(Client client, VRPluginConfig config)
+	{
+		this.client = client;
+		this.config = config;
+	}
+
+	/**
+	 * Transform the model and reserve space for its faces at the end of the buffers
+	 *
+	 * @return the number of vertices reserved
+	 */
+	int queue(Projection proj, Model model, int orientation, int x, int y, int z, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
+	{
+		final int faceCount = model.getFaceCount();
+		final int diameter = model.getDiameter();
+		if (diameter >= MAX_DIAMETER || faceCount == 0)
+		{
+			return 0;
+		}
+
+		if (jobCount == jobs.size())
+		{
+			jobs.add(new Job());
+		}
+		final Job job = jobs.get(jobCount++);
+		job.set(model);
+		job.transform(proj, model, orientation, x, y, z, client.getCenterX(), client.getCenterY(), client.get3dZoom());
+		lookupOrder(job, proj, model, orientation, x, y, z);
+
+		final int reserved = faceCount * 3;
+		vertexBuffer.ensureCapacity(reserved * 4);
+		uvBuffer.ensureCapacity(reserved * 4);
+
+		final IntBuffer vb = vertexBuffer.getBuffer();
+		final FloatBuffer uvb = uvBuffer.getBuffer();
+		job.start = vb.position() / 4;
+		job.reserved = reserved;
+		vb.position(vb.position() + reserved * 4);
+		uvb.position(uvb.position() + reserved * 4);
+
+		queuedFaces += faceCount;
+		return reserved;
+	}
+
+	/**
+	 * Sort and push the faces of every queued model, then close the gaps left between them
+	 *
+	 * @return the number of reserved vertices which went unused
+	 */
+	int run(GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, boolean parallel)
+	{
+		if (jobCount == 0)
+		{
+			return 0;
+		}
+
+		final IntBuffer vb = vertexBuffer.getBuffer();
+		final FloatBuffer uvb = uvBuffer.getBuffer();
+
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		final ForkJoinPool pool = ForkJoinPool.commonPool();
+		if (parallel && pool.getParallelism() > 1 && queuedFaces >= MIN_PARALLEL_FACES)
+		{
+			final int chunks = Math.min(jobCount, pool.getParallelism() * CHUNKS_PER_THREAD);
+			final List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+			int start = 0;
+			int faces = 0;
+			for (int chunk = 1; chunk <= chunks; ++chunk)
+			{
+				// split on face count, which is what the sort costs
+				int end = start;
+				final long target = (long) queuedFaces * chunk / chunks;
+				while (end < jobCount && (faces < target || end == start))
+				{
+					faces += jobs.get(end++).faceCount;
+				}
+
+				final int from = start, to = end;
+				if (from < to)
+				{
+					tasks.add(pool.submit(() -> sort(from, to, vb, uvb)));
+				}
+				start = end;
+			}
+
+			for (ForkJoinTask<?> task : tasks)
+			{
+				task.join();
+			}
+		}
+		else
+		{
+			sort(0, jobCount, vb, uvb);
+		}
+
+		final int unused = compact(vb, uvb);
+		log.trace("Sorted {} models with {} faces in {}", jobCount, queuedFaces, stopwatch);
+
+		for (int i = 0; i < jobCount; ++i)
+		{
+			if (jobs.get(i).resortFailed)
+			{
+				--resorted;
+				++sortedResortCostly;
+			}
+		}
+
+		clear();
+
+		if (frame % (EVICT_FRAMES / 2) == 0)
+		{
+			orders.values().removeIf(order -> order.frame < frame - EVICT_FRAMES);
+		}
+
+		if (frame % STATS_FRAMES == 0)
+		{
+			log.debug("Face order cache: {} reused, {} resorted, full sorts: {} new, {} geometry changed, {} camera moved, {} resort too costly, {} uncached",
+				reused, resorted, sortedNew, sortedGeometryChanged, sortedCameraMoved, sortedResortCostly, uncached);
+			reused = resorted = sortedNew = sortedGeometryChanged = sortedCameraMoved = sortedResortCostly = uncached = 0;
+		}
+		return unused;
+	}
+
+	/**
+	 * Drop the queued jobs, keeping their buffers for the next frame
+	 */
+	void clear()
+	{
+		if (jobCount > 0)
+		{
+			++frame;
+		}
+		for (int i = 0; i < jobCount; ++i)
+		{
+			jobs.get(i).clear();
+		}
+		jobCount = 0;
+		queuedFaces = 0;
+	}
+
+	/**
+	 * Drop the queued jobs and their buffers
+	 */
+	void release()
+	{
+		jobs.clear();
+		orders.clear();
+		jobCount = 0;
+		queuedFaces = 0;
+	}
+
+	/**
+	 * Find the model's last face order and decide how much of it this frame can reuse
+	 */
+	private void lookupOrder(Job job, Projection proj, Model model, int orientation, int x, int y, int z)
+	{
+		job.cached = null;
+		job.mode = SORT_FULL;
+		job.resortFailed = false;
+
+		if (!config.faceOrderCache() || !(proj instanceof IntProjection))
+		{
+			return;
+		}
+
+		final IntProjection p = (IntProjection) proj;
+		final long key = (long) System.identityHashCode(model) << 32
+			^ (x * 73856093 ^ y * 19349663 ^ z * 83492791 ^ orientation);
+		CachedOrder order = orders.get(key);
+		if (order == null || order.model != model || order.orientation != orientation
+			|| order.x != x || order.y != y || order.z != z)
+		{
+			order = new CachedOrder(model, orientation, x, y, z);
+			orders.put(key, order);
+			++sortedNew;
+		}
+		else if (order.frame == frame)
+		{
+			// drawn twice in one frame, the jobs can't share the entry
+			++uncached;
+			return;
+		}
+		else if (!order.valid)
+		{
+			++sortedNew;
+		}
+		else if (order.geometry != job.geometry)
+		{
+			++sortedGeometryChanged;
+		}
+		else
+		{
+			job.mode = cameraMovement(order, p);
+			if (job.mode == SORT_REUSE)
+			{
+				++reused;
+			}
+			else if (job.mode == SORT_RESORT)
+			{
+				++resorted;
+			}
+			else
+			{
+				++sortedCameraMoved;
+			}
+		}
+
+		order.frame = frame;
+		if (job.mode != SORT_REUSE)
+		{
+			// the order is measured against the camera it was sorted from
+			order.geometry = job.geometry;
+			order.cameraX = p.getCameraX();
+			order.cameraY = p.getCameraY();
+			order.cameraZ = p.getCameraZ();
+			order.yawSin = p.getYawSin();
+			order.yawCos = p.getYawCos();
+			order.pitchSin = p.getPitchSin();
+			order.pitchCos = p.getPitchCos();
+		}
+		job.cached = order;
+	}
+
+	private static int cameraMovement(CachedOrder order, IntProjection p)
+	{
+		final long dx = p.getCameraX() - order.cameraX;
+		final long dy = p.getCameraY() - order.cameraY;
+		final long dz = p.getCameraZ() - order.cameraZ;
+		final long distance = dx * dx + dy * dy + dz * dz;
+
+		// sine and cosine of the change in yaw and pitch
+		final long yawSin = Math.abs((long) p.getYawSin() * order.yawCos - (long) p.getYawCos() * order.yawSin) >> 16;
+		final long yawCos = ((long) p.getYawCos() * order.yawCos + (long) p.getYawSin() * order.yawSin) >> 16;
+		final long pitchSin = Math.abs((long) p.getPitchSin() * order.pitchCos - (long) p.getPitchCos() * order.pitchSin) >> 16;
+		final long pitchCos = ((long) p.getPitchCos() * order.pitchCos + (long) p.getPitchSin() * order.pitchSin) >> 16;
+		if (yawCos <= 0 || pitchCos <= 0)
+		{
+			return SORT_FULL;
+		}
+
+		final long angle = Math.max(yawSin, pitchSin);
+		if (distance <= REUSE_DISTANCE * REUSE_DISTANCE && angle <= REUSE_ANGLE)
+		{
+			return SORT_REUSE;
+		}
+		if (distance <= RESORT_DISTANCE * RESORT_DISTANCE && angle <= RESORT_ANGLE)
+		{
+			return SORT_RESORT;
+		}
+		return SORT_FULL;
+	}
+
+	private void sort(int from, int to, IntBuffer vb, FloatBuffer uvb)
+	{
+		final Scratch s = scratch.get();
+		final IntBuffer out = vb.duplicate();
+		final FloatBuffer uvOut = uvb.duplicate();
+		for (int i = from; i < to; ++i)
+		{
+			final Job job = jobs.get(i);
+			out.limit(out.capacity()).position(job.start * 4);
+			uvOut.limit(uvOut.capacity()).position(job.start * 4);
+			job.len = job.sort(s, out, uvOut);
+		}
+	}
+
+	/**
+	 * Move everything after each job's output down over the unused part of its reservation
+	 */
+	private int compact(IntBuffer vb, FloatBuffer uvb)
+	{
+		final int end = vb.position() / 4;
+		int cursor = jobs.get(0).start;
+		for (int i = 0; i < jobCount; ++i)
+		{
+			final Job job = jobs.get(i);
+			move(vb, uvb, job.start, cursor, job.len);
+			cursor += job.len;
+
+			// geometry pushed between this job and the next, such as tiles
+			final int gapStart = job.start + job.reserved;
+			final int gapEnd = i + 1 < jobCount ? jobs.get(i + 1).start : end;
+			move(vb, uvb, gapStart, cursor, gapEnd - gapStart);
+			cursor += gapEnd - gapStart;
+		}
+
+		vb.position(cursor * 4);
+		uvb.position(cursor * 4);
+		return end - cursor;
+	}
+
+	private static void move(IntBuffer vb, FloatBuffer uvb, int from, int to, int vertices)
+	{
+		if (from == to || vertices == 0)
+		{
+			return;
+		}
+
+		// to is always below from, so copying forwards never overwrites unread data
+		for (int i = 0, n = vertices * 4; i < n; ++i)
+		{
+			vb.put(to * 4 + i, vb.get(from * 4 + i));
+			uvb.put(to * 4 + i, uvb.get(from * 4 + i));
+		}
+	}
+
+	/**
+	 * Per thread sorting buffers
+	 */
+	private static final class Scratch
+	{
+		final char[] distanceFaceCount = new char[MAX_DIAMETER];
+		// rows are allocated as distances are first used, most models are far smaller than the maximum
+		final char[][] distanceToFaces = new char[MAX_DIAMETER][];
+
+		final int[] numOfPriority = new int[12];
+		final int[] eq10 = new int[MAX_FACES_PER_PRIORITY];
+		final int[] eq11 = new int[MAX_FACES_PER_PRIORITY];
+		final int[] lt10 = new int[12];
+		final int[][] orderedFaces = new int[12][MAX_FACES_PER_PRIORITY];
+
+		// faces far to near and their distances, then the faces in the order they are pushed
+		int[] sortedFaces = new int[0];
+		int[] sortedDistances = new int[0];
+		int[] pushOrder = new int[0];
+
+		void ensureCapacity(int faces)
+		{
+			if (sortedFaces.length < faces)
+			{
+				final int size = Math.max(faces, sortedFaces.length * 2);
+				sortedFaces = new int[size];
+				sortedDistances = new int[size];
+				pushOrder = new int[size];
+			}
+		}
+	}
+
+	/**
+	 * The face order of a model at one placement, from the last time it was sorted
+	 */
+	private static final class CachedOrder
+	{
+		final Model model;
+		final int orientation;
+		final int x, y, z;
+
+		long geometry;
+		int cameraX, cameraY, cameraZ;
+		int yawSin, yawCos, pitchSin, pitchCos;
+
+		// every face that isn't hidden, far to near, before backface culling
+		int[] sorted = new int[0];
+		int sortedCount;
+		// the faces as they were pushed
+		int[] order = new int[0];
+		int orderCount;
+		boolean valid;
+		// the last frame the order was used
+		int frame;
+
+		CachedOrder(Model model, int orientation, int x, int y, int z)
+		{
+			this.model = model;
+			this.orientation = orientation;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+	}
+
+	/**
+	 * A model captured when it was drawn. The client animates shared model instances by rewriting their
+	 * vertices, colours and transparencies in place, so those are copied into the job's own arrays as
+	 * they were at the draw. The face indices, textures and priorities aren't changed and are referenced.
+	 */
+	private static final class Job
+	{
+		int faceCount;
+		int diameter;
+		int radius;
+
+		int[] indices1;
+		int[] indices2;
+		int[] indices3;
+		// copies, see the class comment
+		int[] faceColors1 = new int[0];
+		int[] faceColors2 = new int[0];
+		int[] faceColors3 = new int[0];
+		short[] faceTextures;
+		byte[] textureFaces;
+		int[] texIndices1;
+		int[] texIndices2;
+		int[] texIndices3;
+		byte[] faceRenderPriorities;
+		// a copy, or null when the model has none
+		byte[] transparencies;
+		private byte[] transparencyCopy = new byte[0];
+		byte overrideAmount;
+		byte overrideHue;
+		byte overrideSat;
+		byte overrideLum;
+
+		int[] localX = new int[0];
+		int[] localY = new int[0];
+		int[] localZ = new int[0];
+		float[] canvasX = new float[0];
+		float[] canvasY = new float[0];
+		int[] distances = new int[0];
+
+		// hash of the transformed vertices and the face arrays
+		long geometry;
+		CachedOrder cached;
+		int mode;
+		boolean resortFailed;
+
+		// output range in vertices
+		int start;
+		int reserved;
+		int len;
+
+		void set(Model model)
+		{
+			faceCount = model.getFaceCount();
+			diameter = model.getDiameter();
+			radius = model.getRadius();
+
+			indices1 = model.getFaceIndices1();
+			indices2 = model.getFaceIndices2();
+			indices3 = model.getFaceIndices3();
+			if (faceColors1.length < faceCount)
+			{
+				final int size = Math.max(faceCount, faceColors1.length * 2);
+				faceColors1 = new int[size];
+				faceColors2 = new int[size];
+				faceColors3 = new int[size];
+			}
+			System.arraycopy(model.getFaceColors1(), 0, faceColors1, 0, faceCount);
+			System.arraycopy(model.getFaceColors2(), 0, faceColors2, 0, faceCount);
+			System.arraycopy(model.getFaceColors3(), 0, faceColors3, 0, faceCount);
+			faceTextures = model.getFaceTextures();
+			textureFaces = model.getTextureFaces();
+			texIndices1 = model.getTexIndices1();
+			texIndices2 = model.getTexIndices2();
+			texIndices3 = model.getTexIndices3();
+			faceRenderPriorities = model.getFaceRenderPriorities();
+			final byte[] faceTransparencies = model.getFaceTransparencies();
+			if (faceTransparencies != null)
+			{
+				if (transparencyCopy.length < faceCount)
+				{
+					transparencyCopy = new byte[Math.max(faceCount, transparencyCopy.length * 2)];
+				}
+				System.arraycopy(faceTransparencies, 0, transparencyCopy, 0, faceCount);
+				transparencies = transparencyCopy;
+			}
+			else
+			{
+				transparencies = null;
+			}
+			overrideAmount = model.getOverrideAmount();
+			overrideHue = model.getOverrideHue();
+			overrideSat = model.getOverrideSaturation();
+			overrideLum = model.getOverrideLuminance();
+		}
+
+		/**
+		 * Drop the references to the model's arrays so they aren't kept alive between frames
+		 */
+		void clear()
+		{
+			indices1 = indices2 = indices3 = null;
+			faceTextures = null;
+			textureFaces = null;
+			texIndices1 = texIndices2 = texIndices3 = null;
+			faceRenderPriorities = null;
+			transparencies = null;
+			cached = null;
+		}
+
+		void transform(Projection proj, Model model, int orientation, int x, int y, int z, int centerX, int centerY, int zoom)
+		{
+			final int vertexCount = model.getVerticesCount();
+			final float[] verticesX = model.getVerticesX();
+			final float[] verticesY = model.getVerticesY();
+			final float[] verticesZ = model.getVerticesZ();
+
+			if (localX.length < vertexCount)
+			{
+				final int size = Math.max(vertexCount, localX.length * 2);
+				localX = new int[size];
+				localY = new int[size];
+				localZ = new int[size];
+				canvasX = new float[size];
+				canvasY = new float[size];
+				distances = new int[size];
+			}
+
+			int orientSine = 0;
+			int orientCosine = 0;
+			if (orientation != 0)
+			{
+				orientSine = Perspective.SINE[orientation];
+				orientCosine = Perspective.COSINE[orientation];
+			}
+
+			float[] p = proj.project(x, y, z);
+			int zero = (int) p[2];
+
+			long h = GeometryHash.SEED;
+			h = GeometryHash.hash(h, faceCount);
+			h = GeometryHash.hash(h, System.identityHashCode(indices1));
+			h = GeometryHash.hash(h, System.identityHashCode(model.getFaceColors3()));
+			h = GeometryHash.hash(h, System.identityHashCode(faceRenderPriorities));
+
+			for (int v = 0; v < vertexCount; ++v)
+			{
+				int vertexX = (int) verticesX[v];
+				int vertexY = (int) verticesY[v];
+				int vertexZ = (int) verticesZ[v];
+
+				if (orientation != 0)
+				{
+					int i = vertexZ * orientSine + vertexX * orientCosine >> 16;
+					vertexZ = vertexZ * orientCosine - vertexX * orientSine >> 16;
+					vertexX = i;
+				}
+
+				// move to local position
+				vertexX += x;
+				vertexY += y;
+				vertexZ += z;
+
+				localX[v] = vertexX;
+				localY[v] = vertexY;
+				localZ[v] = vertexZ;
+				h = GeometryHash.hash(GeometryHash.hash(GeometryHash.hash(h, vertexX), vertexY), vertexZ);
+
+				p = proj.project(vertexX, vertexY, vertexZ);
+				canvasX[v] = centerX + p[0] * zoom / p[2];
+				canvasY[v] = centerY + p[1] * zoom / p[2];
+				distances[v] = (int) p[2] - zero;
+			}
+			geometry = h;
+		}
+
+		int sort(Scratch s, IntBuffer out, FloatBuffer uvOut)
+		{
+			final CachedOrder c = cached;
+			if (c != null && mode == SORT_REUSE)
+			{
+				int len = 0;
+				for (int i = 0; i < c.orderCount; ++i)
+				{
+					len += pushFace(c.order[i], out, uvOut);
+				}
+				return len;
+			}
+
+			s.ensureCapacity(faceCount);
+
+			int count = -1;
+			if (c != null && mode == SORT_RESORT)
+			{
+				count = resort(s, c);
+				resortFailed = count == -1;
+			}
+			if (count == -1)
+			{
+				count = bucketSort(s);
+			}
+
+			if (c != null)
+			{
+				if (c.sorted.length < count)
+				{
+					c.sorted = new int[count];
+				}
+				System.arraycopy(s.sortedFaces, 0, c.sorted, 0, count);
+				c.sortedCount = count;
+			}
+
+			final int visible = cull(s, count);
+			final int pushed = order(s, visible);
+
+			int len = 0;
+			for (int i = 0; i < pushed; ++i)
+			{
+				len += pushFace(s.pushOrder[i], out, uvOut);
+			}
+
+			if (c != null)
+			{
+				if (c.order.length < pushed)
+				{
+					c.order = new int[pushed];
+				}
+				System.arraycopy(s.pushOrder, 0, c.order, 0, pushed);
+				c.orderCount = pushed;
+				c.valid = true;
+			}
+			return len;
+		}
+
+		private int faceDistance(int face)
+		{
+			return radius + (distances[indices1[face]] + distances[indices2[face]] + distances[indices3[face]]) / 3;
+		}
+
+		/**
+		 * Bucket every face which isn't hidden by distance, into sortedFaces far to near
+		 */
+		private int bucketSort(Scratch s)
+		{
+			final char[] distanceFaceCount = s.distanceFaceCount;
+			final char[][] distanceToFaces = s.distanceToFaces;
+
+			Arrays.fill(distanceFaceCount, 0, diameter, (char) 0);
+
+			for (char i = 0; i < faceCount; ++i)
+			{
+				if (faceColors3[i] != -2)
+				{
+					final int distance = faceDistance(i);
+					assert distance >= 0 && distance < diameter;
+					char[] row = distanceToFaces[distance];
+					if (row == null)
+					{
+						row = distanceToFaces[distance] = new char[ZSORT_GROUP_SIZE];
+					}
+					if (distanceFaceCount[distance] < ZSORT_GROUP_SIZE)
+					{
+						row[distanceFaceCount[distance]++] = i;
+					}
+				}
+			}
+
+			int count = 0;
+			for (int i = diameter - 1; i >= 0; --i)
+			{
+				final int cnt = distanceFaceCount[i];
+				if (cnt > 0)
+				{
+					final char[] faces = distanceToFaces[i];
+
+					for (int faceIdx = 0; faceIdx < cnt; ++faceIdx)
+					{
+						s.sortedFaces[count] = faces[faceIdx];
+						s.sortedDistances[count++] = i;
+					}
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * Insertion sort the last order with this frame's distances into sortedFaces
+		 *
+		 * @return the number of faces, or -1 if the order changed too much for an insertion sort to pay off
+		 */
+		private int resort(Scratch s, CachedOrder c)
+		{
+			final int[] faces = s.sortedFaces;
+			final int[] dists = s.sortedDistances;
+			final int count = c.sortedCount;
+			final int budget = count * RESORT_SHIFTS_PER_FACE;
+			int shifts = 0;
+
+			for (int i = 0; i < count; ++i)
+			{
+				final int face = c.sorted[i];
+				final int distance = faceDistance(face);
+
+				int j = i;
+				while (j > 0 && dists[j - 1] < distance)
+				{
+					faces[j] = faces[j - 1];
+					dists[j] = dists[j - 1];
+					--j;
+					if (++shifts > budget)
+					{
+						return -1;
+					}
+				}
+				faces[j] = face;
+				dists[j] = distance;
+			}
+			return count;
+		}
+
+		/**
+		 * Drop back faces from sortedFaces, keeping the order
+		 */
+		private int cull(Scratch s, int count)
+		{
+			final int[] faces = s.sortedFaces;
+			final int[] dists = s.sortedDistances;
+
+			int visible = 0;
+			for (int i = 0; i < count; ++i)
+			{
+				final int face = faces[i];
+				final int v1 = indices1[face];
+				final int v2 = indices2[face];
+				final int v3 = indices3[face];
+
+				final float
+					aX = canvasX[v1],
+					aY = canvasY[v1],
+					bX = canvasX[v2],
+					bY = canvasY[v2],
+					cX = canvasX[v3],
+					cY = canvasY[v3];
+
+				if ((aX - bX) * (cY - bY) - (cX - bX) * (aY - bY) > 0)
+				{
+					faces[visible] = face;
+					dists[visible++] = dists[i];
+				}
+			}
+			return visible;
+		}
+
+		/**
+		 * Merge the face priorities into pushOrder
+		 */
+		private int order(Scratch s, int count)
+		{
+			final int[] sortedFaces = s.sortedFaces;
+			final int[] sortedDistances = s.sortedDistances;
+			final int[] pushOrder = s.pushOrder;
+
+			if (faceRenderPriorities == null)
+			{
+				System.arraycopy(sortedFaces, 0, pushOrder, 0, count);
+				return count;
+			}
+
+			final int[] numOfPriority = s.numOfPriority;
+			final int[] lt10 = s.lt10;
+			final int[] eq10 = s.eq10;
+			final int[] eq11 = s.eq11;
+			final int[][] orderedFaces = s.orderedFaces;
+
+			Arrays.fill(numOfPriority, 0);
+			Arrays.fill(lt10, 0);
+
+			for (int faceIdx = 0; faceIdx < count; ++faceIdx)
+			{
+				final int face = sortedFaces[faceIdx];
+				final int i = sortedDistances[faceIdx];
+				final byte pri = faceRenderPriorities[face];
+				final int distIdx = numOfPriority[pri]++;
+
+				orderedFaces[pri][distIdx] = face;
+				if (pri < 10)
+				{
+					lt10[pri] += i;
+				}
+				else if (pri == 10)
+				{
+					eq10[distIdx] = i;
+				}
+				else
+				{
+					eq11[distIdx] = i;
+				}
+			}
+
+			int avg12 = 0;
+			if (numOfPriority[1] > 0 || numOfPriority[2] > 0)
+			{
+				avg12 = (lt10[1] + lt10[2]) / (numOfPriority[1] + numOfPriority[2]);
+			}
+
+			int avg34 = 0;
+			if (numOfPriority[3] > 0 || numOfPriority[4] > 0)
+			{
+				avg34 = (lt10[3] + lt10[4]) / (numOfPriority[3] + numOfPriority[4]);
+			}
+
+			int avg68 = 0;
+			if (numOfPriority[6] > 0 || numOfPriority[8] > 0)
+			{
+				avg68 = (lt10[8] + lt10[6]) / (numOfPriority[8] + numOfPriority[6]);
+			}
+
+			int pushed = 0;
+			int drawnFaces = 0;
+			int numDynFaces = numOfPriority[10];
+			int[] dynFaces = orderedFaces[10];
+			int[] dynFaceDistances = eq10;
+			if (drawnFaces == numDynFaces)
+			{
+				drawnFaces = 0;
+				numDynFaces = numOfPriority[11];
+				dynFaces = orderedFaces[11];
+				dynFaceDistances = eq11;
+			}
+
+			int currFaceDistance;
+			if (drawnFaces < numDynFaces)
+			{
+				currFaceDistance = dynFaceDistances[drawnFaces];
+			}
+			else
+			{
+				currFaceDistance = -1000;
+			}
+
+			for (int pri = 0; pri < 10; ++pri)
+			{
+				// priority 10 and 11 faces are interleaved by distance ahead of priorities 0, 3 and 5
+				final int avg = pri == 0 ? avg12 : pri == 3 ? avg34 : pri == 5 ? avg68 : Integer.MAX_VALUE;
+				while (currFaceDistance > avg)
+				{
+					pushOrder[pushed++] = dynFaces[drawnFaces++];
+
+					if (drawnFaces == numDynFaces && dynFaces != orderedFaces[11])
+					{
+						drawnFaces = 0;
+						numDynFaces = numOfPriority[11];
+						dynFaces = orderedFaces[11];
+						dynFaceDistances = eq11;
+					}
+
+					if (drawnFaces < numDynFaces)
+					{
+						currFaceDistance = dynFaceDistances[drawnFaces];
+					}
+					else
+					{
+						currFaceDistance = -1000;
+					}
+				}
+
+				final int priNum = numOfPriority[pri];
+				final int[] priFaces = orderedFaces[pri];
+
+				for (int faceIdx = 0; faceIdx < priNum; ++faceIdx)
+				{
+					pushOrder[pushed++] = priFaces[faceIdx];
+				}
+			}
+
+			while (currFaceDistance != -1000)
+			{
+				pushOrder[pushed++] = dynFaces[drawnFaces++];
+
+				if (drawnFaces == numDynFaces && dynFaces != orderedFaces[11])
+				{
+					drawnFaces = 0;
+					dynFaces = orderedFaces[11];
+					numDynFaces = numOfPriority[11];
+					dynFaceDistances = eq11;
+				}
+
+				if (drawnFaces < numDynFaces)
+				{
+					currFaceDistance = dynFaceDistances[drawnFaces];
+				}
+				else
+				{
+					currFaceDistance = -1000;
+				}
+			}
+
+			return pushed;
+		}
+
+		private int pushFace(int face, IntBuffer out, FloatBuffer uvOut)
+		{
+			final int packAlphaPriority = SceneUploader.packAlphaPriority(faceTextures, transparencies, faceRenderPriorities, face);
+
+			final int triangleA = indices1[face];
+			final int triangleB = indices2[face];
+			final int triangleC = indices3[face];
+
+			int color1 = faceColors1[face];
+			int color2 = faceColors2[face];
+			int color3 = faceColors3[face];
+
+			if (color3 == -1)
+			{
+				color2 = color3 = color1;
+			}
+
+			// HSL override is not applied to textured faces
+			if (faceTextures == null || faceTextures[face] == -1)
+			{
+				if (overrideAmount > 0)
+				{
+					color1 = SceneUploader.interpolateHSL(color1, overrideHue, overrideSat, overrideLum, overrideAmount);
+					color2 = SceneUploader.interpolateHSL(color2, overrideHue, overrideSat, overrideLum, overrideAmount);
+					color3 = SceneUploader.interpolateHSL(color3, overrideHue, overrideSat, overrideLum, overrideAmount);
+				}
+			}
+
+			out.put(localX[triangleA]).put(localY[triangleA]).put(localZ[triangleA]).put(packAlphaPriority | color1);
+			out.put(localX[triangleB]).put(localY[triangleB]).put(localZ[triangleB]).put(packAlphaPriority | color2);
+			out.put(localX[triangleC]).put(localY[triangleC]).put(localZ[triangleC]).put(packAlphaPriority | color3);
+
+			if (faceTextures != null && faceTextures[face] != -1)
+			{
+				int texA, texB, texC;
+
+				if (textureFaces != null && textureFaces[face] != -1)
+				{
+					int tfaceIdx = textureFaces[face] & 0xff;
+					texA = texIndices1[tfaceIdx];
+					texB = texIndices2[tfaceIdx];
+					texC = texIndices3[tfaceIdx];
+				}
+				else
+				{
+					texA = triangleA;
+					texB = triangleB;
+					texC = triangleC;
+				}
+
+				int texture = faceTextures[face] + 1;
+				uvOut.put(texture).put(localX[texA]).put(localY[texA]).put(localZ[texA]);
+				uvOut.put(texture).put(localX[texB]).put(localY[texB]).put(localZ[texB]);
+				uvOut.put(texture).put(localX[texC]).put(localY[texC]).put(localZ[texC]);
+			}
+			else
+			{
+				uvOut.put(0).put(0).put(0).put(0);
+				uvOut.put(0).put(0).put(0).put(0);
+				uvOut.put(0).put(0).put(0).put(0);
+			}
+
+			return 3;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import org.joml.Matrix4f;
+
+/**
+ * Controller and cursor state resolved once per XR frame, read by every eye while rendering
+ */
+class FrameInput
+{
+	/**
+	 * Whether the right controller has been located yet, nothing is drawn for the hands until it is
+	 */
+	final boolean handTracked;
+	final Matrix4f handMatrix;
+	final Matrix4f cursorMatrix;
+	final Matrix4f mapMatrix;
+	final HandSelectState state;
+	/**
+	 * Whether the cursor is on the hand held map instead of the play area
+	 */
+	final boolean hovering;
+	final boolean mapVisible;
+	final boolean menuOpen;
+	final int menuWidth;
+	final int menuHeight;
+
+	FrameInput(boolean handTracked, Matrix4f handMatrix, Matrix4f cursorMatrix, Matrix4f mapMatrix,
+		HandSelectState state, boolean hovering, boolean mapVisible, boolean menuOpen, int menuWidth, int menuHeight)
+	{
+		this.handTracked = handTracked;
+		this.handMatrix = new Matrix4f(handMatrix);
+		this.cursorMatrix = new Matrix4f(cursorMatrix);
+		this.mapMatrix = new Matrix4f(mapMatrix);
+		this.state = state;
+		this.hovering = hovering;
+		this.mapVisible = mapVisible;
+		this.menuOpen = menuOpen;
+		this.menuWidth = menuWidth;
+		this.menuHeight = menuHeight;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import net.runelite.api.Model;
+import net.runelite.api.SceneTileModel;
+
+/**
+ * 64-bit FNV-1a hashing, used to recognize identical model meshes and unchanged interface pixels
+ */
+final class GeometryHash
+{
+	static final long SEED = 0xcbf29ce484222325L;
+	private static final long PRIME = 0x100000001b3L;
+
+	private GeometryHash()
+	{
+	}
+
+	static long hash(long h, int v)
+	{
+		return (h ^ v) * PRIME;
+	}
+
+	static long hash(long h, long v)
+	{
+		return hash(hash(h, (int) v), (int) (v >>> 32));
+	}
+
+	static long hash(long h, int[] a, int n)
+	{
+		if (a == null)
+		{
+			return hash(h, -1);
+		}
+
+		n = Math.min(n, a.length);
+		h = hash(h, n);
+		for (int i = 0; i < n; ++i)
+		{
+			h = (h ^ a[i]) * PRIME;
+		}
+		return h;
+	}
+
+	static long hash(long h, float[] a, int n)
+	{
+		if (a == null)
+		{
+			return hash(h, -1);
+		}
+
+		n = Math.min(n, a.length);
+		h = hash(h, n);
+		for (int i = 0; i < n; ++i)
+		{
+			h = (h ^ Float.floatToRawIntBits(a[i])) * PRIME;
+		}
+		return h;
+	}
+
+	static long hash(long h, short[] a, int n)
+	{
+		if (a == null)
+		{
+			return hash(h, -1);
+		}
+
+		n = Math.min(n, a.length);
+		h = hash(h, n);
+		for (int i = 0; i < n; ++i)
+		{
+			h = (h ^ a[i]) * PRIME;
+		}
+		return h;
+	}
+
+	static long hash(long h, byte[] a, int n)
+	{
+		if (a == null)
+		{
+			return hash(h, -1);
+		}
+
+		n = Math.min(n, a.length);
+		h = hash(h, n);
+		for (int i = 0; i < n; ++i)
+		{
+			h = (h ^ a[i]) * PRIME;
+		}
+		return h;
+	}
+
+	/**
+	 * Hash everything {@link SceneUploader#pushModel} reads from a model
+	 */
+	static long hash(Model model)
+	{
+		final int vertexCount = model.getVerticesCount();
+		final int faceCount = model.getFaceCount();
+
+		long h = SEED;
+		h = hash(h, model.getVerticesX(), vertexCount);
+		h = hash(h, model.getVerticesY(), vertexCount);
+		h = hash(h, model.getVerticesZ(), vertexCount);
+		h = hash(h, model.getFaceIndices1(), faceCount);
+		h = hash(h, model.getFaceIndices2(), faceCount);
+		h = hash(h, model.getFaceIndices3(), faceCount);
+		h = hash(h, model.getFaceColors1(), faceCount);
+		h = hash(h, model.getFaceColors2(), faceCount);
+		h = hash(h, model.getFaceColors3(), faceCount);
+		h = hash(h, model.getFaceTextures(), faceCount);
+		h = hash(h, model.getTextureFaces(), faceCount);
+		h = hash(h, model.getTexIndices1(), Integer.MAX_VALUE);
+		h = hash(h, model.getTexIndices2(), Integer.MAX_VALUE);
+		h = hash(h, model.getTexIndices3(), Integer.MAX_VALUE);
+		h = hash(h, model.getFaceTransparencies(), faceCount);
+		h = hash(h, model.getFaceRenderPriorities(), faceCount);
+		h = hash(h, model.getOverrideAmount() << 24 | (model.getOverrideHue() & 0xff) << 16
+			| (model.getOverrideSaturation() & 0xff) << 8 | (model.getOverrideLuminance() & 0xff));
+		return h;
+	}
+
+	static long hash(SceneTileModel model)
+	{
+		long h = SEED;
+		h = hash(h, model.getFaceX(), Integer.MAX_VALUE);
+		h = hash(h, model.getFaceY(), Integer.MAX_VALUE);
+		h = hash(h, model.getFaceZ(), Integer.MAX_VALUE);
+		h = hash(h, model.getVertexX(), Integer.MAX_VALUE);
+		h = hash(h, model.getVertexY(), Integer.MAX_VALUE);
+		h = hash(h, model.getVertexZ(), Integer.MAX_VALUE);
+		h = hash(h, model.getTriangleColorA(), Integer.MAX_VALUE);
+		h = hash(h, model.getTriangleColorB(), Integer.MAX_VALUE);
+		h = hash(h, model.getTriangleColorC(), Integer.MAX_VALUE);
+		h = hash(h, model.getTriangleTextureId(), Integer.MAX_VALUE);
+		h = hash(h, model.isFlat() ? 1 : 0);
+		return h;
+	}
+}
@@ -30,11 +30,81 @@ import java.nio.FloatBuffer;
 
 class GpuFloatBuffer
 {
-	private FloatBuffer buffer = allocateDirect(65536);
+	private static final FloatBuffer EMPTY = allocateDirect(0);
+
+	// arena block backing buffer, or null if buffer is not owned
+	private ByteBuffer memory = OffHeapArena.allocate(65536 * Float.BYTES);
+	private FloatBuffer buffer = memory.asFloatBuffer();
+	private final boolean packed;
+	// whether buffer is a view of mapped gpu memory
+	private boolean mapped;
+
+	GpuFloatBuffer()
+	{
+		this(false);
+	}
+
+	/**
+	 * @param packed store uvs as a 16 bit texture id and half float uvw in 2 floats rather than 4,
+	 *               see comp_common.glsl
+	 */
+	GpuFloatBuffer(boolean packed)
+	{
+		this.packed = packed;
+	}
+
+	boolean isPacked()
+	{
+		return packed;
+	}
 
 	void put(float s, float t, float p, float q)
 	{
-		buffer.put(s).put(t).put(p).put(q);
+		if (packed)
+		{
+			// neither word can form a NaN since toHalf never produces an infinite or NaN half
+			buffer.put(Float.intBitsToFloat(((int) s & 0xffff) | (toHalf(t) << 16)))
+				.put(Float.intBitsToFloat(toHalf(p) | (toHalf(q) << 16)));
+		}
+		else
+		{
+			buffer.put(s).put(t).put(p).put(q);
+		}
+	}
+
+	void put(GpuFloatBuffer other)
+	{
+		FloatBuffer src = other.buffer.duplicate();
+		src.flip();
+		ensureCapacity(src.remaining());
+		buffer.put(src);
+	}
+
+	/**
+	 * Use existing data as the contents of this buffer, without copying it
+	 */
+	void wrap(FloatBuffer data)
+	{
+		release();
+		buffer = data;
+		buffer.position(buffer.limit());
+		mapped = false;
+	}
+
+	/**
+	 * Write directly into mapped gpu memory. If the data outgrows it, the buffer moves back to
+	 * ordinary memory and {@link #isMapped()} turns false.
+	 */
+	void map(ByteBuffer section)
+	{
+		release();
+		buffer = section.asFloatBuffer();
+		mapped = true;
+	}
+
+	boolean isMapped()
+	{
+		return mapped;
 	}
 
 	void flip()
@@ -53,16 +123,40 @@ class GpuFloatBuffer
 		final int position = buffer.position();
 		if ((capacity - position) < size)
 		{
+			capacity = Math.max(capacity, 512);
 			do
 			{
 				capacity *= 2;
 			}
 			while ((capacity - position) < size);
 
-			FloatBuffer newB = allocateDirect(capacity);
+			ByteBuffer newMemory = OffHeapArena.allocate(capacity * Float.BYTES);
+			FloatBuffer newB = newMemory.asFloatBuffer();
 			buffer.flip();
 			newB.put(buffer);
+			release();
+			memory = newMemory;
 			buffer = newB;
+			mapped = false;
+		}
+	}
+
+	/**
+	 * Give the memory back to the arena. The buffer is empty afterwards, and grows again on demand.
+	 */
+	void free()
+	{
+		release();
+		buffer = EMPTY;
+		mapped = false;
+	}
+
+	private void release()
+	{
+		if (memory != null)
+		{
+			OffHeapArena.free(memory);
+			memory = null;
 		}
 	}
 
@@ -71,6 +165,37 @@ class GpuFloatBuffer
 		return buffer;
 	}
 
+	/**
+	 * Convert to a half float, rounding to nearest and clamping to the largest finite half
+	 */
+	static int toHalf(float value)
+	{
+		final int bits = Float.floatToIntBits(value);
+		final int sign = (bits >>> 16) & 0x8000;
+		final int abs = bits & 0x7fffffff;
+		final int rounded = abs + 0x1000;
+
+		if (rounded >= 0x477ff000)
+		{
+			// too large for a half, or infinite/NaN
+			return sign | 0x7bff;
+		}
+		if (rounded >= 0x38800000)
+		{
+			// normal
+			return sign | ((rounded - 0x38000000) >>> 13);
+		}
+		if (rounded < 0x33000000)
+		{
+			// underflow
+			return sign;
+		}
+
+		// subnormal
+		final int exponent = abs >>> 23;
+		return sign | (((abs & 0x7fffff) | 0x800000) + (0x800000 >>> (exponent - 102)) >>> (126 - exponent));
+	}
+
 	static FloatBuffer allocateDirect(int size)
 	{
 		return ByteBuffer.allocateDirect(size * Float.BYTES)
@@ -30,7 +30,32 @@ import java.nio.IntBuffer;
 
 class GpuIntBuffer
 {
-	private IntBuffer buffer = allocateDirect(65536);
+	private static final IntBuffer EMPTY = allocateDirect(0);
+
+	// arena block backing buffer, or null if buffer is not owned
+	private ByteBuffer memory = OffHeapArena.allocate(65536 * Integer.BYTES);
+	private IntBuffer buffer = memory.asIntBuffer();
+	private final boolean packed;
+	// whether buffer is a view of mapped gpu memory
+	private boolean mapped;
+
+	GpuIntBuffer()
+	{
+		this(false);
+	}
+
+	/**
+	 * @param packed store vertices as 16 bit positions in 3 ints rather than 4, see comp_common.glsl
+	 */
+	GpuIntBuffer(boolean packed)
+	{
+		this.packed = packed;
+	}
+
+	boolean isPacked()
+	{
+		return packed;
+	}
 
 	void put(int x, int y, int z)
 	{
@@ -39,7 +64,49 @@ class GpuIntBuffer
 
 	void put(int x, int y, int z, int c)
 	{
-		buffer.put(x).put(y).put(z).put(c);
+		if (packed)
+		{
+			buffer.put((x & 0xffff) | (y << 16)).put(z & 0xffff).put(c);
+		}
+		else
+		{
+			buffer.put(x).put(y).put(z).put(c);
+		}
+	}
+
+	void put(GpuIntBuffer other)
+	{
+		IntBuffer src = other.buffer.duplicate();
+		src.flip();
+		ensureCapacity(src.remaining());
+		buffer.put(src);
+	}
+
+	/**
+	 * Use existing data as the contents of this buffer, without copying it
+	 */
+	void wrap(IntBuffer data)
+	{
+		release();
+		buffer = data;
+		buffer.position(buffer.limit());
+		mapped = false;
+	}
+
+	/**
+	 * Write directly into mapped gpu memory. If the data outgrows it, the buffer moves back to
+	 * ordinary memory and {@link #isMapped()} turns false.
+	 */
+	void map(ByteBuffer section)
+	{
+		release();
+		buffer = section.asIntBuffer();
+		mapped = true;
+	}
+
+	boolean isMapped()
+	{
+		return mapped;
 	}
 
 	void flip()
@@ -58,16 +125,40 @@ class GpuIntBuffer
 		final int position = buffer.position();
 		if ((capacity - position) < size)
 		{
+			capacity = Math.max(capacity, 512);
 			do
 			{
 				capacity *= 2;
 			}
 			while ((capacity - position) < size);
 
-			IntBuffer newB = allocateDirect(capacity);
+			ByteBuffer newMemory = OffHeapArena.allocate(capacity * Integer.BYTES);
+			IntBuffer newB = newMemory.asIntBuffer();
 			buffer.flip();
 			newB.put(buffer);
+			release();
+			memory = newMemory;
 			buffer = newB;
+			mapped = false;
+		}
+	}
+
+	/**
+	 * Give the memory back to the arena. The buffer is empty afterwards, and grows again on demand.
+	 */
+	void free()
+	{
+		release();
+		buffer = EMPTY;
+		mapped = false;
+	}
+
+	private void release()
+	{
+		if (memory != null)
+		{
+			OffHeapArena.free(memory);
+			memory = null;
 		}
 	}
 
@@ -496,7 +496,7 @@ public class HudHelper {
         }
     };
 
-    public void cullHitsplats(int timeout){
+    public synchronized void cullHitsplats(int timeout){
         HashSet<Actor> actorsR = new HashSet<>();
         for(Actor actor: hitsplats.keySet()){
             HashSet<Hitsplat> hitsplatR = new HashSet<>();
@@ -522,7 +522,7 @@ public class HudHelper {
     /*public void updateLocations(){
         //interpolator.updateLocations();
     }*/
-    public void addHitsplat(HitsplatApplied hitsplatApplied){
+    public synchronized void addHitsplat(HitsplatApplied hitsplatApplied){
         Actor actor = hitsplatApplied.getActor();
         Hitsplat hitsplat = hitsplatApplied.getHitsplat();
         if(!hitsplats.containsKey(actor)){
@@ -551,7 +551,7 @@ public class HudHelper {
         }
     }
 
-    void backloadActor(Actor actor, int orientation, int x, int y, int z){
+    synchronized void backloadActor(Actor actor, int orientation, int x, int y, int z){
         //interpolator.addActor(actor);
         actors.put(actor, new Act(orientation,x,y,z));
     }
@@ -716,7 +716,7 @@ public class HudHelper {
         xyzw[2] = z2+z;
     }
 
-    void swap(Client client){
+    synchronized void swap(Client client){
         /*Set<Actor> remove = new HashSet<>();
         for(Actor actor: actors.keySet()){
             if(actor.getModel() == null){
@@ -730,11 +730,11 @@ public class HudHelper {
         actors.clear();
     }
 
-    public void addHealthbarTimeout(Actor actor, int timeout){
+    public synchronized void addHealthbarTimeout(Actor actor, int timeout){
         healthbars.put(actor, timeout);
     }
 
-    public void cullHealthbars(int timeout){
+    public synchronized void cullHealthbars(int timeout){
         HashSet<Actor> actors = new HashSet<>();
         for(Actor actor: healthbars.keySet()){
             if(healthbars.get(actor) < timeout){
@@ -746,7 +746,7 @@ public class HudHelper {
         }
     }
 
-    public void cullAll(){
+    public synchronized void cullAll(){
         actors.clear();
         healthbars.clear();
         hitsplats.clear();
@@ -1106,7 +1106,8 @@ public class HudHelper {
         }
     }
 
-    void drawHud(Matrix4f viewMatrix, Matrix4f projectionMatrix, float[] projectionMatrix2){
+    // the hud can be drawn from the render thread while the client thread updates it
+    synchronized void drawHud(Matrix4f viewMatrix, Matrix4f projectionMatrix, float[] projectionMatrix2){
         for(Actor actor: actors.keySet()){
             drawAll(actor, viewMatrix, projectionMatrix, projectionMatrix2);
         }
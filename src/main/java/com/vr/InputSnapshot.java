@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+/**
+ * Client state the controller input depends on, captured on the client thread each frame. With
+ * decoupled rendering the input is resolved on the render thread, which must not call into the client.
+ */
+class InputSnapshot
+{
+	static final InputSnapshot NONE = new InputSnapshot(false, 0, 0, 0, 0, 0, false, 0, 0, 0, 0);
+
+	final boolean menuOpen;
+	final int menuX;
+	final int menuY;
+	final int menuWidth;
+	final int menuHeight;
+	final int menuEntries;
+	/**
+	 * Whether the top menu entry acts on the world, rather than an interface or nothing
+	 */
+	final boolean targetingWorld;
+	final int canvasX;
+	final int canvasY;
+	final int canvasWidth;
+	final int canvasHeight;
+
+	InputSnapshot(boolean menuOpen, int menuX, int menuY, int menuWidth, int menuHeight, int menuEntries,
+		boolean targetingWorld, int canvasX, int canvasY, int canvasWidth, int canvasHeight)
+	{
+		this.menuOpen = menuOpen;
+		this.menuX = menuX;
+		this.menuY = menuY;
+		this.menuWidth = menuWidth;
+		this.menuHeight = menuHeight;
+		this.menuEntries = menuEntries;
+		this.targetingWorld = targetingWorld;
+		this.canvasX = canvasX;
+		this.canvasY = canvasY;
+		this.canvasWidth = canvasWidth;
+		this.canvasHeight = canvasHeight;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import java.util.Arrays;
+
+/**
+ * Simplified meshes of the static models in the scene buffer, looked up by the buffer offset
+ * of the full detail model
+ */
+final class LodTable
+{
+	static final LodTable EMPTY = new LodTable(new int[0], new int[0], 0);
+
+	// sorted buffer offsets of the full detail models
+	private final int[] bases;
+	// for each base and level, the offset, uv offset and face count of the simplified mesh.
+	// A face count of 0 means the level wasn't worth keeping.
+	private final int[] lods;
+	private final int levels;
+
+	LodTable(int[] bases, int[] lods, int levels)
+	{
+		this.bases = bases;
+		this.lods = lods;
+		this.levels = levels;
+	}
+
+	/**
+	 * @return the index of the model's meshes, or -1 if it has none
+	 */
+	int find(int bufferOffset)
+	{
+		final int index = Arrays.binarySearch(bases, bufferOffset);
+		return index >= 0 ? index : -1;
+	}
+
+	int levels()
+	{
+		return levels;
+	}
+
+	int offset(int index, int level)
+	{
+		return lods[(index * levels + level) * 3];
+	}
+
+	int uvOffset(int index, int level)
+	{
+		return lods[(index * levels + level) * 3 + 1];
+	}
+
+	int faces(int index, int level)
+	{
+		return lods[(index * levels + level) * 3 + 2];
+	}
+
+	int size()
+	{
+		return bases.length;
+	}
+}
@@ -0,0 +1,480 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Model;
+import org.lwjgl.opengl.GL43C;
+
+/**
+ * Keeps the geometry of temporary models resident on the GPU across frames, so an unchanged model
+ * only needs a modelinfo record instead of being pushed and uploaded again. Models are keyed on
+ * their identity. Since the client animates model instances in place, each slot also keeps a cheap
+ * version of the contents, and a model whose version changed is uploaded again into its own range.
+ */
+@Singleton
+@Slf4j
+class ModelCache
+{
+	// frames a model may go undrawn before its slot is freed
+	private static final int EVICT_FRAMES = 60;
+	private static final int STATS_FRAMES = 600;
+	// vertices and faces read for the version of a model
+	private static final int VERSION_SAMPLES = 16;
+
+	final GLBuffer vertexBuffer = new GLBuffer("model cache vertex buffer");
+	final GLBuffer uvBuffer = new GLBuffer("model cache uv buffer");
+
+	private final SceneUploader sceneUploader;
+
+	private final Map<Model, Slot> slots = new IdentityHashMap<>();
+	// slots from least to most recently drawn
+	private Slot oldest;
+	private Slot newest;
+	// free ranges of the buffers, offset to length, in vertices
+	private final TreeMap<Integer, Integer> free = new TreeMap<>();
+	private int capacity;
+	private int vertexBytes;
+	private int uvBytes;
+
+	// geometry pushed this frame, and where it goes: slot offset, staging offset, length, staging uv offset or -1
+	private GpuIntBuffer stagingVertices;
+	private GpuFloatBuffer stagingUvs;
+	private final GpuIntBuffer uploads = new GpuIntBuffer();
+	private int stagedVertices;
+	private int stagedUvs;
+
+	private int frame;
+	private int used;
+	private long hits;
+	private long misses;
+	private long reuploads;
+
+	@Inject
+	ModelCache(SceneUploader sceneUploader)
+	{
+		this.sceneUploader = sceneUploader;
+	}
+
+	/**
+	 * Allocate the cache buffers. The buffer ids must already have been generated.
+	 *
+	 * @param size   size of the vertex buffer in bytes
+	 * @param packed whether geometry uses the packed vertex layout
+	 */
+	void init(int size, boolean packed)
+	{
+		vertexBytes = packed ? 3 * Integer.BYTES : 4 * Integer.BYTES;
+		uvBytes = packed ? 2 * Float.BYTES : 4 * Float.BYTES;
+		capacity = size / vertexBytes;
+
+		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, vertexBuffer.glBufferId);
+		GL43C.glBufferData(GL43C.GL_ARRAY_BUFFER, (long) capacity * vertexBytes, GL43C.GL_DYNAMIC_DRAW);
+		vertexBuffer.size = capacity * vertexBytes;
+		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, uvBuffer.glBufferId);
+		GL43C.glBufferData(GL43C.GL_ARRAY_BUFFER, (long) capacity * uvBytes, GL43C.GL_DYNAMIC_DRAW);
+		uvBuffer.size = capacity * uvBytes;
+		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, 0);
+
+		if (stagingVertices != null)
+		{
+			stagingVertices.free();
+			stagingUvs.free();
+		}
+		stagingVertices = new GpuIntBuffer(packed);
+		stagingUvs = new GpuFloatBuffer(packed);
+		clear();
+	}
+
+	/**
+	 * Give the staging memory back to the arena. The cache can be initialized again afterwards.
+	 */
+	void free()
+	{
+		clear();
+		uploads.free();
+		if (stagingVertices != null)
+		{
+			stagingVertices.free();
+			stagingUvs.free();
+			stagingVertices = null;
+			stagingUvs = null;
+		}
+	}
+
+	void clear()
+	{
+		slots.clear();
+		oldest = newest = null;
+		free.clear();
+		free.put(0, capacity);
+		used = 0;
+		uploads.clear();
+		if (stagingVertices != null)
+		{
+			stagingVertices.clear();
+			stagingUvs.clear();
+		}
+		stagedVertices = stagedUvs = 0;
+	}
+
+	void startFrame()
+	{
+		++frame;
+
+		if (frame % (EVICT_FRAMES / 4) == 0)
+		{
+			evict(frame - EVICT_FRAMES);
+		}
+
+		if (frame % STATS_FRAMES == 0 && hits + misses > 0)
+		{
+			log.debug("Model cache: {}% hit rate, {} changed in place, {} resident models, {}% full",
+				hits * 100 / (hits + misses), reuploads, slots.size(), capacity > 0 ? (long) used * 100 / capacity : 0);
+			hits = misses = reuploads = 0;
+		}
+	}
+
+	/**
+	 * Get the offset of the model's geometry in the cache buffers, pushing it if it isn't resident
+	 * or has changed since it was pushed
+	 *
+	 * @return the offset in vertices, or -1 if the model doesn't fit
+	 */
+	int get(Model model)
+	{
+		final int length = model.getFaceCount() * 3;
+		final long version = version(model);
+		Slot slot = slots.get(model);
+		if (slot != null && slot.version == version && slot.length == length)
+		{
+			++hits;
+			touch(slot);
+			return slot.offset;
+		}
+
+		++misses;
+
+		int offset;
+		if (slot != null)
+		{
+			if (slot.frame == frame)
+			{
+				// drawn this frame with other contents, its range is already read and can't be written over
+				return -1;
+			}
+
+			++reuploads;
+			if (slot.length == length)
+			{
+				offset = slot.offset;
+			}
+			else
+			{
+				remove(slot);
+				slot = null;
+				offset = allocate(length);
+			}
+		}
+		else
+		{
+			offset = allocate(length);
+		}
+
+		if (offset == -1)
+		{
+			// make room from everything that isn't drawn this frame, and try once more
+			evict(frame - 1);
+			offset = allocate(length);
+			if (offset == -1)
+			{
+				return -1;
+			}
+		}
+
+		final boolean hasUv = model.getFaceTextures() != null;
+		final int len = sceneUploader.pushModel(model, stagingVertices, stagingUvs);
+		uploads.ensureCapacity(4);
+		uploads.getBuffer()
+			.put(offset)
+			.put(stagedVertices)
+			.put(len)
+			.put(hasUv ? stagedUvs : -1);
+		stagedVertices += len;
+		if (hasUv)
+		{
+			stagedUvs += len;
+		}
+
+		// pushModel emits every face, so the allocation is exact
+		if (slot == null)
+		{
+			slot = new Slot(model, offset, length);
+			slots.put(model, slot);
+		}
+		slot.version = version;
+		slot.unordered = SceneUploader.isUnordered(model);
+		touch(slot);
+		return offset;
+	}
+
+	/**
+	 * Whether the faces of a resident model can be drawn in any order, see {@link SceneUploader#isUnordered}.
+	 * This is classified once per upload rather than on every draw, and is only valid after {@link #get}
+	 * returned an offset for the model this frame.
+	 */
+	boolean isUnordered(Model model)
+	{
+		final Slot slot = slots.get(model);
+		return slot != null && slot.unordered;
+	}
+
+	/**
+	 * Upload the geometry pushed this frame. Must be called before the compute shaders run.
+	 */
+	void flush()
+	{
+		if (stagedVertices == 0)
+		{
+			return;
+		}
+
+		final IntBuffer vertices = stagingVertices.getBuffer();
+		final FloatBuffer uvs = stagingUvs.getBuffer();
+		final int vertexWords = vertexBytes / Integer.BYTES;
+		final int uvWords = uvBytes / Float.BYTES;
+
+		final IntBuffer pending = uploads.getBuffer();
+		pending.flip();
+		while (pending.hasRemaining())
+		{
+			final int offset = pending.get();
+			final int vertexOffset = pending.get();
+			final int len = pending.get();
+			final int uvOffset = pending.get();
+
+			GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, vertexBuffer.glBufferId);
+			GL43C.glBufferSubData(GL43C.GL_ARRAY_BUFFER, (long) offset * vertexBytes,
+				vertices.duplicate().limit((vertexOffset + len) * vertexWords).position(vertexOffset * vertexWords));
+
+			if (uvOffset != -1)
+			{
+				GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, uvBuffer.glBufferId);
+				GL43C.glBufferSubData(GL43C.GL_ARRAY_BUFFER, (long) offset * uvBytes,
+					uvs.duplicate().limit((uvOffset + len) * uvWords).position(uvOffset * uvWords));
+			}
+		}
+		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, 0);
+
+		uploads.clear();
+		stagingVertices.clear();
+		stagingUvs.clear();
+		stagedVertices = stagedUvs = 0;
+	}
+
+	/**
+	 * Free the slots last drawn before the given frame. Slots are kept in drawing order, so this
+	 * stops at the first slot drawn since.
+	 */
+	private void evict(int olderThan)
+	{
+		while (oldest != null && oldest.frame < olderThan)
+		{
+			remove(oldest);
+		}
+	}
+
+	private void remove(Slot slot)
+	{
+		unlink(slot);
+		slots.remove(slot.model);
+		release(slot.offset, slot.length);
+	}
+
+	/**
+	 * Mark the slot as drawn this frame, moving it to the newest end of the list
+	 */
+	private void touch(Slot slot)
+	{
+		slot.frame = frame;
+		if (slot == newest)
+		{
+			return;
+		}
+
+		unlink(slot);
+		slot.prev = newest;
+		if (newest != null)
+		{
+			newest.next = slot;
+		}
+		newest = slot;
+		if (oldest == null)
+		{
+			oldest = slot;
+		}
+	}
+
+	private void unlink(Slot slot)
+	{
+		if (slot.prev != null)
+		{
+			slot.prev.next = slot.next;
+		}
+		else if (oldest == slot)
+		{
+			oldest = slot.next;
+		}
+
+		if (slot.next != null)
+		{
+			slot.next.prev = slot.prev;
+		}
+		else if (newest == slot)
+		{
+			newest = slot.prev;
+		}
+
+		slot.prev = slot.next = null;
+	}
+
+	private int allocate(int length)
+	{
+		for (Map.Entry<Integer, Integer> range : free.entrySet())
+		{
+			final int offset = range.getKey();
+			final int size = range.getValue();
+			if (size >= length)
+			{
+				free.remove(offset);
+				if (size > length)
+				{
+					free.put(offset + length, size - length);
+				}
+				used += length;
+				return offset;
+			}
+		}
+		return -1;
+	}
+
+	private void release(int offset, int length)
+	{
+		used -= length;
+
+		Map.Entry<Integer, Integer> next = free.ceilingEntry(offset);
+		if (next != null && next.getKey() == offset + length)
+		{
+			free.remove(next.getKey());
+			length += next.getValue();
+		}
+
+		Map.Entry<Integer, Integer> prev = free.floorEntry(offset);
+		if (prev != null && prev.getKey() + prev.getValue() == offset)
+		{
+			offset = prev.getKey();
+			length += prev.getValue();
+		}
+
+		free.put(offset, length);
+	}
+
+	/**
+	 * Cheap check for the changes the client makes to a model in place. The arrays it reads are
+	 * compared by identity, and their contents are sampled at up to {@link #VERSION_SAMPLES} evenly
+	 * spaced vertices and faces instead of being hashed whole, which would cost as much per draw as
+	 * a miss. Animation moves most of a model's vertices at once, so a sample sees it.
+	 */
+	private static long version(Model model)
+	{
+		final int vertexCount = model.getVerticesCount();
+		final int faceCount = model.getFaceCount();
+
+		long h = GeometryHash.SEED;
+		h = GeometryHash.hash(h, System.identityHashCode(model.getVerticesX()));
+		h = GeometryHash.hash(h, System.identityHashCode(model.getFaceColors1()));
+		h = GeometryHash.hash(h, System.identityHashCode(model.getFaceIndices1()));
+		h = GeometryHash.hash(h, System.identityHashCode(model.getFaceTextures()));
+		h = GeometryHash.hash(h, System.identityHashCode(model.getFaceTransparencies()));
+		h = GeometryHash.hash(h, System.identityHashCode(model.getFaceRenderPriorities()));
+		h = GeometryHash.hash(h, faceCount);
+		h = GeometryHash.hash(h, vertexCount);
+
+		final float[] verticesX = model.getVerticesX();
+		final float[] verticesY = model.getVerticesY();
+		final float[] verticesZ = model.getVerticesZ();
+		final int vertexStep = Math.max(1, vertexCount / VERSION_SAMPLES);
+		for (int i = 0; i < vertexCount; i += vertexStep)
+		{
+			h = GeometryHash.hash(h, Float.floatToRawIntBits(verticesX[i]));
+			h = GeometryHash.hash(h, Float.floatToRawIntBits(verticesY[i]));
+			h = GeometryHash.hash(h, Float.floatToRawIntBits(verticesZ[i]));
+		}
+
+		final int[] colors1 = model.getFaceColors1();
+		final int[] colors3 = model.getFaceColors3();
+		final byte[] transparencies = model.getFaceTransparencies();
+		final int faceStep = Math.max(1, faceCount / VERSION_SAMPLES);
+		for (int i = 0; i < faceCount; i += faceStep)
+		{
+			h = GeometryHash.hash(h, colors1[i]);
+			h = GeometryHash.hash(h, colors3[i]);
+			if (transparencies != null)
+			{
+				h = GeometryHash.hash(h, transparencies[i]);
+			}
+		}
+
+		h = GeometryHash.hash(h, (model.getOverrideAmount() & 0xff) << 24 | (model.getOverrideHue() & 0xff) << 16
+			| (model.getOverrideSaturation() & 0xff) << 8 | (model.getOverrideLuminance() & 0xff));
+		return h;
+	}
+
+	private static final class Slot
+	{
+		final Model model;
+		final int offset;
+		final int length;
+		long version;
+		boolean unordered;
+		int frame;
+		Slot prev;
+		Slot next;
+
+		Slot(Model model, int offset, int length)
+		{
+			this.model = model;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import net.runelite.api.Model;
+
+/**
+ * Quadric error metric mesh simplification by half-edge collapse. Vertices only ever collapse
+ * onto other vertices of the model, so a simplified mesh is a remapping of the model's vertices
+ * and keeps its integer coordinates.
+ * <p>
+ * Vertices on the border between faces of different hue and saturation, alpha, priority or
+ * texture are locked, as are vertices of textured faces and of open or non-manifold edges, so
+ * colour regions and silhouettes keep their shape.
+ */
+final class ModelSimplifier
+{
+	private final int vertexCount;
+	private final int faceCount;
+	private final float[] vertexX;
+	private final float[] vertexY;
+	private final float[] vertexZ;
+
+	// current corners of each face, and whether it is still a triangle
+	private final int[] corners;
+	private final boolean[] alive;
+	private int aliveFaces;
+
+	private final int[] remap;
+	private final boolean[] locked;
+	private final int[] version;
+	private final double[] quadrics;
+
+	// faces around each vertex. May contain faces which no longer use the vertex, these are skipped.
+	private final int[][] vertexFaces;
+	private final int[] vertexFaceCount;
+
+	private final PriorityQueue<Collapse> queue = new PriorityQueue<>();
+
+	private ModelSimplifier(Model model)
+	{
+		vertexCount = model.getVerticesCount();
+		faceCount = model.getFaceCount();
+		vertexX = model.getVerticesX();
+		vertexY = model.getVerticesY();
+		vertexZ = model.getVerticesZ();
+
+		corners = new int[faceCount * 3];
+		alive = new boolean[faceCount];
+		remap = new int[vertexCount];
+		locked = new boolean[vertexCount];
+		version = new int[vertexCount];
+		quadrics = new double[vertexCount * 10];
+		vertexFaces = new int[vertexCount][];
+		vertexFaceCount = new int[vertexCount];
+
+		for (int i = 0; i < vertexCount; ++i)
+		{
+			remap[i] = i;
+		}
+
+		final int[] indices1 = model.getFaceIndices1();
+		final int[] indices2 = model.getFaceIndices2();
+		final int[] indices3 = model.getFaceIndices3();
+		final int[] color1s = model.getFaceColors1();
+		final int[] color3s = model.getFaceColors3();
+		final short[] faceTextures = model.getFaceTextures();
+		final byte[] transparencies = model.getFaceTransparencies();
+		final byte[] priorities = model.getFaceRenderPriorities();
+
+		final int[] materials = new int[vertexCount];
+		final boolean[] seen = new boolean[vertexCount];
+		final Map<Long, Integer> edges = new HashMap<>();
+
+		for (int face = 0; face < faceCount; ++face)
+		{
+			if (color3s[face] == -2)
+			{
+				// hidden, and not emitted in simplified meshes
+				continue;
+			}
+
+			final int a = indices1[face];
+			final int b = indices2[face];
+			final int c = indices3[face];
+			if (a == b || b == c || a == c)
+			{
+				continue;
+			}
+
+			corners[face * 3] = a;
+			corners[face * 3 + 1] = b;
+			corners[face * 3 + 2] = c;
+			alive[face] = true;
+			++aliveFaces;
+
+			final boolean textured = faceTextures != null && faceTextures[face] != -1;
+			// hue and saturation, ignoring the lightness which varies with shading
+			final int material = ((color1s[face] >> 7) & 0x3ff)
+				| (transparencies != null ? (transparencies[face] & 0xff) << 10 : 0)
+				| (priorities != null ? (priorities[face] & 0xf) << 18 : 0);
+
+			for (int k = 0; k < 3; ++k)
+			{
+				final int v = corners[face * 3 + k];
+				if (textured || (seen[v] && materials[v] != material))
+				{
+					locked[v] = true;
+				}
+				seen[v] = true;
+				materials[v] = material;
+
+				addVertexFace(v, face);
+				edges.merge(edgeKey(v, corners[face * 3 + (k + 1) % 3]), 1, Integer::sum);
+			}
+
+			addPlane(a, b, c);
+		}
+
+		for (Map.Entry<Long, Integer> edge : edges.entrySet())
+		{
+			if (edge.getValue() != 2)
+			{
+				final long key = edge.getKey();
+				locked[(int) (key >>> 32)] = true;
+				locked[(int) key] = true;
+			}
+		}
+
+		for (int face = 0; face < faceCount; ++face)
+		{
+			if (alive[face])
+			{
+				for (int k = 0; k < 3; ++k)
+				{
+					final int u = corners[face * 3 + k];
+					final int v = corners[face * 3 + (k + 1) % 3];
+					push(u, v);
+					push(v, u);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Simplify the model to successively lower face counts
+	 *
+	 * @param ratios fractions of the model's visible faces to keep, in decreasing order
+	 * @return for each ratio, the vertex each model vertex collapsed onto. Faces with two corners
+	 * on the same vertex are no longer part of the mesh.
+	 */
+	static int[][] simplify(Model model, float[] ratios)
+	{
+		final ModelSimplifier simplifier = new ModelSimplifier(model);
+		final int faces = simplifier.aliveFaces;
+		final int[][] result = new int[ratios.length][];
+		for (int i = 0; i < ratios.length; ++i)
+		{
+			simplifier.collapseTo((int) (faces * ratios[i]));
+			result[i] = simplifier.snapshot();
+		}
+		return result;
+	}
+
+	private void collapseTo(int targetFaces)
+	{
+		Collapse collapse;
+		while (aliveFaces > targetFaces && (collapse = queue.poll()) != null)
+		{
+			final int u = collapse.from;
+			final int v = collapse.to;
+			if (remap[u] != u || remap[v] != v
+				|| version[u] != collapse.fromVersion || version[v] != collapse.toVersion
+				|| flips(u, v))
+			{
+				continue;
+			}
+
+			for (int i = 0; i < vertexFaceCount[u]; ++i)
+			{
+				final int face = vertexFaces[u][i];
+				if (!alive[face] || !uses(face, u))
+				{
+					continue;
+				}
+
+				if (uses(face, v))
+				{
+					alive[face] = false;
+					--aliveFaces;
+				}
+				else
+				{
+					for (int k = 0; k < 3; ++k)
+					{
+						if (corners[face * 3 + k] == u)
+						{
+							corners[face * 3 + k] = v;
+						}
+					}
+					addVertexFace(v, face);
+				}
+			}
+
+			remap[u] = v;
+			for (int k = 0; k < 10; ++k)
+			{
+				quadrics[v * 10 + k] += quadrics[u * 10 + k];
+			}
+			++version[u];
+			++version[v];
+
+			for (int i = 0; i < vertexFaceCount[v]; ++i)
+			{
+				final int face = vertexFaces[v][i];
+				if (!alive[face] || !uses(face, v))
+				{
+					continue;
+				}
+
+				for (int k = 0; k < 3; ++k)
+				{
+					final int w = corners[face * 3 + k];
+					if (w != v)
+					{
+						push(v, w);
+						push(w, v);
+					}
+				}
+			}
+		}
+	}
+
+	private int[] snapshot()
+	{
+		final int[] map = new int[vertexCount];
+		for (int i = 0; i < vertexCount; ++i)
+		{
+			int v = i;
+			while (remap[v] != v)
+			{
+				v = remap[v];
+			}
+			map[i] = v;
+		}
+		return map;
+	}
+
+	private void push(int from, int to)
+	{
+		if (locked[from])
+		{
+			return;
+		}
+
+		final double cost = error(from, to);
+		queue.add(new Collapse(cost, from, to, version[from], version[to]));
+	}
+
+	/**
+	 * Error of the combined quadric of both vertices, at the position of the vertex collapsed onto
+	 */
+	private double error(int from, int to)
+	{
+		final double x = vertexX[to];
+		final double y = vertexY[to];
+		final double z = vertexZ[to];
+		final int q1 = from * 10;
+		final int q2 = to * 10;
+		final double[] q = quadrics;
+		return (q[q1] + q[q2]) * x * x
+			+ 2 * (q[q1 + 1] + q[q2 + 1]) * x * y
+			+ 2 * (q[q1 + 2] + q[q2 + 2]) * x * z
+			+ 2 * (q[q1 + 3] + q[q2 + 3]) * x
+			+ (q[q1 + 4] + q[q2 + 4]) * y * y
+			+ 2 * (q[q1 + 5] + q[q2 + 5]) * y * z
+			+ 2 * (q[q1 + 6] + q[q2 + 6]) * y
+			+ (q[q1 + 7] + q[q2 + 7]) * z * z
+			+ 2 * (q[q1 + 8] + q[q2 + 8]) * z
+			+ (q[q1 + 9] + q[q2 + 9]);
+	}
+
+	/**
+	 * Whether moving u onto v would turn any of the faces that remain over
+	 */
+	private boolean flips(int u, int v)
+	{
+		for (int i = 0; i < vertexFaceCount[u]; ++i)
+		{
+			final int face = vertexFaces[u][i];
+			if (!alive[face] || !uses(face, u) || uses(face, v))
+			{
+				continue;
+			}
+
+			final int a = corners[face * 3];
+			final int b = corners[face * 3 + 1];
+			final int c = corners[face * 3 + 2];
+			final double[] before = normal(a, b, c, -1, -1);
+			final double[] after = normal(a, b, c, u, v);
+			if (before[0] * after[0] + before[1] * after[1] + before[2] * after[2] <= 0)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private double[] normal(int a, int b, int c, int replace, int with)
+	{
+		if (a == replace)
+		{
+			a = with;
+		}
+		if (b == replace)
+		{
+			b = with;
+		}
+		if (c == replace)
+		{
+			c = with;
+		}
+
+		final double ux = vertexX[b] - vertexX[a];
+		final double uy = vertexY[b] - vertexY[a];
+		final double uz = vertexZ[b] - vertexZ[a];
+		final double vx = vertexX[c] - vertexX[a];
+		final double vy = vertexY[c] - vertexY[a];
+		final double vz = vertexZ[c] - vertexZ[a];
+		return new double[]{
+			uy * vz - uz * vy,
+			uz * vx - ux * vz,
+			ux * vy - uy * vx
+		};
+	}
+
+	/**
+	 * Add the area weighted quadric of the face's plane to its vertices
+	 */
+	private void addPlane(int a, int b, int c)
+	{
+		final double[] n = normal(a, b, c, -1, -1);
+		final double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+		if (length == 0)
+		{
+			return;
+		}
+
+		final double weight = length / 2;
+		final double nx = n[0] / length;
+		final double ny = n[1] / length;
+		final double nz = n[2] / length;
+		final double d = -(nx * vertexX[a] + ny * vertexY[a] + nz * vertexZ[a]);
+		final double[] plane = {
+			nx * nx, nx * ny, nx * nz, nx * d,
+			ny * ny, ny * nz, ny * d,
+			nz * nz, nz * d,
+			d * d
+		};
+
+		for (int v : new int[]{a, b, c})
+		{
+			for (int k = 0; k < 10; ++k)
+			{
+				quadrics[v * 10 + k] += plane[k] * weight;
+			}
+		}
+	}
+
+	private boolean uses(int face, int v)
+	{
+		return corners[face * 3] == v || corners[face * 3 + 1] == v || corners[face * 3 + 2] == v;
+	}
+
+	private void addVertexFace(int v, int face)
+	{
+		int[] faces = vertexFaces[v];
+		if (faces == null)
+		{
+			faces = vertexFaces[v] = new int[8];
+		}
+		else if (vertexFaceCount[v] == faces.length)
+		{
+			faces = vertexFaces[v] = Arrays.copyOf(faces, faces.length * 2);
+		}
+		faces[vertexFaceCount[v]++] = face;
+	}
+
+	private static long edgeKey(int a, int b)
+	{
+		return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+	}
+
+	private static final class Collapse implements Comparable<Collapse>
+	{
+		final double cost;
+		final int from;
+		final int to;
+		final int fromVersion;
+		final int toVersion;
+
+		Collapse(double cost, int from, int to, int fromVersion, int toVersion)
+		{
+			this.cost = cost;
+			this.from = from;
+			this.to = to;
+			this.fromVersion = fromVersion;
+			this.toVersion = toVersion;
+		}
+
+		@Override
+		public int compareTo(Collapse other)
+		{
+			return Double.compare(cost, other.cost);
+		}
+	}
+}
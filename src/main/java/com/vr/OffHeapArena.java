@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * Pool of off-heap memory backing the gpu staging buffers. Blocks are rounded up to a power of two
+ * size class and returned to the pool when freed, so buffers that grow every scene reuse the same
+ * memory instead of leaving old direct buffers for the garbage collector.
+ */
+@Slf4j
+final class OffHeapArena
+{
+	private static final int MIN_CLASS = 12; // 4 KiB
+	private static final int MAX_CLASS = 30; // 1 GiB
+
+	private static final Object lock = new Object();
+	@SuppressWarnings("unchecked")
+	private static final ArrayDeque<ByteBuffer>[] pools = new ArrayDeque[MAX_CLASS + 1];
+
+	// bytes handed out and not yet freed
+	private static long live;
+	// high water mark of live bytes, since startup and since the last trim
+	private static long peak;
+	private static long recentPeak;
+	// bytes held in the pools
+	private static long pooled;
+
+	private OffHeapArena()
+	{
+	}
+
+	/**
+	 * Allocate a block of at least the given size, in native byte order. The block must be given back
+	 * with {@link #free}, and its contents are undefined.
+	 */
+	static ByteBuffer allocate(int size)
+	{
+		final int sizeClass = sizeClass(size);
+		if (sizeClass > MAX_CLASS)
+		{
+			throw new OutOfMemoryError("off-heap allocation of " + size + " bytes is too large");
+		}
+
+		ByteBuffer block = null;
+		synchronized (lock)
+		{
+			ArrayDeque<ByteBuffer> pool = pools[sizeClass];
+			if (pool != null && !pool.isEmpty())
+			{
+				block = pool.pop();
+				pooled -= block.capacity();
+			}
+
+			live += 1L << sizeClass;
+			peak = Math.max(peak, live);
+			recentPeak = Math.max(recentPeak, live);
+		}
+
+		if (block == null)
+		{
+			block = MemoryUtil.memAlloc(1 << sizeClass);
+		}
+
+		block.clear();
+		return block.order(ByteOrder.nativeOrder());
+	}
+
+	static void free(ByteBuffer block)
+	{
+		final int sizeClass = sizeClass(block.capacity());
+		assert block.capacity() == 1 << sizeClass;
+
+		synchronized (lock)
+		{
+			ArrayDeque<ByteBuffer> pool = pools[sizeClass];
+			if (pool == null)
+			{
+				pool = pools[sizeClass] = new ArrayDeque<>();
+			}
+			pool.push(block);
+			pooled += block.capacity();
+			live -= block.capacity();
+		}
+	}
+
+	/**
+	 * Release pooled memory beyond what the peak since the last trim needed, largest blocks first,
+	 * and start a new peak window. Called after each scene load.
+	 */
+	static void trim()
+	{
+		long released = 0;
+		synchronized (lock)
+		{
+			final long keep = Math.max(0, recentPeak - live);
+			for (int sizeClass = MAX_CLASS; sizeClass >= MIN_CLASS && pooled > keep; --sizeClass)
+			{
+				ArrayDeque<ByteBuffer> pool = pools[sizeClass];
+				while (pool != null && !pool.isEmpty() && pooled > keep)
+				{
+					ByteBuffer block = pool.pop();
+					pooled -= block.capacity();
+					released += block.capacity();
+					MemoryUtil.memFree(block);
+				}
+			}
+			recentPeak = live;
+		}
+
+		log.debug("Off-heap arena: {} KiB live, {} KiB peak, {} KiB pooled, released {} KiB",
+			liveBytes() >> 10, peakBytes() >> 10, pooledBytes() >> 10, released >> 10);
+	}
+
+	static long liveBytes()
+	{
+		synchronized (lock)
+		{
+			return live;
+		}
+	}
+
+	static long peakBytes()
+	{
+		synchronized (lock)
+		{
+			return peak;
+		}
+	}
+
+	static long pooledBytes()
+	{
+		synchronized (lock)
+		{
+			return pooled;
+		}
+	}
+
+	private static int sizeClass(int size)
+	{
+		return Math.max(MIN_CLASS, 32 - Integer.numberOfLeadingZeros(Math.max(1, size) - 1));
+	}
+}
@@ -41,6 +41,7 @@ import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
+import java.util.Arrays;
 
 import static org.lwjgl.opencl.APPLEGLSharing.CL_CGL_DEVICE_FOR_CURRENT_VIRTUAL_SCREEN_APPLE;
 import static org.lwjgl.opencl.APPLEGLSharing.clGetGLContextInfoAPPLE;
@@ -73,8 +74,6 @@ class OpenCLManager
 	private static final String KERNEL_NAME_LARGE = "computeLarge";
 
 	private static final int MIN_WORK_GROUP_SIZE = 256;
-	private static final int SMALL_SIZE = VRPlugin.SMALL_TRIANGLE_COUNT;
-	private static final int LARGE_SIZE = VRPlugin.MAX_TRIANGLE;
 	//  struct shared_data {
 	//      int totalNum[12];
 	//      int totalDistance[12];
@@ -86,21 +85,19 @@ class OpenCLManager
 
 	private boolean initialized;
 
-	// The number of faces each worker processes in the two kernels
-	private int largeFaceCount;
-	private int smallFaceCount;
+	// The face count of each sorting kernel, and the number of faces each worker processes in it
+	private int[] tierSizes;
+	private int[] faceCounts;
 
 	private long device;
 	long context;
 	private long commandQueue;
 
 	private long programUnordered;
-	private long programSmall;
-	private long programLarge;
+	private long[] programs;
 
 	private long kernelUnordered;
-	private long kernelSmall;
-	private long kernelLarge;
+	private long[] kernels;
 
 	private long tileHeightImage;
 
@@ -109,11 +106,18 @@ class OpenCLManager
 		Configuration.OPENCL_EXPLICIT_INIT.set(true);
 	}
 
-	void init(AWTContext awtContext)
+	void init(AWTContext awtContext, ComputeTier[] tiers)
 	{
 		device = context = commandQueue = 0L;
-		programUnordered = programSmall = programLarge = 0L;
-		kernelUnordered = kernelSmall = kernelLarge = 0L;
+		programUnordered = kernelUnordered = 0L;
+		tierSizes = new int[tiers.length];
+		for (int i = 0; i < tiers.length; ++i)
+		{
+			tierSizes[i] = tiers[i].size;
+		}
+		faceCounts = new int[tiers.length];
+		programs = new long[tiers.length];
+		kernels = new long[tiers.length];
 		tileHeightImage = 0L;
 
 		CL.create();
@@ -151,12 +155,22 @@ class OpenCLManager
 			}
 
 			CL12.clReleaseKernel(kernelUnordered);
-			CL12.clReleaseKernel(kernelSmall);
-			CL12.clReleaseKernel(kernelLarge);
+			for (long kernel : kernels)
+			{
+				if (kernel != 0L)
+				{
+					CL12.clReleaseKernel(kernel);
+				}
+			}
 
 			CL12.clReleaseProgram(programUnordered);
-			CL12.clReleaseProgram(programSmall);
-			CL12.clReleaseProgram(programLarge);
+			for (long program : programs)
+			{
+				if (program != 0L)
+				{
+					CL12.clReleaseProgram(program);
+				}
+			}
 
 			CL12.clReleaseCommandQueue(commandQueue);
 
@@ -324,10 +338,13 @@ class OpenCLManager
 
 		// Largest power of 2 less than or equal to maxWorkGroupSize
 		int groupSize = 0x80000000 >>> Integer.numberOfLeadingZeros((int) maxWorkGroupSize[0]);
-		largeFaceCount = LARGE_SIZE / (Math.min(groupSize, LARGE_SIZE));
-		smallFaceCount = SMALL_SIZE / (Math.min(groupSize, SMALL_SIZE));
+		for (int i = 0; i < tierSizes.length; ++i)
+		{
+			int size = tierSizes[i];
+			faceCounts[i] = (size + groupSize - 1) / groupSize;
+		}
 
-		log.debug("Face counts: small: {}, large: {}", smallFaceCount, largeFaceCount);
+		log.debug("Face counts: {} for tiers {}", Arrays.toString(faceCounts), Arrays.toString(tierSizes));
 	}
 
 	private void initQueue()
@@ -371,26 +388,23 @@ class OpenCLManager
 
 	private void compilePrograms(MemoryStack stack)
 	{
-		Template templateSmall = new Template()
-			.addInclude(OpenCLManager.class)
-			.add(key -> key.equals("FACE_COUNT") ? ("#define FACE_COUNT " + smallFaceCount) : null);
-		Template templateLarge = new Template()
-			.addInclude(OpenCLManager.class)
-			.add(key -> key.equals("FACE_COUNT") ? ("#define FACE_COUNT " + largeFaceCount) : null);
-
 		String unordered = new Template()
 			.addInclude(OpenCLManager.class)
 			.load("resources/comp_unordered.cl");
-		String small = templateSmall.load("resources/comp.cl");
-		String large = templateLarge.load("resources/comp.cl");
-
 		programUnordered = compileProgram(stack, unordered);
-		programSmall = compileProgram(stack, small);
-		programLarge = compileProgram(stack, large);
-
 		kernelUnordered = getKernel(stack, programUnordered, KERNEL_NAME_UNORDERED);
-		kernelSmall = getKernel(stack, programSmall, KERNEL_NAME_LARGE);
-		kernelLarge = getKernel(stack, programLarge, KERNEL_NAME_LARGE);
+
+		for (int i = 0; i < tierSizes.length; ++i)
+		{
+			final int faceCount = faceCounts[i];
+			String source = new Template()
+				.addInclude(OpenCLManager.class)
+				.add(key -> key.equals("FACE_COUNT") ? ("#define FACE_COUNT " + faceCount) : null)
+				.load("resources/comp.cl");
+
+			programs[i] = compileProgram(stack, source);
+			kernels[i] = getKernel(stack, programs[i], KERNEL_NAME_LARGE);
+		}
 	}
 
 	void uploadTileHeights(Scene scene)
@@ -437,14 +451,12 @@ class OpenCLManager
 		MemoryUtil.memFree(tileBuffer);
 	}
 
-	void compute(int unorderedModels, int smallModels, int largeModels,
+	void compute(int unorderedModels, ComputeTier[] tiers,
 		GLBuffer sceneVertexBuffer,
 		GLBuffer sceneUvBuffer,
 		GLBuffer vertexBuffer,
 		GLBuffer uvBuffer,
 		GLBuffer unorderedBuffer,
-		GLBuffer smallBuffer,
-		GLBuffer largeBuffer,
 		GLBuffer outVertexBuffer,
 		GLBuffer outUvBuffer,
 		GLBuffer uniformBuffer
@@ -452,12 +464,14 @@ class OpenCLManager
 	{
 		try (MemoryStack stack = MemoryStack.stackPush())
 		{
-			PointerBuffer glBuffers = stack.mallocPointer(10);
+			PointerBuffer glBuffers = stack.mallocPointer(8 + tiers.length);
 			glBuffers.put(sceneVertexBuffer.clBuffer);
 			glBuffers.put(sceneUvBuffer.clBuffer);
 			glBuffers.put(unorderedBuffer.clBuffer);
-			glBuffers.put(smallBuffer.clBuffer);
-			glBuffers.put(largeBuffer.clBuffer);
+			for (ComputeTier tier : tiers)
+			{
+				glBuffers.put(tier.glBuffer.clBuffer);
+			}
 			glBuffers.put(vertexBuffer.clBuffer);
 			glBuffers.put(uvBuffer.clBuffer);
 			glBuffers.put(outVertexBuffer.clBuffer);
@@ -468,7 +482,7 @@ class OpenCLManager
 			PointerBuffer acquireEvent = stack.mallocPointer(1);
 			CL10GL.clEnqueueAcquireGLObjects(commandQueue, glBuffers, null, acquireEvent);
 
-			var computeEvents = stack.mallocPointer(3);
+			var computeEvents = stack.mallocPointer(1 + tiers.length);
 			if (unorderedModels > 0)
 			{
 				CL12.clSetKernelArg1p(kernelUnordered, 0, unorderedBuffer.clBuffer);
@@ -486,40 +500,31 @@ class OpenCLManager
 				computeEvents.position(computeEvents.position() + 1);
 			}
 
-			if (smallModels > 0)
+			for (int i = 0; i < tiers.length; ++i)
 			{
-				CL12.clSetKernelArg(kernelSmall, 0, (SHARED_SIZE + SMALL_SIZE) * Integer.BYTES);
-				CL12.clSetKernelArg1p(kernelSmall, 1, smallBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelSmall, 2, sceneVertexBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelSmall, 3, vertexBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelSmall, 4, sceneUvBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelSmall, 5, uvBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelSmall, 6, outVertexBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelSmall, 7, outUvBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelSmall, 8, uniformBuffer.clBuffer);
-				CL12.clSetKernelArg1l(kernelSmall, 9, tileHeightImage);
-
-				CL12.clEnqueueNDRangeKernel(commandQueue, kernelSmall, 1, null,
-					stack.pointers(smallModels * (SMALL_SIZE / smallFaceCount)), stack.pointers(SMALL_SIZE / smallFaceCount),
-					acquireEvent, computeEvents);
-				computeEvents.position(computeEvents.position() + 1);
-			}
+				ComputeTier tier = tiers[i];
+				if (tier.models == 0)
+				{
+					continue;
+				}
 
-			if (largeModels > 0)
-			{
-				CL12.clSetKernelArg(kernelLarge, 0, (SHARED_SIZE + LARGE_SIZE) * Integer.BYTES);
-				CL12.clSetKernelArg1p(kernelLarge, 1, largeBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelLarge, 2, sceneVertexBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelLarge, 3, vertexBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelLarge, 4, sceneUvBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelLarge, 5, uvBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelLarge, 6, outVertexBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelLarge, 7, outUvBuffer.clBuffer);
-				CL12.clSetKernelArg1p(kernelLarge, 8, uniformBuffer.clBuffer);
-				CL12.clSetKernelArg1l(kernelLarge, 9, tileHeightImage);
-
-				CL12.clEnqueueNDRangeKernel(commandQueue, kernelLarge, 1, null,
-					stack.pointers(largeModels * (LARGE_SIZE / largeFaceCount)), stack.pointers(LARGE_SIZE / largeFaceCount),
+				long kernel = kernels[i];
+				int size = tierSizes[i];
+				int workers = (size + faceCounts[i] - 1) / faceCounts[i];
+
+				CL12.clSetKernelArg(kernel, 0, (SHARED_SIZE + (long) workers * faceCounts[i]) * Integer.BYTES);
+				CL12.clSetKernelArg1p(kernel, 1, tier.glBuffer.clBuffer);
+				CL12.clSetKernelArg1p(kernel, 2, sceneVertexBuffer.clBuffer);
+				CL12.clSetKernelArg1p(kernel, 3, vertexBuffer.clBuffer);
+				CL12.clSetKernelArg1p(kernel, 4, sceneUvBuffer.clBuffer);
+				CL12.clSetKernelArg1p(kernel, 5, uvBuffer.clBuffer);
+				CL12.clSetKernelArg1p(kernel, 6, outVertexBuffer.clBuffer);
+				CL12.clSetKernelArg1p(kernel, 7, outUvBuffer.clBuffer);
+				CL12.clSetKernelArg1p(kernel, 8, uniformBuffer.clBuffer);
+				CL12.clSetKernelArg1l(kernel, 9, tileHeightImage);
+
+				CL12.clEnqueueNDRangeKernel(commandQueue, kernel, 1, null,
+					stack.pointers((long) tier.models * workers), stack.pointers(workers),
 					acquireEvent, computeEvents);
 				computeEvents.position(computeEvents.position() + 1);
 			}
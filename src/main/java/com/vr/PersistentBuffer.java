@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.opengl.GL43C;
+import org.lwjgl.opengl.GL44C;
+
+/**
+ * A persistently mapped buffer split into one section per frame in flight. Each frame writes into
+ * its own section, which is fenced once the frame is submitted and reused only after the gpu is
+ * done with it, so streaming uploads need neither a copy nor an implicit sync in the driver.
+ */
+@Slf4j
+class PersistentBuffer
+{
+	static final int FRAMES = 3;
+
+	// bigger than any storage buffer offset alignment
+	private static final int SECTION_ALIGNMENT = 256;
+	private static final long FENCE_TIMEOUT = 1_000_000_000L;
+
+	final String name;
+	int glBufferId = -1;
+	private int sectionSize;
+	private ByteBuffer mapped;
+	private final long[] fences = new long[FRAMES];
+	private int section;
+
+	PersistentBuffer(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Create the buffer storage and map it
+	 *
+	 * @param size size of each section in bytes
+	 */
+	void init(int size)
+	{
+		sectionSize = (size + SECTION_ALIGNMENT - 1) & -SECTION_ALIGNMENT;
+
+		glBufferId = GL43C.glGenBuffers();
+		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, glBufferId);
+		final int flags = GL43C.GL_MAP_WRITE_BIT | GL44C.GL_MAP_PERSISTENT_BIT | GL44C.GL_MAP_COHERENT_BIT;
+		GL44C.glBufferStorage(GL43C.GL_ARRAY_BUFFER, (long) sectionSize * FRAMES, flags);
+		mapped = GL43C.glMapBufferRange(GL43C.GL_ARRAY_BUFFER, 0, (long) sectionSize * FRAMES, flags);
+		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, 0);
+
+		section = 0;
+	}
+
+	void destroy()
+	{
+		if (glBufferId == -1)
+		{
+			return;
+		}
+
+		for (int i = 0; i < FRAMES; ++i)
+		{
+			if (fences[i] != 0)
+			{
+				GL43C.glDeleteSync(fences[i]);
+				fences[i] = 0;
+			}
+		}
+
+		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, glBufferId);
+		GL43C.glUnmapBuffer(GL43C.GL_ARRAY_BUFFER);
+		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, 0);
+		GL43C.glDeleteBuffers(glBufferId);
+		glBufferId = -1;
+		mapped = null;
+	}
+
+	/**
+	 * Reallocate the buffer with sections of at least the given size. Waits for the gpu to finish with
+	 * every section, so this should only happen rarely.
+	 */
+	void grow(int size)
+	{
+		final int newSize = Math.max(sectionSize * 2, size);
+		log.debug("Persistent buffer resize: {} {} -> {}", name, sectionSize, newSize);
+
+		for (int i = 0; i < FRAMES; ++i)
+		{
+			awaitFence(i);
+		}
+		destroy();
+		init(newSize);
+	}
+
+	int sectionSize()
+	{
+		return sectionSize;
+	}
+
+	/**
+	 * Get the current frame's section, waiting for the gpu to finish reading it first
+	 */
+	ByteBuffer map()
+	{
+		awaitFence(section);
+
+		ByteBuffer b = mapped.duplicate();
+		b.position(section * sectionSize);
+		b.limit((section + 1) * sectionSize);
+		return b.slice().order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Bind the current frame's section to an indexed buffer target
+	 */
+	void bind(int target, int index)
+	{
+		GL43C.glBindBufferRange(target, index, glBufferId, (long) section * sectionSize, sectionSize);
+	}
+
+	/**
+	 * Fence the current frame's section and move on to the next one. Call after all commands reading
+	 * the section have been issued.
+	 */
+	void advance()
+	{
+		fences[section] = GL43C.glFenceSync(GL43C.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		section = (section + 1) % FRAMES;
+	}
+
+	private void awaitFence(int i)
+	{
+		final long fence = fences[i];
+		if (fence == 0)
+		{
+			return;
+		}
+
+		final int status = GL43C.glClientWaitSync(fence, GL43C.GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT);
+		if (status == GL43C.GL_TIMEOUT_EXPIRED || status == GL43C.GL_WAIT_FAILED)
+		{
+			log.debug("Persistent buffer {} fence wait failed: {}", name, status);
+		}
+
+		GL43C.glDeleteSync(fence);
+		fences[i] = 0;
+	}
+}
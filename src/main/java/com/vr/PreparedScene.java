@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import net.runelite.api.Scene;
+
+/**
+ * Scene geometry packed off the client thread, waiting to be handed off to GL
+ */
+class PreparedScene
+{
+	final Scene scene;
+	final int sceneId;
+	final GpuIntBuffer vertexBuffer;
+	final GpuFloatBuffer uvBuffer;
+	/**
+	 * Indices into the vertex and uv buffers, or null if the scene is not indexed
+	 */
+	final GpuIntBuffer indexBuffer;
+	/**
+	 * World space tile geometry laid out by zone, or null if tiles are in the scene buffers
+	 */
+	final GpuIntBuffer zoneVertexBuffer;
+	final GpuFloatBuffer zoneUvBuffer;
+	final int[] zoneMerges;
+	final LodTable lodTable;
+	final int[] unorderedOffsets;
+
+	PreparedScene(Scene scene, int sceneId, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuIntBuffer indexBuffer,
+		GpuIntBuffer zoneVertexBuffer, GpuFloatBuffer zoneUvBuffer, int[] zoneMerges,
+		LodTable lodTable, int[] unorderedOffsets)
+	{
+		this.scene = scene;
+		this.sceneId = sceneId;
+		this.vertexBuffer = vertexBuffer;
+		this.uvBuffer = uvBuffer;
+		this.indexBuffer = indexBuffer;
+		this.zoneVertexBuffer = zoneVertexBuffer;
+		this.zoneUvBuffer = zoneUvBuffer;
+		this.zoneMerges = zoneMerges;
+		this.lodTable = lodTable;
+		this.unorderedOffsets = unorderedOffsets;
+	}
+
+	/**
+	 * Give the staging memory back once the geometry is on the gpu
+	 */
+	void free()
+	{
+		vertexBuffer.free();
+		uvBuffer.free();
+		if (indexBuffer != null)
+		{
+			indexBuffer.free();
+		}
+		if (zoneVertexBuffer != null)
+		{
+			zoneVertexBuffer.free();
+			zoneUvBuffer.free();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import org.lwjgl.openxr.XrCompositionLayerQuad;
+import org.lwjgl.openxr.XrSpace;
+import org.lwjgl.system.MemoryStack;
+import static org.lwjgl.openxr.XR10.xrDestroySwapchain;
+
+/**
+ * A flat panel submitted to the compositor as its own layer, instead of being drawn into both eyes.
+ * The compositor samples it per eye and reprojects it, so its image only has to be redrawn when its
+ * content changes. Until then the last released image keeps being shown.
+ */
+class QuadLayer
+{
+	final VRPlugin.Swapchain swapchain;
+	/**
+	 * Part of the image the content was last drawn to
+	 */
+	int contentWidth;
+	int contentHeight;
+	/**
+	 * Set by the client thread when the content changed since the image was last drawn, and
+	 * cleared by whichever thread draws it
+	 */
+	private volatile boolean dirty = true;
+	int overlayColor;
+	private boolean released;
+
+	QuadLayer(VRPlugin.Swapchain swapchain)
+	{
+		this.swapchain = swapchain;
+	}
+
+	/**
+	 * Called when the content changed and the image needs to be drawn again
+	 */
+	void markDirty()
+	{
+		dirty = true;
+	}
+
+	boolean isDirty()
+	{
+		return dirty;
+	}
+
+	/**
+	 * Called before the content is drawn to an image. The flag is cleared first so a change made
+	 * while drawing is drawn again next frame rather than lost.
+	 */
+	void beginDraw()
+	{
+		dirty = false;
+	}
+
+	/**
+	 * Called once the content has been drawn to an image and it was released
+	 */
+	void released()
+	{
+		released = true;
+	}
+
+	/**
+	 * @return if an image has been released, and the layer can be submitted
+	 */
+	boolean hasImage()
+	{
+		return released;
+	}
+
+	/**
+	 * Describe the layer as a quad of the given size in meters, centered on a point and facing +z
+	 */
+	XrCompositionLayerQuad layer(MemoryStack stack, XrSpace space, long flags, float x, float y, float z, float width, float height)
+	{
+		return XrCompositionLayerQuad.calloc(stack)
+			.type$Default()
+			.layerFlags(flags)
+			.space(space)
+			.subImage(si -> si
+				.swapchain(swapchain.handle)
+				.imageRect(rect -> rect
+					.offset(offset -> offset
+						.x(0)
+						.y(0))
+					.extent(extent -> extent
+						.width(contentWidth)
+						.height(contentHeight))))
+			.pose(pose -> pose
+				.orientation(orientation -> orientation.w(1))
+				.position$(position -> position
+					.x(x)
+					.y(y)
+					.z(z)))
+			.size(size -> size
+				.width(width)
+				.height(height));
+	}
+
+	void destroy()
+	{
+		xrDestroySwapchain(swapchain.handle);
+		swapchain.images.free();
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import java.nio.IntBuffer;
+import net.runelite.api.GameState;
+
+/**
+ * What is needed to draw the scene of a finished client frame. The render thread keeps drawing
+ * the last one with new head poses until the client publishes the next.
+ */
+class RetainedFrame
+{
+	final int sky;
+	final float brightness;
+	final GameState gameState;
+	/**
+	 * Client state the scene shader reads, captured on the client thread
+	 */
+	final int drawDistance;
+	final int expandedMapLoading;
+	final int gameCycle;
+	/**
+	 * Game camera projection, applied to the scene before the eye view and projection
+	 */
+	final float[] sceneProjection;
+	/**
+	 * Vertices written to the compute output buffers
+	 */
+	final int targetBufferOffset;
+	final int targetOutlineBufferOffset;
+	final int[] zoneDrawFirst;
+	final int[] zoneDrawCount;
+	final int[] staticDrawFirst;
+	final int[] staticDrawCount;
+
+	RetainedFrame(int sky, float brightness, GameState gameState,
+		int drawDistance, int expandedMapLoading, int gameCycle, float[] sceneProjection,
+		int targetBufferOffset, int targetOutlineBufferOffset,
+		IntBuffer zoneDrawFirst, IntBuffer zoneDrawCount, int zoneDraws,
+		IntBuffer staticDrawFirst, IntBuffer staticDrawCount, int staticDraws)
+	{
+		this.sky = sky;
+		this.brightness = brightness;
+		this.gameState = gameState;
+		this.drawDistance = drawDistance;
+		this.expandedMapLoading = expandedMapLoading;
+		this.gameCycle = gameCycle;
+		this.sceneProjection = sceneProjection;
+		this.targetBufferOffset = targetBufferOffset;
+		this.targetOutlineBufferOffset = targetOutlineBufferOffset;
+		this.zoneDrawFirst = copy(zoneDrawFirst, zoneDraws);
+		this.zoneDrawCount = copy(zoneDrawCount, zoneDraws);
+		this.staticDrawFirst = copy(staticDrawFirst, staticDraws);
+		this.staticDrawCount = copy(staticDrawCount, staticDraws);
+	}
+
+	private static int[] copy(IntBuffer buffer, int count)
+	{
+		final int[] array = new int[count];
+		if (count > 0)
+		{
+			// the client reuses its buffers next frame
+			buffer.duplicate().get(array);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.RuneLite;
+import org.lwjgl.system.MemoryUtil;
+
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * On-disk cache of packed scene geometry. Each entry holds the buffer length of every item
+ * of a scene upload, in upload order, followed by the packed vertex and uv buffers.
+ * Entries are memory mapped when loaded, so a hit costs no more than the GL upload.
+ */
+@Singleton
+@Slf4j
+class SceneCache
+{
+	private static final File CACHE_DIR = new File(RuneLite.RUNELITE_DIR, "vr-scene-cache");
+	private static final String EXTENSION = ".bin";
+
+	private static final int MAGIC = 0x56525343; // VRSC
+	private static final int VERSION = 2;
+	// magic, version, byte order, item count, hash, vertex ints, uv floats
+	private static final int HEADER_SIZE = 32;
+
+	static final class Entry
+	{
+		final int[] lengths;
+		final IntBuffer vertices;
+		final FloatBuffer uvs;
+
+		private Entry(int[] lengths, IntBuffer vertices, FloatBuffer uvs)
+		{
+			this.lengths = lengths;
+			this.vertices = vertices;
+			this.uvs = uvs;
+		}
+	}
+
+	Entry load(String key, long hash, int itemCount)
+	{
+		File file = new File(CACHE_DIR, key + EXTENSION);
+		if (!file.isFile())
+		{
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			final long size = channel.size();
+			if (size < HEADER_SIZE)
+			{
+				return null;
+			}
+
+			// the mapping stays valid after the channel is closed
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (map.getInt() != MAGIC
+				|| map.getInt() != VERSION
+				|| map.getInt() != byteOrderId()
+				|| map.getInt() != itemCount
+				|| map.getLong() != hash)
+			{
+				log.debug("Scene cache entry {} is stale", key);
+				return null;
+			}
+
+			final int vertexInts = map.getInt();
+			final int uvFloats = map.getInt();
+			if (size != HEADER_SIZE + 4L * (itemCount + vertexInts + uvFloats))
+			{
+				log.debug("Scene cache entry {} is truncated", key);
+				return null;
+			}
+
+			map.order(ByteOrder.nativeOrder());
+
+			int[] lengths = new int[itemCount];
+			map.asIntBuffer().get(lengths);
+			map.position(HEADER_SIZE + itemCount * Integer.BYTES);
+
+			IntBuffer vertices = map.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+			vertices.limit(vertexInts);
+			map.position(map.position() + vertexInts * Integer.BYTES);
+
+			FloatBuffer uvs = map.slice().order(ByteOrder.nativeOrder()).asFloatBuffer();
+			uvs.limit(uvFloats);
+
+			// entries are evicted least recently used first
+			file.setLastModified(System.currentTimeMillis());
+			return new Entry(lengths, vertices, uvs);
+		}
+		catch (IOException ex)
+		{
+			log.warn("unable to read scene cache entry {}", key, ex);
+			return null;
+		}
+	}
+
+	void store(String key, long hash, int[] lengths, IntBuffer vertices, FloatBuffer uvs, long maxSize)
+	{
+		if (!CACHE_DIR.isDirectory() && !CACHE_DIR.mkdirs())
+		{
+			log.warn("unable to create scene cache directory {}", CACHE_DIR);
+			return;
+		}
+
+		File file = new File(CACHE_DIR, key + EXTENSION);
+		File tmp = new File(CACHE_DIR, key + ".tmp");
+		try
+		{
+			try (FileChannel channel = FileChannel.open(tmp.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+			{
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + lengths.length * Integer.BYTES);
+				header.putInt(MAGIC)
+					.putInt(VERSION)
+					.putInt(byteOrderId())
+					.putInt(lengths.length)
+					.putLong(hash)
+					.putInt(vertices.remaining())
+					.putInt(uvs.remaining());
+				header.order(ByteOrder.nativeOrder());
+				header.asIntBuffer().put(lengths);
+				header.position(0);
+
+				write(channel, header);
+				write(channel, MemoryUtil.memByteBuffer(MemoryUtil.memAddress(vertices), vertices.remaining() * Integer.BYTES));
+				write(channel, MemoryUtil.memByteBuffer(MemoryUtil.memAddress(uvs), uvs.remaining() * Float.BYTES));
+			}
+
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException ex)
+		{
+			// the previous entry can still be mapped by an earlier load
+			log.debug("unable to store scene cache entry {}", key, ex);
+			tmp.delete();
+			return;
+		}
+
+		evict(maxSize);
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+	}
+
+	private void evict(long maxSize)
+	{
+		File[] files = CACHE_DIR.listFiles((dir, name) -> name.endsWith(EXTENSION));
+		if (files == null)
+		{
+			return;
+		}
+
+		long total = 0;
+		for (File file : files)
+		{
+			total += file.length();
+		}
+
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (int i = 0; i < files.length && total > maxSize; ++i)
+		{
+			long length = files[i].length();
+			if (files[i].delete())
+			{
+				log.debug("Evicted scene cache entry {}", files[i].getName());
+				total -= length;
+			}
+		}
+	}
+
+	private static int byteOrderId()
+	{
+		return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0;
+	}
+}
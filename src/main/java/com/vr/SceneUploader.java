@@ -34,14 +34,38 @@ import org.joml.Vector3i;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Singleton
 @Slf4j
 class SceneUploader
 {
+	// slabs per pool thread, so uneven slabs still balance out
+	private static final int SLABS_PER_THREAD = 4;
+	// width in tiles of the square zones tile geometry is grouped into
+	static final int ZONE_SIZE = 8;
+	private static final long NOT_MERGEABLE = Long.MIN_VALUE;
+	// fraction of faces kept by each level of detail
+	private static final float[] LOD_RATIOS = {0.5f, 0.25f};
+	// models with fewer visible faces than this aren't worth simplifying
+	private static final int LOD_MIN_FACES = 64;
+	// a level of detail is dropped if it doesn't save at least this fraction of faces
+	private static final float LOD_MIN_SAVING = 0.1f;
+
 	private final Client client;
 	private final VRPluginConfig gpuConfig;
+	private final SceneCache sceneCache;
 
 	private Regions regions;
 
@@ -49,15 +73,42 @@ class SceneUploader
 	private int offset;
 	private int uvoffset;
 	private int uniqueModels;
+	private int duplicateModels;
+
+	/**
+	 * What one scene upload produced besides the geometry itself. This is handed back to the caller rather
+	 * than kept on the uploader so an upload can't be read back mixed with another.
+	 */
+	static final class Upload
+	{
+		final int sceneId;
+		/**
+		 * Simplified meshes of the scene
+		 */
+		final LodTable lodTable;
+		/**
+		 * Ascending buffer offsets of the static models whose faces need no sorting
+		 */
+		final int[] unorderedOffsets;
+
+		private Upload(int sceneId, LodTable lodTable, int[] unorderedOffsets)
+		{
+			this.sceneId = sceneId;
+			this.lodTable = lodTable;
+			this.unorderedOffsets = unorderedOffsets;
+		}
+	}
 
 	@Inject
 	SceneUploader(
 		Client client,
-		VRPluginConfig config
+		VRPluginConfig config,
+		SceneCache sceneCache
 	)
 	{
 		this.client = client;
 		this.gpuConfig = config;
+		this.sceneCache = sceneCache;
 
 		try (var in = SceneUploader.class.getResourceAsStream("regions/regions.txt"))
 		{
@@ -69,12 +120,25 @@ class SceneUploader
 		}
 	}
 
-	void upload(Scene scene, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
+	Upload upload(Scene scene, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
 	{
-		++sceneId;
+		return upload(scene, vertexBuffer, uvBuffer, null, false);
+	}
+
+	/**
+	 * Upload the scene, optionally as indexed geometry
+	 *
+	 * @param indexBuffer if non-null, receives one index per vertex into the unique vertices left in the
+	 *                    vertex and uv buffers, see {@link #index}
+	 * @param zones       whether tile paints and tile models are left out, to be uploaded by {@link #uploadZones}
+	 */
+	Upload upload(Scene scene, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuIntBuffer indexBuffer, boolean zones)
+	{
+		final int id = ++sceneId;
 		offset = 0;
 		uvoffset = 0;
 		uniqueModels = 0;
+		duplicateModels = 0;
 		vertexBuffer.clear();
 		uvBuffer.clear();
 
@@ -84,6 +148,7 @@ class SceneUploader
 		log.debug("Scene preparation time: {}", stopwatch);
 
 		stopwatch = Stopwatch.createStarted();
+		List<Item> items = new ArrayList<>();
 		for (int z = 0; z < Constants.MAX_Z; ++z)
 		{
 			for (int x = 0; x < Constants.EXTENDED_SCENE_SIZE; ++x)
@@ -93,127 +158,1012 @@ class SceneUploader
 					Tile tile = scene.getExtendedTiles()[z][x][y];
 					if (tile != null)
 					{
-						upload(scene, tile, vertexBuffer, uvBuffer);
+						collect(tile, items);
 					}
 				}
 			}
 		}
 
+		if (zones)
+		{
+			items.removeIf(item -> item.tile != null);
+		}
+
+		items = dedupe(items);
+
+		final boolean lods = gpuConfig.modelLods();
+		if (lods)
+		{
+			addLods(items);
+		}
+
+		final String cacheKey = cacheKey(scene, items, vertexBuffer.isPacked(), zones, lods);
+		final long hash = cacheKey != null ? hash(scene, items) : 0L;
+		final SceneCache.Entry cached = cacheKey != null ? sceneCache.load(cacheKey, hash, items.size()) : null;
+		if (cached != null)
+		{
+			for (int i = 0; i < items.size(); ++i)
+			{
+				items.get(i).len = cached.lengths[i];
+			}
+
+			vertexBuffer.wrap(cached.vertices);
+			uvBuffer.wrap(cached.uvs);
+			log.debug("Scene cache hit: {}", cacheKey);
+		}
+		else
+		{
+			if (gpuConfig.parallelSceneUpload() && ForkJoinPool.getCommonPoolParallelism() > 1)
+			{
+				packParallel(scene, items, vertexBuffer, uvBuffer);
+			}
+			else
+			{
+				pack(scene, items, 0, items.size(), vertexBuffer, uvBuffer);
+			}
+
+			if (cacheKey != null)
+			{
+				int[] lengths = new int[items.size()];
+				for (int i = 0; i < lengths.length; ++i)
+				{
+					lengths[i] = items.get(i).len;
+				}
+
+				sceneCache.store(cacheKey, hash, lengths,
+					vertexBuffer.getBuffer().duplicate().flip(),
+					uvBuffer.getBuffer().duplicate().flip(),
+					gpuConfig.sceneCacheSize() * 1024L * 1024L);
+			}
+		}
+
+		int uniqueVertices = 0;
+		if (indexBuffer != null)
+		{
+			indexBuffer.clear();
+			uniqueVertices = index(items, vertexBuffer, uvBuffer, indexBuffer);
+		}
+
+		int unordered = 0;
+		int[] unorderedOffsets = new int[items.size()];
+		for (Item item : items)
+		{
+			// indexed uvs share the index of their vertex
+			item.setOffsets(offset, item.hasUv ? (indexBuffer != null ? offset : uvoffset) : -1);
+			if (item.geometry instanceof Model && isUnordered((Model) item.geometry))
+			{
+				unorderedOffsets[unordered++] = offset;
+			}
+			offset += item.len;
+			if (item.hasUv)
+			{
+				uvoffset += item.len;
+			}
+		}
+
+		final Upload upload = new Upload(id, lods ? buildLodTable(items) : LodTable.EMPTY,
+			Arrays.copyOf(unorderedOffsets, unordered));
+
 		stopwatch.stop();
-		log.debug("Scene upload time: {} unique models: {} length: {}KB", stopwatch, uniqueModels, (offset * 16) / 1024);
+		// the unpacked layout is 16 bytes per vertex and per uv
+		final long unpackedSize = (offset + uvoffset) * 16L;
+		final long size = (long) vertexBuffer.getBuffer().position() * Integer.BYTES + (long) uvBuffer.getBuffer().position() * Float.BYTES
+			+ (indexBuffer != null ? (long) indexBuffer.getBuffer().position() * Integer.BYTES : 0L);
+		if (indexBuffer != null)
+		{
+			log.debug("Indexed scene: {} unique vertices of {}", uniqueVertices, offset);
+		}
+		log.debug("Scene upload time: {} unique models: {} duplicate meshes: {} ({}% deduplicated) length: {}KB ({}% of unpacked)",
+			stopwatch, uniqueModels, duplicateModels, uniqueModels > 0 ? duplicateModels * 100 / uniqueModels : 0,
+			size / 1024, unpackedSize > 0 ? size * 100 / unpackedSize : 100);
+		return upload;
 	}
 
-	private void upload(Scene scene, Tile tile, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
+	/**
+	 * Walk a tile in upload order, collecting its geometry. This only claims models for the scene,
+	 * buffer offsets are assigned once everything has been packed.
+	 */
+	private void collect(Tile tile, List<Item> items)
 	{
 		Tile bridge = tile.getBridge();
 		if (bridge != null)
 		{
-			upload(scene, bridge, vertexBuffer, uvBuffer);
+			collect(bridge, items);
 		}
 
 		SceneTilePaint sceneTilePaint = tile.getSceneTilePaint();
 		if (sceneTilePaint != null)
 		{
-			sceneTilePaint.setBufferOffset(offset);
-			if (sceneTilePaint.getTexture() != -1)
+			items.add(new Item(sceneTilePaint, tile, sceneTilePaint.getTexture() != -1, 6));
+		}
+
+		SceneTileModel sceneTileModel = tile.getSceneTileModel();
+		if (sceneTileModel != null)
+		{
+			items.add(new Item(sceneTileModel, tile, sceneTileModel.getTriangleTextureId() != null,
+				sceneTileModel.getFaceX().length * 3));
+		}
+
+		WallObject wallObject = tile.getWallObject();
+		if (wallObject != null)
+		{
+			collect(wallObject.getRenderable1(), items);
+			collect(wallObject.getRenderable2(), items);
+		}
+
+		GroundObject groundObject = tile.getGroundObject();
+		if (groundObject != null)
+		{
+			collect(groundObject.getRenderable(), items);
+		}
+
+		DecorativeObject decorativeObject = tile.getDecorativeObject();
+		if (decorativeObject != null)
+		{
+			collect(decorativeObject.getRenderable(), items);
+			collect(decorativeObject.getRenderable2(), items);
+		}
+
+		GameObject[] gameObjects = tile.getGameObjects();
+		for (GameObject gameObject : gameObjects)
+		{
+			if (gameObject == null)
 			{
-				sceneTilePaint.setUvBufferOffset(uvoffset);
+				continue;
 			}
-			else
+
+			collect(gameObject.getRenderable(), items);
+		}
+	}
+
+	private void collect(Renderable renderable, List<Item> items)
+	{
+		if (!(renderable instanceof Model))
+		{
+			return;
+		}
+
+		Model model = (Model) renderable;
+		// deduplicate hillskewed models
+		if (model.getUnskewedModel() != null)
+		{
+			model = model.getUnskewedModel();
+		}
+
+		if (model.getSceneId() == sceneId)
+		{
+			return; // model has already been uploaded
+		}
+
+		model.setSceneId(sceneId);
+		++uniqueModels;
+
+		items.add(new Item(model, null, model.getFaceTextures() != null, model.getFaceCount() * 3));
+	}
+
+	/**
+	 * Upload the tile paints and tile models of the scene as world space geometry with padded uvs,
+	 * which can be drawn directly without going through compute. Tiles are laid out zone by zone,
+	 * so the tiles drawn in a frame coalesce into a few contiguous ranges. The buffer offsets of the
+	 * paints and tile models are set to their position in these buffers.
+	 * <p>
+	 * If simplifying, flat untextured paints of a single colour are also merged into rectangles
+	 * within each zone. A rectangle may only be drawn in place of its tiles when all of them are
+	 * drawn, so the tiles are kept too, after the rectangles at the end of their zone.
+	 *
+	 * @return the merged rectangles, each as its first face, the number of tiles merged and the
+	 * first face of each of those tiles
+	 */
+	int[] uploadZones(Scene scene, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, boolean simplify)
+	{
+		vertexBuffer.clear();
+		uvBuffer.clear();
+
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		final Tile[][][] tiles = scene.getExtendedTiles();
+		final boolean[] merged = new boolean[Constants.MAX_Z * ZONE_SIZE * ZONE_SIZE];
+		final List<int[]> rects = new ArrayList<>();
+		final GpuIntBuffer merges = new GpuIntBuffer();
+		int offset = 0;
+		int zones = 0;
+		int mergedTiles = 0;
+		for (int zoneX = 0; zoneX < Constants.EXTENDED_SCENE_SIZE; zoneX += ZONE_SIZE)
+		{
+			for (int zoneY = 0; zoneY < Constants.EXTENDED_SCENE_SIZE; zoneY += ZONE_SIZE)
+			{
+				final int zoneStart = offset;
+				final int width = Math.min(ZONE_SIZE, Constants.EXTENDED_SCENE_SIZE - zoneX);
+				final int height = Math.min(ZONE_SIZE, Constants.EXTENDED_SCENE_SIZE - zoneY);
+
+				Arrays.fill(merged, false);
+				rects.clear();
+				if (simplify)
+				{
+					for (int z = 0; z < Constants.MAX_Z; ++z)
+					{
+						mergeZone(scene, z, zoneX, zoneY, width, height, merged, rects);
+					}
+				}
+
+				for (int z = 0; z < Constants.MAX_Z; ++z)
+				{
+					for (int x = 0; x < width; ++x)
+					{
+						for (int y = 0; y < height; ++y)
+						{
+							Tile tile = tiles[z][zoneX + x][zoneY + y];
+							if (tile != null)
+							{
+								offset = uploadZoneTile(scene, tile, !merged[(z * ZONE_SIZE + x) * ZONE_SIZE + y], offset, vertexBuffer, uvBuffer);
+							}
+						}
+					}
+				}
+
+				// rectangles first so that if all of a zone is drawn, it is still one range
+				final int rectStart = offset;
+				for (int[] rect : rects)
+				{
+					offset += uploadRect(rect, vertexBuffer, uvBuffer);
+				}
+
+				int rectFace = rectStart / 3;
+				for (int[] rect : rects)
+				{
+					final int z = rect[0];
+					merges.ensureCapacity(2 + (rect[3] - rect[1]) * (rect[4] - rect[2]));
+					merges.getBuffer().put(rectFace).put((rect[3] - rect[1]) * (rect[4] - rect[2]));
+					rectFace += 2;
+
+					for (int x = rect[1]; x < rect[3]; ++x)
+					{
+						for (int y = rect[2]; y < rect[4]; ++y)
+						{
+							Tile tile = tiles[z][x][y];
+							merges.getBuffer().put(offset / 3);
+							offset = uploadZonePaint(scene, tile, offset, vertexBuffer, uvBuffer);
+							++mergedTiles;
+						}
+					}
+				}
+
+				if (offset > zoneStart)
+				{
+					++zones;
+				}
+			}
+		}
+		stopwatch.stop();
+
+		merges.flip();
+		final int[] result = new int[merges.getBuffer().remaining()];
+		merges.getBuffer().get(result);
+		merges.free();
+
+		if (simplify)
+		{
+			// each merged tile was 2 triangles, each rectangle is 2
+			final int rectCount = countRects(result);
+			log.debug("Terrain simplification: {} tiles merged into {} rectangles, {} triangles saved",
+				mergedTiles, rectCount, (mergedTiles - rectCount) * 2);
+		}
+		log.debug("Zone upload time: {} zones: {} length: {}KB", stopwatch, zones, offset * 32L / 1024);
+		return result;
+	}
+
+	private static int countRects(int[] merges)
+	{
+		int count = 0;
+		for (int i = 0; i < merges.length; i += 2 + merges[i + 1])
+		{
+			++count;
+		}
+		return count;
+	}
+
+	/**
+	 * Greedily merge the mergeable paints of one plane of a zone into rectangles of at least two
+	 * tiles. Rectangles are recorded as plane, min x, min y, max x, max y (exclusive, extended
+	 * scene coordinates), height and colour.
+	 */
+	private static void mergeZone(Scene scene, int z, int zoneX, int zoneY, int width, int height, boolean[] merged, List<int[]> rects)
+	{
+		final Tile[][][] tiles = scene.getExtendedTiles();
+		final int[][][] tileHeights = scene.getTileHeights();
+		final long[] keys = new long[ZONE_SIZE * ZONE_SIZE];
+		final int base = z * ZONE_SIZE * ZONE_SIZE;
+
+		for (int x = 0; x < width; ++x)
+		{
+			for (int y = 0; y < height; ++y)
 			{
-				sceneTilePaint.setUvBufferOffset(-1);
+				keys[x * ZONE_SIZE + y] = mergeKey(tiles[z][zoneX + x][zoneY + y], tileHeights);
 			}
-			Point tilePoint = tile.getSceneLocation();
+		}
+
+		for (int x = 0; x < width; ++x)
+		{
+			for (int y = 0; y < height; ++y)
+			{
+				final long key = keys[x * ZONE_SIZE + y];
+				if (key == NOT_MERGEABLE || merged[base + x * ZONE_SIZE + y])
+				{
+					continue;
+				}
+
+				int endY = y + 1;
+				while (endY < height && keys[x * ZONE_SIZE + endY] == key && !merged[base + x * ZONE_SIZE + endY])
+				{
+					++endY;
+				}
+
+				int endX = x + 1;
+				grow:
+				while (endX < width)
+				{
+					for (int yy = y; yy < endY; ++yy)
+					{
+						if (keys[endX * ZONE_SIZE + yy] != key || merged[base + endX * ZONE_SIZE + yy])
+						{
+							break grow;
+						}
+					}
+					++endX;
+				}
+
+				if ((endX - x) * (endY - y) < 2)
+				{
+					continue;
+				}
+
+				for (int xx = x; xx < endX; ++xx)
+				{
+					for (int yy = y; yy < endY; ++yy)
+					{
+						merged[base + xx * ZONE_SIZE + yy] = true;
+					}
+				}
+
+				final Tile tile = tiles[z][zoneX + x][zoneY + y];
+				final int level = tile.getRenderLevel();
+				final SceneTilePaint paint = tile.getSceneTilePaint();
+				rects.add(new int[]{
+					z, zoneX + x, zoneY + y, zoneX + endX, zoneY + endY,
+					tileHeights[level][zoneX + x][zoneY + y], paint.getSwColor()
+				});
+			}
+		}
+	}
+
+	/**
+	 * Tiles can be merged if they have a flat, untextured paint of one colour. The key identifies
+	 * the render level, height and colour; tiles under bridges are left alone.
+	 */
+	private static long mergeKey(Tile tile, int[][][] tileHeights)
+	{
+		if (tile == null || tile.getBridge() != null)
+		{
+			return NOT_MERGEABLE;
+		}
+
+		final SceneTilePaint paint = tile.getSceneTilePaint();
+		if (paint == null || paint.getTexture() != -1)
+		{
+			return NOT_MERGEABLE;
+		}
+
+		final int color = paint.getSwColor();
+		if (color == 12345678 || paint.getNeColor() == 12345678
+			|| paint.getSeColor() != color || paint.getNeColor() != color || paint.getNwColor() != color)
+		{
+			return NOT_MERGEABLE;
+		}
+
+		final Point tilePoint = tile.getSceneLocation();
+		final int level = tile.getRenderLevel();
+		final int x = tilePoint.getX() + VRPlugin.SCENE_OFFSET;
+		final int y = tilePoint.getY() + VRPlugin.SCENE_OFFSET;
+		final int h = tileHeights[level][x][y];
+		if (tileHeights[level][x + 1][y] != h || tileHeights[level][x + 1][y + 1] != h || tileHeights[level][x][y + 1] != h)
+		{
+			return NOT_MERGEABLE;
+		}
+
+		return ((long) level << 56) | ((long) (h & 0xffffff) << 32) | (color & 0xffffffffL);
+	}
+
+	/**
+	 * Emit a merged rectangle as a tile paint spanning all of its tiles
+	 */
+	private static int uploadRect(int[] rect, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
+	{
+		final int lx0 = (rect[1] - VRPlugin.SCENE_OFFSET) << Perspective.LOCAL_COORD_BITS;
+		final int lz0 = (rect[2] - VRPlugin.SCENE_OFFSET) << Perspective.LOCAL_COORD_BITS;
+		final int lx1 = (rect[3] - VRPlugin.SCENE_OFFSET) << Perspective.LOCAL_COORD_BITS;
+		final int lz1 = (rect[4] - VRPlugin.SCENE_OFFSET) << Perspective.LOCAL_COORD_BITS;
+		final int ly = rect[5];
+		final int hsl = rect[6];
+
+		vertexBuffer.ensureCapacity(24);
+		uvBuffer.ensureCapacity(24);
+
+		// same winding as a tile paint: ne, nw, se then sw, se, nw
+		vertexBuffer.put(lx1, ly, lz1, hsl);
+		vertexBuffer.put(lx0, ly, lz1, hsl);
+		vertexBuffer.put(lx1, ly, lz0, hsl);
+
+		vertexBuffer.put(lx0, ly, lz0, hsl);
+		vertexBuffer.put(lx1, ly, lz0, hsl);
+		vertexBuffer.put(lx0, ly, lz1, hsl);
+
+		uvBuffer.put(0, lx1, ly, lz1);
+		uvBuffer.put(0, lx0, ly, lz1);
+		uvBuffer.put(0, lx1, ly, lz0);
+
+		uvBuffer.put(0, lx0, ly, lz0);
+		uvBuffer.put(0, lx1, ly, lz0);
+		uvBuffer.put(0, lx0, ly, lz1);
+
+		return 6;
+	}
+
+	private int uploadZoneTile(Scene scene, Tile tile, boolean paint, int offset, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
+	{
+		Tile bridge = tile.getBridge();
+		if (bridge != null)
+		{
+			offset = uploadZoneTile(scene, bridge, true, offset, vertexBuffer, uvBuffer);
+		}
+
+		if (paint)
+		{
+			offset = uploadZonePaint(scene, tile, offset, vertexBuffer, uvBuffer);
+		}
+
+		SceneTileModel sceneTileModel = tile.getSceneTileModel();
+		if (sceneTileModel != null)
+		{
+			int len = upload(sceneTileModel, 0, 0, vertexBuffer, uvBuffer, true);
+			sceneTileModel.setBufferOffset(offset);
+			sceneTileModel.setUvBufferOffset(offset);
+			sceneTileModel.setBufferLen(len);
+			offset += len;
+		}
+
+		return offset;
+	}
+
+	private int uploadZonePaint(Scene scene, Tile tile, int offset, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
+	{
+		SceneTilePaint sceneTilePaint = tile.getSceneTilePaint();
+		if (sceneTilePaint != null)
+		{
+			final Point tilePoint = tile.getSceneLocation();
+			final int tileX = tilePoint.getX();
+			final int tileY = tilePoint.getY();
+
 			int len = upload(scene, sceneTilePaint,
-				tile.getRenderLevel(), tilePoint.getX(), tilePoint.getY(),
+				tile.getRenderLevel(), tileX, tileY,
 				vertexBuffer, uvBuffer,
-				0, 0, false);
+				tileX << Perspective.LOCAL_COORD_BITS, tileY << Perspective.LOCAL_COORD_BITS,
+				true);
+			// uvs are padded, so they share the vertex offset
+			sceneTilePaint.setBufferOffset(offset);
+			sceneTilePaint.setUvBufferOffset(offset);
 			sceneTilePaint.setBufferLen(len);
 			offset += len;
-			if (sceneTilePaint.getTexture() != -1)
+		}
+
+		return offset;
+	}
+
+	/**
+	 * Convert the packed scene into indexed geometry. The vertex and uv buffers are replaced by the
+	 * unique vertices, each with its own uv, and the index buffer receives one index per original
+	 * vertex. Item offsets are therefore unchanged as offsets into the index buffer.
+	 * <p>
+	 * Unique vertices are numbered in order of first use, so that vertex fetches for a model stay
+	 * close together. Faces are left in their original order since the face index is the tie breaker
+	 * when sorting faces at equal distance.
+	 *
+	 * @return the number of unique vertices
+	 */
+	private static int index(List<Item> items, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer, GpuIntBuffer indexBuffer)
+	{
+		final int vertexWords = vertexBuffer.isPacked() ? 3 : 4;
+		final int uvWords = uvBuffer.isPacked() ? 2 : 4;
+		final IntBuffer vertices = vertexBuffer.getBuffer();
+		final FloatBuffer uvs = uvBuffer.getBuffer();
+		final int vertexCount = vertices.position() / vertexWords;
+
+		final IntBuffer uniqueVertices = GpuIntBuffer.allocateDirect(Math.max(1, vertexCount) * vertexWords);
+		final FloatBuffer uniqueUvs = GpuFloatBuffer.allocateDirect(Math.max(1, vertexCount) * uvWords);
+		// open addressing table of unique index + 1, at most half full
+		final int[] table = new int[Integer.highestOneBit(Math.max(1, vertexCount)) << 2];
+		final int mask = table.length - 1;
+
+		indexBuffer.ensureCapacity(vertexCount);
+		final IntBuffer indices = indexBuffer.getBuffer();
+
+		int unique = 0;
+		int vertex = 0;
+		int uv = 0;
+		for (Item item : items)
+		{
+			for (int i = 0; i < item.len; ++i, ++vertex)
+			{
+				final int v = vertex * vertexWords;
+				final int t = item.hasUv ? (uv + i) * uvWords : -1;
+
+				long h = GeometryHash.SEED;
+				for (int k = 0; k < vertexWords; ++k)
+				{
+					h = GeometryHash.hash(h, vertices.get(v + k));
+				}
+				for (int k = 0; k < uvWords; ++k)
+				{
+					h = GeometryHash.hash(h, t < 0 ? 0 : Float.floatToRawIntBits(uvs.get(t + k)));
+				}
+
+				int slot = (int) (h ^ (h >>> 32)) & mask;
+				int index;
+				for (;;)
+				{
+					final int entry = table[slot];
+					if (entry == 0)
+					{
+						index = unique++;
+						table[slot] = index + 1;
+						for (int k = 0; k < vertexWords; ++k)
+						{
+							uniqueVertices.put(index * vertexWords + k, vertices.get(v + k));
+						}
+						for (int k = 0; k < uvWords; ++k)
+						{
+							uniqueUvs.put(index * uvWords + k, t < 0 ? 0f : uvs.get(t + k));
+						}
+						break;
+					}
+
+					if (sameVertex(uniqueVertices, (entry - 1) * vertexWords, vertices, v, vertexWords)
+						&& sameUv(uniqueUvs, (entry - 1) * uvWords, uvs, t, uvWords))
+					{
+						index = entry - 1;
+						break;
+					}
+
+					slot = (slot + 1) & mask;
+				}
+
+				indices.put(index);
+			}
+
+			if (item.hasUv)
 			{
-				uvoffset += len;
+				uv += item.len;
 			}
 		}
 
-		SceneTileModel sceneTileModel = tile.getSceneTileModel();
-		if (sceneTileModel != null)
+		uniqueVertices.limit(unique * vertexWords);
+		uniqueUvs.limit(unique * uvWords);
+		vertexBuffer.wrap(uniqueVertices);
+		uvBuffer.wrap(uniqueUvs);
+		return unique;
+	}
+
+	private static boolean sameVertex(IntBuffer a, int aOffset, IntBuffer b, int bOffset, int words)
+	{
+		for (int k = 0; k < words; ++k)
 		{
-			sceneTileModel.setBufferOffset(offset);
-			if (sceneTileModel.getTriangleTextureId() != null)
+			if (a.get(aOffset + k) != b.get(bOffset + k))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean sameUv(FloatBuffer a, int aOffset, FloatBuffer b, int bOffset, int words)
+	{
+		for (int k = 0; k < words; ++k)
+		{
+			// bOffset is negative for geometry without uvs, which is all zero
+			int bits = bOffset < 0 ? 0 : Float.floatToRawIntBits(b.get(bOffset + k));
+			if (Float.floatToRawIntBits(a.get(aOffset + k)) != bits)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Store geometrically identical models once. Duplicates are dropped from the upload and
+	 * share the buffer offsets of the first model with the same mesh.
+	 */
+	private List<Item> dedupe(List<Item> items)
+	{
+		(gpuConfig.parallelSceneUpload() ? items.parallelStream() : items.stream())
+			.filter(item -> item.geometry instanceof Model)
+			.forEach(item -> item.meshHash = GeometryHash.hash((Model) item.geometry));
+
+		final Map<Long, Item> meshes = new HashMap<>();
+		final List<Item> unique = new ArrayList<>(items.size());
+		for (Item item : items)
+		{
+			if (item.geometry instanceof Model)
+			{
+				Model model = (Model) item.geometry;
+				Item mesh = meshes.putIfAbsent(item.meshHash, item);
+				if (mesh != null
+					&& ((Model) mesh.geometry).getFaceCount() == model.getFaceCount()
+					&& ((Model) mesh.geometry).getVerticesCount() == model.getVerticesCount())
+				{
+					if (mesh.aliases == null)
+					{
+						mesh.aliases = new ArrayList<>();
+					}
+					mesh.aliases.add(model);
+					++duplicateModels;
+					continue;
+				}
+			}
+			unique.add(item);
+		}
+		return unique;
+	}
+
+	/**
+	 * Add items for the simplified meshes of each large enough model. They go after all other
+	 * geometry, and are only simplified when packed so cached scenes skip the work.
+	 */
+	private static void addLods(List<Item> items)
+	{
+		final int count = items.size();
+		for (int i = 0; i < count; ++i)
+		{
+			final Item item = items.get(i);
+			if (!(item.geometry instanceof Model) || ((Model) item.geometry).getFaceCount() < LOD_MIN_FACES)
+			{
+				continue;
+			}
+
+			final Simplified simplified = new Simplified((Model) item.geometry);
+			for (int level = 0; level < LOD_RATIOS.length; ++level)
+			{
+				// simplifying costs several times more than pushing the model
+				Item lod = new Item(new Lod(item, simplified, level), null, item.hasUv, item.weight * 4);
+				lod.meshHash = GeometryHash.hash(item.meshHash, level);
+				items.add(lod);
+			}
+		}
+	}
+
+	private static LodTable buildLodTable(List<Item> items)
+	{
+		final List<Lod> lods = new ArrayList<>();
+		for (Item item : items)
+		{
+			if (item.geometry instanceof Lod)
 			{
-				sceneTileModel.setUvBufferOffset(uvoffset);
+				Lod lod = (Lod) item.geometry;
+				lod.faces = item.len / 3;
+				lods.add(lod);
+			}
+		}
+
+		final int levels = LOD_RATIOS.length;
+		// levels of a model are added together, so sorting keeps them together and in order
+		lods.sort(Comparator.comparingInt((Lod lod) -> lod.baseOffset()).thenComparingInt(lod -> lod.level));
+
+		final int[] bases = new int[lods.size() / levels];
+		final int[] data = new int[bases.length * levels * 3];
+		int saved = 0;
+		for (int i = 0; i < lods.size(); ++i)
+		{
+			final Lod lod = lods.get(i);
+			final int sourceFaces = lod.source.len / 3;
+			final int index = i / levels;
+			bases[index] = lod.baseOffset();
+			data[i * 3] = lod.offset;
+			data[i * 3 + 1] = lod.uvOffset;
+			if (lod.faces <= sourceFaces * (1 - LOD_MIN_SAVING))
+			{
+				data[i * 3 + 2] = lod.faces;
+				saved += sourceFaces - lod.faces;
+			}
+		}
+
+		log.debug("Model LODs: {} models simplified, {} faces saved over all levels", bases.length, saved);
+		return new LodTable(bases, data, levels);
+	}
+
+	/**
+	 * Scene cache key, or null if the scene shouldn't be cached. Instances are built
+	 * from arbitrary chunks, so their base coordinates don't identify them.
+	 */
+	private String cacheKey(Scene scene, List<Item> items, boolean packed, boolean zones, boolean lods)
+	{
+		if (gpuConfig.sceneCacheSize() == 0 || scene.isInstance())
+		{
+			return null;
+		}
+
+		int planes = 0;
+		for (Item item : items)
+		{
+			if (item.tile != null)
+			{
+				planes |= 1 << item.tile.getPlane();
+			}
+		}
+
+		return scene.getBaseX() + "_" + scene.getBaseY() + "_" + planes + "_" + (gpuConfig.hideUnrelatedMaps() ? 1 : 0)
+			+ (packed ? "_packed" : "") + (zones ? "_zones" : "") + (lods ? "_lods" : "");
+	}
+
+	/**
+	 * Hash the contents of the collected items, to validate cached scene geometry
+	 */
+	private static long hash(Scene scene, List<Item> items)
+	{
+		final int[][][] tileHeights = scene.getTileHeights();
+
+		long h = GeometryHash.SEED;
+		for (Item item : items)
+		{
+			if (item.geometry instanceof SceneTilePaint)
+			{
+				SceneTilePaint paint = (SceneTilePaint) item.geometry;
+				Point tilePoint = item.tile.getSceneLocation();
+				int z = item.tile.getRenderLevel();
+				int x = tilePoint.getX() + VRPlugin.SCENE_OFFSET;
+				int y = tilePoint.getY() + VRPlugin.SCENE_OFFSET;
+
+				h = GeometryHash.hash(h, z);
+				h = GeometryHash.hash(h, x);
+				h = GeometryHash.hash(h, y);
+				h = GeometryHash.hash(h, tileHeights[z][x][y]);
+				h = GeometryHash.hash(h, tileHeights[z][x + 1][y]);
+				h = GeometryHash.hash(h, tileHeights[z][x + 1][y + 1]);
+				h = GeometryHash.hash(h, tileHeights[z][x][y + 1]);
+				h = GeometryHash.hash(h, paint.getSwColor());
+				h = GeometryHash.hash(h, paint.getSeColor());
+				h = GeometryHash.hash(h, paint.getNeColor());
+				h = GeometryHash.hash(h, paint.getNwColor());
+				h = GeometryHash.hash(h, paint.getTexture());
+				h = GeometryHash.hash(h, paint.isFlat() ? 1 : 0);
+			}
+			else if (item.geometry instanceof SceneTileModel)
+			{
+				Point tilePoint = item.tile.getSceneLocation();
+				h = GeometryHash.hash(h, tilePoint.getX());
+				h = GeometryHash.hash(h, tilePoint.getY());
+				h = GeometryHash.hash(h, GeometryHash.hash((SceneTileModel) item.geometry));
 			}
 			else
 			{
-				sceneTileModel.setUvBufferOffset(-1);
+				h = GeometryHash.hash(h, item.meshHash);
 			}
-			Point tilePoint = tile.getSceneLocation();
-			int len = upload(sceneTileModel,
-				tilePoint.getX() << Perspective.LOCAL_COORD_BITS, tilePoint.getY() << Perspective.LOCAL_COORD_BITS,
-				vertexBuffer, uvBuffer, false);
-			sceneTileModel.setBufferLen(len);
-			offset += len;
-			if (sceneTileModel.getTriangleTextureId() != null)
+		}
+		return h;
+	}
+
+	private void pack(Scene scene, List<Item> items, int from, int to, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
+	{
+		for (int i = from; i < to; ++i)
+		{
+			Item item = items.get(i);
+			if (item.geometry instanceof SceneTilePaint)
 			{
-				uvoffset += len;
+				Point tilePoint = item.tile.getSceneLocation();
+				item.len = upload(scene, (SceneTilePaint) item.geometry,
+					item.tile.getRenderLevel(), tilePoint.getX(), tilePoint.getY(),
+					vertexBuffer, uvBuffer,
+					0, 0, false);
 			}
+			else if (item.geometry instanceof SceneTileModel)
+			{
+				Point tilePoint = item.tile.getSceneLocation();
+				item.len = upload((SceneTileModel) item.geometry,
+					tilePoint.getX() << Perspective.LOCAL_COORD_BITS, tilePoint.getY() << Perspective.LOCAL_COORD_BITS,
+					vertexBuffer, uvBuffer, false);
+			}
+			else if (item.geometry instanceof Lod)
+			{
+				Lod lod = (Lod) item.geometry;
+				Model model = (Model) lod.source.geometry;
+				int[] remap = lod.simplified.remap(lod.level);
+				item.len = pushModel(model, remap, vertexBuffer, uvBuffer);
+			}
+			else
+			{
+				item.len = pushModel((Model) item.geometry, vertexBuffer, uvBuffer);
+			}
+		}
+	}
+
+	/**
+	 * Pack the scene on the common fork-join pool. The collected items are split into contiguous
+	 * slabs of roughly equal size, each packed into its own buffers, and then stitched back together
+	 * in walk order so the result is identical to packing serially.
+	 */
+	private void packParallel(Scene scene, List<Item> items, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
+	{
+		final ForkJoinPool pool = ForkJoinPool.commonPool();
+		final int threads = pool.getParallelism();
+		final int slabCount = Math.max(1, Math.min(items.size(), threads * SLABS_PER_THREAD));
+
+		long totalWeight = 0;
+		for (Item item : items)
+		{
+			totalWeight += item.weight;
+		}
+
+		final int[] slabStart = new int[slabCount + 1];
+		long weight = 0;
+		for (int i = 0, slab = 1; i < items.size() && slab < slabCount; ++i)
+		{
+			weight += items.get(i).weight;
+			if (weight >= totalWeight * slab / slabCount)
+			{
+				slabStart[slab++] = i + 1;
+			}
+		}
+		for (int slab = 1; slab <= slabCount; ++slab)
+		{
+			slabStart[slab] = Math.max(slabStart[slab], slabStart[slab - 1]);
+		}
+		slabStart[slabCount] = items.size();
+
+		final GpuIntBuffer[] slabVertices = new GpuIntBuffer[slabCount];
+		final GpuFloatBuffer[] slabUvs = new GpuFloatBuffer[slabCount];
+		final List<ForkJoinTask<?>> tasks = new ArrayList<>(slabCount);
+		final AtomicLong busyNanos = new AtomicLong();
+
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		for (int i = 0; i < slabCount; ++i)
+		{
+			final int slab = i;
+			slabVertices[slab] = new GpuIntBuffer(vertexBuffer.isPacked());
+			slabUvs[slab] = new GpuFloatBuffer(uvBuffer.isPacked());
+			tasks.add(pool.submit(() ->
+			{
+				long start = System.nanoTime();
+				pack(scene, items, slabStart[slab], slabStart[slab + 1], slabVertices[slab], slabUvs[slab]);
+				busyNanos.addAndGet(System.nanoTime() - start);
+			}));
+		}
+
+		for (ForkJoinTask<?> task : tasks)
+		{
+			task.join();
+		}
+		final long packNanos = Math.max(1, stopwatch.elapsed(TimeUnit.NANOSECONDS));
+
+		for (int i = 0; i < slabCount; ++i)
+		{
+			vertexBuffer.put(slabVertices[i]);
+			uvBuffer.put(slabUvs[i]);
+			slabVertices[i].free();
+			slabUvs[i].free();
+		}
+
+		stopwatch.stop();
+		log.debug("Parallel scene pack: {} slabs on {} threads, pack {}ms ({}x speedup), total {}",
+			slabCount, threads, TimeUnit.NANOSECONDS.toMillis(packNanos),
+			String.format("%.1f", (double) busyNanos.get() / packNanos), stopwatch);
+	}
+
+	/**
+	 * A simplified mesh of a model
+	 */
+	/**
+	 * The simplified levels of one model, shared by its {@link Lod}s. Each collapse continues from
+	 * the previous level, so all of them are computed in one pass by whichever level is packed first.
+	 */
+	private static final class Simplified
+	{
+		final Model model;
+		private int[][] remaps;
+
+		Simplified(Model model)
+		{
+			this.model = model;
+		}
+
+		// levels of a model can be packed by different slabs
+		synchronized int[] remap(int level)
+		{
+			if (remaps == null)
+			{
+				remaps = ModelSimplifier.simplify(model, LOD_RATIOS);
+			}
+			return remaps[level];
+		}
+	}
+
+	private static final class Lod
+	{
+		final Item source;
+		final Simplified simplified;
+		final int level;
+		int offset;
+		int uvOffset;
+		int faces;
+
+		Lod(Item source, Simplified simplified, int level)
+		{
+			this.source = source;
+			this.simplified = simplified;
+			this.level = level;
 		}
 
-		WallObject wallObject = tile.getWallObject();
-		if (wallObject != null)
+		int baseOffset()
 		{
-			Renderable renderable1 = wallObject.getRenderable1();
-			if (renderable1 instanceof Model)
-			{
-				uploadSceneModel((Model) renderable1, vertexBuffer, uvBuffer);
-			}
-
-			Renderable renderable2 = wallObject.getRenderable2();
-			if (renderable2 instanceof Model)
-			{
-				uploadSceneModel((Model) renderable2, vertexBuffer, uvBuffer);
-			}
+			return ((Model) source.geometry).getBufferOffset();
 		}
+	}
 
-		GroundObject groundObject = tile.getGroundObject();
-		if (groundObject != null)
+	/**
+	 * A piece of static scene geometry, in upload order.
+	 */
+	private static final class Item
+	{
+		// SceneTilePaint, SceneTileModel, Model or Lod
+		final Object geometry;
+		final Tile tile;
+		final boolean hasUv;
+		final int weight;
+		int len;
+		long meshHash;
+		// models with the same mesh, sharing this item's buffer offsets
+		List<Model> aliases;
+
+		Item(Object geometry, Tile tile, boolean hasUv, int weight)
 		{
-			Renderable renderable = groundObject.getRenderable();
-			if (renderable instanceof Model)
-			{
-				uploadSceneModel((Model) renderable, vertexBuffer, uvBuffer);
-			}
+			this.geometry = geometry;
+			this.tile = tile;
+			this.hasUv = hasUv;
+			this.weight = weight;
 		}
 
-		DecorativeObject decorativeObject = tile.getDecorativeObject();
-		if (decorativeObject != null)
+		void setOffsets(int offset, int uvOffset)
 		{
-			Renderable renderable = decorativeObject.getRenderable();
-			if (renderable instanceof Model)
+			if (geometry instanceof SceneTilePaint)
 			{
-				uploadSceneModel((Model) renderable, vertexBuffer, uvBuffer);
+				SceneTilePaint paint = (SceneTilePaint) geometry;
+				paint.setBufferOffset(offset);
+				paint.setUvBufferOffset(uvOffset);
+				paint.setBufferLen(len);
 			}
-
-			Renderable renderable2 = decorativeObject.getRenderable2();
-			if (renderable2 instanceof Model)
+			else if (geometry instanceof SceneTileModel)
 			{
-				uploadSceneModel((Model) renderable2, vertexBuffer, uvBuffer);
+				SceneTileModel model = (SceneTileModel) geometry;
+				model.setBufferOffset(offset);
+				model.setUvBufferOffset(uvOffset);
+				model.setBufferLen(len);
 			}
-		}
-
-		GameObject[] gameObjects = tile.getGameObjects();
-		for (GameObject gameObject : gameObjects)
-		{
-			if (gameObject == null)
+			else if (geometry instanceof Lod)
 			{
-				continue;
+				Lod lod = (Lod) geometry;
+				lod.offset = offset;
+				lod.uvOffset = uvOffset;
 			}
-
-			Renderable renderable = gameObject.getRenderable();
-			if (renderable instanceof Model)
+			else
 			{
-				uploadSceneModel((Model) gameObject.getRenderable(), vertexBuffer, uvBuffer);
+				Model model = (Model) geometry;
+				model.setBufferOffset(offset);
+				model.setUvBufferOffset(uvOffset);
+
+				if (aliases != null)
+				{
+					for (Model alias : aliases)
+					{
+						alias.setBufferOffset(offset);
+						alias.setUvBufferOffset(uvOffset);
+					}
+				}
 			}
 		}
 	}
@@ -386,43 +1336,20 @@ class SceneUploader
 		return cnt;
 	}
 
-	private void uploadSceneModel(Model model, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
+	public int pushModel(Model model, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
 	{
-		// deduplicate hillskewed models
-		if (model.getUnskewedModel() != null)
-		{
-			model = model.getUnskewedModel();
-		}
-
-		if (model.getSceneId() == sceneId)
-		{
-			return; // model has already been uploaded
-		}
-
-		model.setBufferOffset(offset);
-		if (model.getFaceTextures() != null)
-		{
-			model.setUvBufferOffset(uvoffset);
-		}
-		else
-		{
-			model.setUvBufferOffset(-1);
-		}
-		model.setSceneId(sceneId);
-		++uniqueModels;
-
-		int len = pushModel(model, vertexBuffer, uvBuffer);
-
-		offset += len;
-		if (model.getFaceTextures() != null)
-		{
-			uvoffset += len;
-		}
+		return pushModel(model, null, vertexBuffer, uvBuffer);
 	}
 
-	public int pushModel(Model model, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
+	/**
+	 * Push a model, or a simplified mesh of it
+	 *
+	 * @param remap vertex remapping from {@link ModelSimplifier#simplify}, or null for the full model
+	 */
+	private int pushModel(Model model, int[] remap, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
 	{
-		final int triangleCount = Math.min(model.getFaceCount(), VRPlugin.MAX_TRIANGLE);
+		// models over VRPlugin.MAX_TRIANGLE faces are split into chunks when they are drawn
+		final int triangleCount = model.getFaceCount();
 
 		vertexBuffer.ensureCapacity(triangleCount * 12);
 		uvBuffer.ensureCapacity(triangleCount * 12);
@@ -460,6 +1387,22 @@ class SceneUploader
 			int color2 = color2s[face];
 			int color3 = color3s[face];
 
+			int triangleA = indices1[face];
+			int triangleB = indices2[face];
+			int triangleC = indices3[face];
+
+			if (remap != null)
+			{
+				// simplified meshes leave out hidden and collapsed faces entirely
+				triangleA = remap[triangleA];
+				triangleB = remap[triangleB];
+				triangleC = remap[triangleC];
+				if (color3 == -2 || triangleA == triangleB || triangleB == triangleC || triangleA == triangleC)
+				{
+					continue;
+				}
+			}
+
 			if (color3 == -1)
 			{
 				color2 = color3 = color1;
@@ -494,10 +1437,6 @@ class SceneUploader
 
 			int packAlphaPriority = packAlphaPriority(faceTextures, transparencies, facePriorities, face);
 
-			int triangleA = indices1[face];
-			int triangleB = indices2[face];
-			int triangleC = indices3[face];
-
 			vertexBuffer.put((int)vertexX[triangleA], (int)vertexY[triangleA], (int)vertexZ[triangleA], packAlphaPriority | color1);
 			vertexBuffer.put((int)vertexX[triangleB], (int)vertexY[triangleB], (int)vertexZ[triangleB], packAlphaPriority | color2);
 			vertexBuffer.put((int)vertexX[triangleC], (int)vertexY[triangleC], (int)vertexZ[triangleC], packAlphaPriority | color3);
@@ -667,452 +1606,55 @@ class SceneUploader
 		return len;
 	}
 
-	private static int[] distances;
-	private static char[] distanceFaceCount;
-	private static char[][] distanceToFaces;
-
-	private static float[] modelCanvasX;
-	private static float[] modelCanvasY;
-
-	private static int[] modelLocalX;
-	private static int[] modelLocalY;
-	private static int[] modelLocalZ;
-
-	private static int[] numOfPriority;
-	private static int[] eq10;
-	private static int[] eq11;
-	private static int[] lt10;
-	private static int[][] orderedFaces;
-
-	void initSortingBuffers()
-	{
-		int MAX_VERTEX_COUNT = 6500;
-		int MAX_DIAMETER = 6000;
-		int ZSORT_GROUP_SIZE = 1024; // was 512
-		int MAX_FACES_PER_PRIORITY = 4000; // was 2000
-
-		distances = new int[MAX_VERTEX_COUNT];
-		distanceFaceCount = new char[MAX_DIAMETER];
-		distanceToFaces = new char[MAX_DIAMETER][ZSORT_GROUP_SIZE];
-
-		modelCanvasX = new float[MAX_VERTEX_COUNT];
-		modelCanvasY = new float[MAX_VERTEX_COUNT];
-
-		modelLocalX = new int[MAX_VERTEX_COUNT];
-		modelLocalY = new int[MAX_VERTEX_COUNT];
-		modelLocalZ = new int[MAX_VERTEX_COUNT];
-
-		numOfPriority = new int[12];
-		eq10 = new int[MAX_FACES_PER_PRIORITY];
-		eq11 = new int[MAX_FACES_PER_PRIORITY];
-		lt10 = new int[12];
-		orderedFaces = new int[12][MAX_FACES_PER_PRIORITY];
-	}
-
-	void releaseSortingBuffers()
+	/**
+	 * Whether the faces of a model can be drawn in any order. With the depth test that is the case when
+	 * none of them are translucent or textured and they all share a render priority. Textures count
+	 * as translucent, their black texels have no alpha and the scene is drawn without an alpha test,
+	 * so cut-out textures drawn out of order would write depth over what is behind their holes.
+	 */
+	static boolean isUnordered(Model model)
 	{
-		distances = null;
-		distanceFaceCount = null;
-		distanceToFaces = null;
-
-		modelCanvasX = null;
-		modelCanvasY = null;
-
-		modelLocalX = null;
-		modelLocalY = null;
-		modelLocalZ = null;
-
-		numOfPriority = null;
-		eq10 = null;
-		eq11 = null;
-		lt10 = null;
-		orderedFaces = null;
-	}
-
-	int pushSortedModel(Projection proj, Model model, int orientation, int x, int y, int z, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
-	{
-		final int vertexCount = model.getVerticesCount();
-		final float[] verticesX = model.getVerticesX();
-		final float[] verticesY = model.getVerticesY();
-		final float[] verticesZ = model.getVerticesZ();
-
 		final int faceCount = model.getFaceCount();
-		final int[] indices1 = model.getFaceIndices1();
-		final int[] indices2 = model.getFaceIndices2();
-		final int[] indices3 = model.getFaceIndices3();
-
-		final int[] faceColors3 = model.getFaceColors3();
-		final byte[] faceRenderPriorities = model.getFaceRenderPriorities();
-
-		final int centerX = client.getCenterX();
-		final int centerY = client.getCenterY();
-		final int zoom = client.get3dZoom();
-
-		int orientSine = 0;
-		int orientCosine = 0;
-		if (orientation != 0)
-		{
-			orientSine = Perspective.SINE[orientation];
-			orientCosine = Perspective.COSINE[orientation];
-		}
 
-		float[] p = proj.project(x, y, z);
-		int zero = (int) p[2];
-
-		for (int v = 0; v < vertexCount; ++v)
-		{
-			int vertexX = (int)verticesX[v];
-			int vertexY = (int)verticesY[v];
-			int vertexZ = (int)verticesZ[v];
-
-			if (orientation != 0)
-			{
-				int i = vertexZ * orientSine + vertexX * orientCosine >> 16;
-				vertexZ = vertexZ * orientCosine - vertexX * orientSine >> 16;
-				vertexX = i;
-			}
-
-			// move to local position
-			vertexX += x;
-			vertexY += y;
-			vertexZ += z;
-
-			modelLocalX[v] = vertexX;
-			modelLocalY[v] = vertexY;
-			modelLocalZ[v] = vertexZ;
-
-			p = proj.project(vertexX, vertexY, vertexZ);
-			modelCanvasX[v] = centerX + p[0] * zoom / p[2];
-			modelCanvasY[v] = centerY + p[1] * zoom / p[2];
-			distances[v] = (int) p[2] - zero;
-		}
-
-		final int diameter = model.getDiameter();
-		final int radius = model.getRadius();
-		if (diameter >= 6000)
-		{
-			return 0;
-		}
-
-		Arrays.fill(distanceFaceCount, 0, diameter, (char) 0);
-
-		for (char i = 0; i < faceCount; ++i)
+		final short[] faceTextures = model.getFaceTextures();
+		if (faceTextures != null)
 		{
-			if (faceColors3[i] != -2)
+			for (int face = 0; face < faceCount; ++face)
 			{
-				final int v1 = indices1[i];
-				final int v2 = indices2[i];
-				final int v3 = indices3[i];
-
-				final float
-					aX = modelCanvasX[v1],
-					aY = modelCanvasY[v1],
-					bX = modelCanvasX[v2],
-					bY = modelCanvasY[v2],
-					cX = modelCanvasX[v3],
-					cY = modelCanvasY[v3];
-
-				if ((aX - bX) * (cY - bY) - (cX - bX) * (aY - bY) > 0)
+				if (faceTextures[face] != -1)
 				{
-					int distance = radius + (distances[v1] + distances[v2] + distances[v3]) / 3;
-					assert distance >= 0 && distance < diameter;
-					distanceToFaces[distance][distanceFaceCount[distance]++] = i;
+					return false;
 				}
 			}
 		}
 
-		vertexBuffer.ensureCapacity(12 * faceCount);
-		uvBuffer.ensureCapacity(12 * faceCount);
-
-		int len = 0;
-		if (faceRenderPriorities == null)
+		final byte[] transparencies = model.getFaceTransparencies();
+		if (transparencies != null)
 		{
-			for (int i = diameter - 1; i >= 0; --i)
+			for (int face = 0; face < faceCount; ++face)
 			{
-				final int cnt = distanceFaceCount[i];
-				if (cnt > 0)
+				if (transparencies[face] != 0)
 				{
-					final char[] faces = distanceToFaces[i];
-
-					for (int faceIdx = 0; faceIdx < cnt; ++faceIdx)
-					{
-						final int face = faces[faceIdx];
-						len += pushFace(model, face, vertexBuffer, uvBuffer);
-					}
+					return false;
 				}
 			}
 		}
-		else
-		{
-			Arrays.fill(numOfPriority, 0);
-			Arrays.fill(lt10, 0);
-
-			for (int i = diameter - 1; i >= 0; --i)
-			{
-				final int cnt = distanceFaceCount[i];
-				if (cnt > 0)
-				{
-					final char[] faces = distanceToFaces[i];
-
-					for (int faceIdx = 0; faceIdx < cnt; ++faceIdx)
-					{
-						final int face = faces[faceIdx];
-						final byte pri = faceRenderPriorities[face];
-						final int distIdx = numOfPriority[pri]++;
 
-						orderedFaces[pri][distIdx] = face;
-						if (pri < 10)
-						{
-							lt10[pri] += i;
-						}
-						else if (pri == 10)
-						{
-							eq10[distIdx] = i;
-						}
-						else
-						{
-							eq11[distIdx] = i;
-						}
-					}
-				}
-			}
-
-			int avg12 = 0;
-			if (numOfPriority[1] > 0 || numOfPriority[2] > 0)
-			{
-				avg12 = (lt10[1] + lt10[2]) / (numOfPriority[1] + numOfPriority[2]);
-			}
-
-			int avg34 = 0;
-			if (numOfPriority[3] > 0 || numOfPriority[4] > 0)
-			{
-				avg34 = (lt10[3] + lt10[4]) / (numOfPriority[3] + numOfPriority[4]);
-			}
-
-			int avg68 = 0;
-			if (numOfPriority[6] > 0 || numOfPriority[8] > 0)
-			{
-				avg68 = (lt10[8] + lt10[6]) / (numOfPriority[8] + numOfPriority[6]);
-			}
-
-			int drawnFaces = 0;
-			int numDynFaces = numOfPriority[10];
-			int[] dynFaces = orderedFaces[10];
-			int[] dynFaceDistances = eq10;
-			if (drawnFaces == numDynFaces)
-			{
-				drawnFaces = 0;
-				numDynFaces = numOfPriority[11];
-				dynFaces = orderedFaces[11];
-				dynFaceDistances = eq11;
-			}
-
-			int currFaceDistance;
-			if (drawnFaces < numDynFaces)
-			{
-				currFaceDistance = dynFaceDistances[drawnFaces];
-			}
-			else
-			{
-				currFaceDistance = -1000;
-			}
-
-			for (int pri = 0; pri < 10; ++pri)
-			{
-				while (pri == 0 && currFaceDistance > avg12)
-				{
-					final int face = dynFaces[drawnFaces++];
-					len += pushFace(model, face, vertexBuffer, uvBuffer);
-
-					if (drawnFaces == numDynFaces && dynFaces != orderedFaces[11])
-					{
-						drawnFaces = 0;
-						numDynFaces = numOfPriority[11];
-						dynFaces = orderedFaces[11];
-						dynFaceDistances = eq11;
-					}
-
-					if (drawnFaces < numDynFaces)
-					{
-						currFaceDistance = dynFaceDistances[drawnFaces];
-					}
-					else
-					{
-						currFaceDistance = -1000;
-					}
-				}
-
-				while (pri == 3 && currFaceDistance > avg34)
-				{
-					final int face = dynFaces[drawnFaces++];
-					len += pushFace(model, face, vertexBuffer, uvBuffer);
-
-					if (drawnFaces == numDynFaces && dynFaces != orderedFaces[11])
-					{
-						drawnFaces = 0;
-						numDynFaces = numOfPriority[11];
-						dynFaces = orderedFaces[11];
-						dynFaceDistances = eq11;
-					}
-
-					if (drawnFaces < numDynFaces)
-					{
-						currFaceDistance = dynFaceDistances[drawnFaces];
-					}
-					else
-					{
-						currFaceDistance = -1000;
-					}
-				}
-
-				while (pri == 5 && currFaceDistance > avg68)
-				{
-					final int face = dynFaces[drawnFaces++];
-					len += pushFace(model, face, vertexBuffer, uvBuffer);
-
-					if (drawnFaces == numDynFaces && dynFaces != orderedFaces[11])
-					{
-						drawnFaces = 0;
-						numDynFaces = numOfPriority[11];
-						dynFaces = orderedFaces[11];
-						dynFaceDistances = eq11;
-					}
-
-					if (drawnFaces < numDynFaces)
-					{
-						currFaceDistance = dynFaceDistances[drawnFaces];
-					}
-					else
-					{
-						currFaceDistance = -1000;
-					}
-				}
-
-				final int priNum = numOfPriority[pri];
-				final int[] priFaces = orderedFaces[pri];
-
-				for (int faceIdx = 0; faceIdx < priNum; ++faceIdx)
-				{
-					final int face = priFaces[faceIdx];
-					len += pushFace(model, face, vertexBuffer, uvBuffer);
-				}
-			}
-
-			while (currFaceDistance != -1000)
+		final byte[] facePriorities = model.getFaceRenderPriorities();
+		if (facePriorities != null)
+		{
+			for (int face = 1; face < faceCount; ++face)
 			{
-				final int face = dynFaces[drawnFaces++];
-				len += pushFace(model, face, vertexBuffer, uvBuffer);
-
-				if (drawnFaces == numDynFaces && dynFaces != orderedFaces[11])
-				{
-					drawnFaces = 0;
-					dynFaces = orderedFaces[11];
-					numDynFaces = numOfPriority[11];
-					dynFaceDistances = eq11;
-				}
-
-				if (drawnFaces < numDynFaces)
-				{
-					currFaceDistance = dynFaceDistances[drawnFaces];
-				}
-				else
+				if (facePriorities[face] != facePriorities[0])
 				{
-					currFaceDistance = -1000;
+					return false;
 				}
 			}
 		}
-
-		return len;
-	}
-
-	private int pushFace(Model model, int face, GpuIntBuffer vertexBuffer, GpuFloatBuffer uvBuffer)
-	{
-		final int[] indices1 = model.getFaceIndices1();
-		final int[] indices2 = model.getFaceIndices2();
-		final int[] indices3 = model.getFaceIndices3();
-
-		final int[] faceColors1 = model.getFaceColors1();
-		final int[] faceColors2 = model.getFaceColors2();
-		final int[] faceColors3 = model.getFaceColors3();
-
-		final byte overrideAmount = model.getOverrideAmount();
-		final byte overrideHue = model.getOverrideHue();
-		final byte overrideSat = model.getOverrideSaturation();
-		final byte overrideLum = model.getOverrideLuminance();
-
-		final short[] faceTextures = model.getFaceTextures();
-		final byte[] textureFaces = model.getTextureFaces();
-		final int[] texIndices1 = model.getTexIndices1();
-		final int[] texIndices2 = model.getTexIndices2();
-		final int[] texIndices3 = model.getTexIndices3();
-
-		final byte[] faceRenderPriorities = model.getFaceRenderPriorities();
-		final byte[] transparencies = model.getFaceTransparencies();
-
-		final int packAlphaPriority = packAlphaPriority(faceTextures, transparencies, faceRenderPriorities, face);
-
-		final int triangleA = indices1[face];
-		final int triangleB = indices2[face];
-		final int triangleC = indices3[face];
-
-		int color1 = faceColors1[face];
-		int color2 = faceColors2[face];
-		int color3 = faceColors3[face];
-
-		if (color3 == -1)
-		{
-			color2 = color3 = color1;
-		}
-
-		// HSL override is not applied to textured faces
-		if (faceTextures == null || faceTextures[face] == -1)
-		{
-			if (overrideAmount > 0)
-			{
-				color1 = interpolateHSL(color1, overrideHue, overrideSat, overrideLum, overrideAmount);
-				color2 = interpolateHSL(color2, overrideHue, overrideSat, overrideLum, overrideAmount);
-				color3 = interpolateHSL(color3, overrideHue, overrideSat, overrideLum, overrideAmount);
-			}
-		}
-
-		vertexBuffer.put(modelLocalX[triangleA], modelLocalY[triangleA], modelLocalZ[triangleA], packAlphaPriority | color1);
-		vertexBuffer.put(modelLocalX[triangleB], modelLocalY[triangleB], modelLocalZ[triangleB], packAlphaPriority | color2);
-		vertexBuffer.put(modelLocalX[triangleC], modelLocalY[triangleC], modelLocalZ[triangleC], packAlphaPriority | color3);
-
-		if (faceTextures != null && faceTextures[face] != -1)
-		{
-			int texA, texB, texC;
-
-			if (textureFaces != null && textureFaces[face] != -1)
-			{
-				int tfaceIdx = textureFaces[face] & 0xff;
-				texA = texIndices1[tfaceIdx];
-				texB = texIndices2[tfaceIdx];
-				texC = texIndices3[tfaceIdx];
-			}
-			else
-			{
-				texA = triangleA;
-				texB = triangleB;
-				texC = triangleC;
-			}
-
-			int texture = faceTextures[face] + 1;
-			uvBuffer.put(texture, modelLocalX[texA], modelLocalY[texA], modelLocalZ[texA]);
-			uvBuffer.put(texture, modelLocalX[texB], modelLocalY[texB], modelLocalZ[texB]);
-			uvBuffer.put(texture, modelLocalX[texC], modelLocalY[texC], modelLocalZ[texC]);
-		}
-		else
-		{
-			uvBuffer.put(0, 0, 0, 0);
-			uvBuffer.put(0, 0, 0, 0);
-			uvBuffer.put(0, 0, 0, 0);
-		}
-
-		return 3;
+		return true;
 	}
 
-	private static int packAlphaPriority(short[] faceTextures, byte[] faceTransparencies, byte[] facePriorities, int face)
+	static int packAlphaPriority(short[] faceTextures, byte[] faceTransparencies, byte[] facePriorities, int face)
 	{
 		int alpha = 0;
 		if (faceTransparencies != null)
@@ -1127,7 +1669,7 @@ class SceneUploader
 		return alpha | priority;
 	}
 
-	private static int interpolateHSL(int hsl, byte hue2, byte sat2, byte lum2, byte lerp)
+	static int interpolateHSL(int hsl, byte hue2, byte sat2, byte lum2, byte lerp)
 	{
 		int hue = hsl >> 10 & 63;
 		int sat = hsl >> 7 & 7;
@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.opengl.GL43C;
+
+/**
+ * World space geometry of the opaque, untextured, single priority models placed in the scene. Their
+ * faces can be drawn in any order, so instead of being transformed by the compute programs every
+ * frame, each placement is transformed once by the unordered program into these buffers the first
+ * time it is drawn, and is then drawn straight from them like the zone geometry. Placements are keyed
+ * on their buffer offset, flags and position. A placement that goes undrawn for a while is freed, so
+ * the buffers follow what is around the camera rather than filling with everything seen since the
+ * scene was loaded. Textured models are left out, their cut-out texels would otherwise be baked in as holes.
+ */
+@Singleton
+@Slf4j
+class StaticGeometry
+{
+	private static final int STATS_FRAMES = 600;
+	// frames a placement may go undrawn before its geometry is freed
+	private static final int EVICT_FRAMES = 300;
+	// out buffers hold an ivec4 and a vec4 per vertex
+	private static final int VERTEX_BYTES = 16;
+
+	// offset, flags, x, y, z
+	private static final int KEY_INTS = 5;
+	// offset in the static buffers in vertices, face count, frame last drawn
+	private static final int VALUE_INTS = 3;
+
+	final GLBuffer vertexBuffer = new GLBuffer("static vertex buffer");
+	final GLBuffer uvBuffer = new GLBuffer("static uv buffer");
+	final GLBuffer modelBuffer = new GLBuffer("static model buffer");
+
+	private int capacity;
+	private int used;
+	// free ranges of the buffers, offset to length, in vertices
+	private final TreeMap<Integer, Integer> free = new TreeMap<>();
+
+	// open addressed placement table, a slot is empty when its face count is 0
+	private int[] keys = new int[0];
+	private int[] values = new int[0];
+	private int placements;
+
+	// modelinfo records of the placements to transform this frame
+	private final GpuIntBuffer pending = new GpuIntBuffer();
+	private int pendingModels;
+
+	// faces drawn this frame, and the ranges they coalesce into
+	private final BitSet faces = new BitSet();
+	private final GpuIntBuffer drawFirst = new GpuIntBuffer();
+	private final GpuIntBuffer drawCount = new GpuIntBuffer();
+	private int draws;
+
+	private int frame;
+	// the frame a full buffer was last made room in, to do so at most once a frame
+	private int reclaimFrame = -1;
+	private long fallbacks;
+	private long evictions;
+
+	/**
+	 * Allocate the static buffers. The buffer ids must already have been generated.
+	 *
+	 * @param size size of the vertex buffer in bytes, the uv buffer is the same size
+	 */
+	void init(int size)
+	{
+		capacity = size / VERTEX_BYTES;
+
+		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, vertexBuffer.glBufferId);
+		GL43C.glBufferData(GL43C.GL_ARRAY_BUFFER, (long) capacity * VERTEX_BYTES, GL43C.GL_DYNAMIC_COPY);
+		vertexBuffer.size = capacity * VERTEX_BYTES;
+		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, uvBuffer.glBufferId);
+		GL43C.glBufferData(GL43C.GL_ARRAY_BUFFER, (long) capacity * VERTEX_BYTES, GL43C.GL_DYNAMIC_COPY);
+		uvBuffer.size = capacity * VERTEX_BYTES;
+		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, 0);
+
+		keys = new int[1024 * KEY_INTS];
+		values = new int[1024 * VALUE_INTS];
+		clear();
+	}
+
+	/**
+	 * Forget every placement, for when the scene geometry they were transformed from is replaced
+	 */
+	void clear()
+	{
+		Arrays.fill(values, 0);
+		placements = 0;
+		used = 0;
+		free.clear();
+		free.put(0, capacity);
+		pending.clear();
+		pendingModels = 0;
+		faces.clear();
+		draws = 0;
+	}
+
+	void free()
+	{
+		pending.free();
+		drawFirst.free();
+		drawCount.free();
+	}
+
+	void startFrame()
+	{
+		faces.clear();
+
+		if (++frame % (EVICT_FRAMES / 4) == 0)
+		{
+			evict(frame - EVICT_FRAMES);
+		}
+
+		if (frame % STATS_FRAMES == 0 && capacity > 0)
+		{
+			log.debug("Static geometry: {} placements, {}% full, {} fallbacks, {} evictions",
+				placements, (long) used * 100 / capacity, fallbacks, evictions);
+			fallbacks = evictions = 0;
+		}
+	}
+
+	/**
+	 * Draw a placement of a scene model from the static buffers, queueing its transform if this is the
+	 * first time it is drawn
+	 *
+	 * @return false if the placement doesn't fit and must go through compute as usual
+	 */
+	boolean draw(int offset, int uvOffset, int faceCount, int flags, int x, int y, int z)
+	{
+		if (faceCount == 0)
+		{
+			return true;
+		}
+
+		final int mask = values.length / VALUE_INTS - 1;
+		int slot = hash(offset, flags, x, y, z) & mask;
+		for (; values[slot * VALUE_INTS + 1] != 0; slot = (slot + 1) & mask)
+		{
+			final int k = slot * KEY_INTS;
+			if (keys[k] == offset && keys[k + 1] == flags && keys[k + 2] == x && keys[k + 3] == y && keys[k + 4] == z)
+			{
+				final int start = values[slot * VALUE_INTS] / 3;
+				faces.set(start, start + faceCount);
+				values[slot * VALUE_INTS + 2] = frame;
+				return true;
+			}
+		}
+
+		final int len = faceCount * 3;
+		int start = allocate(len);
+		if (start == -1 && reclaimFrame != frame)
+		{
+			// make room from everything not drawn this frame or the last, this rebuilds the table
+			reclaimFrame = frame;
+			evict(frame - 1);
+			start = allocate(len);
+			slot = emptySlot(hash(offset, flags, x, y, z));
+		}
+		if (start == -1)
+		{
+			++fallbacks;
+			return false;
+		}
+
+		final int k = slot * KEY_INTS;
+		keys[k] = offset;
+		keys[k + 1] = flags;
+		keys[k + 2] = x;
+		keys[k + 3] = y;
+		keys[k + 4] = z;
+		values[slot * VALUE_INTS] = start;
+		values[slot * VALUE_INTS + 1] = faceCount;
+		values[slot * VALUE_INTS + 2] = frame;
+
+		pending.ensureCapacity(8);
+		pending.getBuffer()
+			.put(offset)
+			.put(uvOffset)
+			.put(faceCount)
+			.put(start)
+			.put(flags)
+			.put(x).put(y).put(z);
+		++pendingModels;
+
+		faces.set(start / 3, start / 3 + faceCount);
+
+		if (++placements * 2 > values.length / VALUE_INTS)
+		{
+			grow();
+		}
+		return true;
+	}
+
+	/**
+	 * @return the modelinfo records of the placements to transform this frame, flipped for upload
+	 */
+	IntBuffer flipPending()
+	{
+		pending.flip();
+		return pending.getBuffer();
+	}
+
+	int pendingModels()
+	{
+		return pendingModels;
+	}
+
+	void clearPending()
+	{
+		pending.clear();
+		pendingModels = 0;
+	}
+
+	/**
+	 * Coalesce the faces drawn this frame into ranges for glMultiDrawArrays
+	 */
+	void prepareDraws()
+	{
+		drawFirst.clear();
+		drawCount.clear();
+		draws = 0;
+
+		for (int start = faces.nextSetBit(0); start >= 0; )
+		{
+			final int end = faces.nextClearBit(start);
+
+			drawFirst.ensureCapacity(1);
+			drawCount.ensureCapacity(1);
+			drawFirst.getBuffer().put(start * 3);
+			drawCount.getBuffer().put((end - start) * 3);
+			++draws;
+
+			start = faces.nextSetBit(end);
+		}
+
+		drawFirst.flip();
+		drawCount.flip();
+	}
+
+	int draws()
+	{
+		return draws;
+	}
+
+	IntBuffer drawFirst()
+	{
+		return drawFirst.getBuffer();
+	}
+
+	IntBuffer drawCount()
+	{
+		return drawCount.getBuffer();
+	}
+
+	private void grow()
+	{
+		rebuild(values.length / VALUE_INTS * 2, Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Free the placements last drawn before the given frame. Their ranges can only be written over once
+	 * no retained frame draws them, which is the case from the frame after they were last drawn.
+	 */
+	private void evict(int olderThan)
+	{
+		rebuild(values.length / VALUE_INTS, olderThan);
+	}
+
+	/**
+	 * Rehash the placement table into the given number of slots, dropping the placements last drawn
+	 * before the given frame
+	 */
+	private void rebuild(int slots, int olderThan)
+	{
+		final int[] oldKeys = keys;
+		final int[] oldValues = values;
+		keys = new int[slots * KEY_INTS];
+		values = new int[slots * VALUE_INTS];
+		placements = 0;
+
+		for (int old = 0; old < oldValues.length / VALUE_INTS; ++old)
+		{
+			final int v = old * VALUE_INTS;
+			if (oldValues[v + 1] == 0)
+			{
+				continue;
+			}
+
+			if (oldValues[v + 2] < olderThan)
+			{
+				release(oldValues[v], oldValues[v + 1] * 3);
+				++evictions;
+				continue;
+			}
+
+			final int k = old * KEY_INTS;
+			final int slot = emptySlot(hash(oldKeys[k], oldKeys[k + 1], oldKeys[k + 2], oldKeys[k + 3], oldKeys[k + 4]));
+			System.arraycopy(oldKeys, k, keys, slot * KEY_INTS, KEY_INTS);
+			System.arraycopy(oldValues, v, values, slot * VALUE_INTS, VALUE_INTS);
+			++placements;
+		}
+	}
+
+	private int emptySlot(int hash)
+	{
+		final int mask = values.length / VALUE_INTS - 1;
+		int slot = hash & mask;
+		while (values[slot * VALUE_INTS + 1] != 0)
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private int allocate(int length)
+	{
+		for (Map.Entry<Integer, Integer> range : free.entrySet())
+		{
+			final int offset = range.getKey();
+			final int size = range.getValue();
+			if (size >= length)
+			{
+				free.remove(offset);
+				if (size > length)
+				{
+					free.put(offset + length, size - length);
+				}
+				used += length;
+				return offset;
+			}
+		}
+		return -1;
+	}
+
+	private void release(int offset, int length)
+	{
+		used -= length;
+
+		Map.Entry<Integer, Integer> next = free.ceilingEntry(offset);
+		if (next != null && next.getKey() == offset + length)
+		{
+			free.remove(next.getKey());
+			length += next.getValue();
+		}
+
+		Map.Entry<Integer, Integer> prev = free.floorEntry(offset);
+		if (prev != null && prev.getKey() + prev.getValue() == offset)
+		{
+			offset = prev.getKey();
+			length += prev.getValue();
+		}
+
+		free.put(offset, length);
+	}
+
+	private static int hash(int offset, int flags, int x, int y, int z)
+	{
+		int h = offset;
+		h = h * 31 + flags;
+		h = h * 31 + x;
+		h = h * 31 + y;
+		h = h * 31 + z;
+		return h ^ (h >>> 16);
+	}
+}
@@ -27,6 +27,7 @@ package com.vr;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Provides;
 //import javafx.application.Application;
 import lombok.AccessLevel;
@@ -75,6 +76,12 @@ import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
 import java.nio.*;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
@@ -140,7 +147,7 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 	long                           glColorFormat;
 	XrView.Buffer                  views;       //Each view reperesents an eye in the headset with views[0] being left and views[1] being right
-	Swapchain[]                    swapchains;  //One swapchain per view
+	Swapchain[]                    swapchains;  //One swapchain per view, or a single layered one shared by both views
 	XrViewConfigurationView.Buffer viewConfigs;
 	int                            viewConfigType = XR_VIEW_CONFIGURATION_TYPE_PRIMARY_STEREO;
 
@@ -164,18 +171,30 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	Map<XrSwapchainImageOpenGLKHR, Integer> depthTextures; //Swapchain images only provide a color texture so we have to create depth textures seperatley
 
 	int swapchainFramebuffer;
+	@Nullable
+	EyeTarget eyeTarget; // Reduced resolution scene target, when dynamic resolution is enabled
+	// The interface panel and menu when they are submitted as their own layers
+	@Nullable
+	QuadLayer interfaceLayer;
+	@Nullable
+	QuadLayer menuLayer;
 
 	static class Swapchain {
 		XrSwapchain                      handle;
 		int                              width;
 		int                              height;
+		int                              layers;
 		XrSwapchainImageOpenGLKHR.Buffer images;
 	}
 
 	// This is the maximum number of triangles the compute shaders support
 	static final int MAX_TRIANGLE = 6144;
-	static final int SMALL_TRIANGLE_COUNT = 512;
+
+	// The primary stereo view configuration always has a left and a right view
+	static final int STEREO_VIEWS = 2;
+
 	private static final int FLAG_SCENE_BUFFER = Integer.MIN_VALUE;
+	private static final int FLAG_MODEL_CACHE = 1 << 27;
 	private static final int DEFAULT_DISTANCE = 25;
 	static final int MAX_DISTANCE = 184;
 	static final int MAX_FOG_DEPTH = 100;
@@ -203,6 +222,15 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	@Inject
 	private com.vr.SceneUploader sceneUploader;
 
+	@Inject
+	private com.vr.ModelCache modelCache;
+
+	@Inject
+	private com.vr.StaticGeometry staticGeometry;
+
+	@Inject
+	private com.vr.FaceSortQueue faceSortQueue;
+
 	@Inject
 	private DrawManager drawManager;
 
@@ -220,6 +248,24 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	}
 
 	private ComputeMode computeMode = ComputeMode.NONE;
+	// scene and temp vertices use the packed layout, see comp_common.glsl
+	private boolean packedVertices;
+	private boolean indexedScene;
+	private boolean zoneGeometry;
+	// temp models are kept resident on the gpu between frames, GL compute only
+	private boolean modelCacheEnabled;
+	// temp vertices and model buffers are written straight into mapped ring buffers, GL compute only
+	private boolean persistentBuffers;
+	// opaque single priority models skip the sorting programs, GL compute only
+	private boolean unorderedModelsEnabled;
+	// placements of those models in the scene are transformed once and drawn from world space buffers
+	private boolean staticGeometryEnabled;
+	// both eyes share one array swapchain and the scene is drawn into its layers in a single pass
+	private boolean layeredStereo;
+	// the headset is drawn from its own thread at its own rate, GL compute only
+	private boolean decoupledRendering;
+	// the interface panel and menu are submitted as quad layers instead of being drawn into each eye
+	private boolean quadLayers;
 
 	private Canvas canvas;
 	private AWTContext awtContext;
@@ -251,9 +297,6 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	static final com.vr.Shader COMPUTE_PROGRAM = new com.vr.Shader()
 		.add(GL43C.GL_COMPUTE_SHADER, "comp.glsl");
 
-	static final com.vr.Shader SMALL_COMPUTE_PROGRAM = new com.vr.Shader()
-		.add(GL43C.GL_COMPUTE_SHADER, "comp.glsl");
-
 	static final com.vr.Shader UNORDERED_COMPUTE_PROGRAM = new com.vr.Shader()
 		.add(GL43C.GL_COMPUTE_SHADER, "comp_unordered.glsl");
 
@@ -261,12 +304,15 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		.add(GL43C.GL_VERTEX_SHADER, "vertui.glsl")
 		.add(GL43C.GL_FRAGMENT_SHADER, "fragui.glsl");
 
+	static final com.vr.Shader UPSCALE_PROGRAM = new Shader()
+		.add(GL43C.GL_VERTEX_SHADER, "vertupscale.glsl")
+		.add(GL43C.GL_FRAGMENT_SHADER, "fragupscale.glsl");
+
 	private int glProgram;
 	private int glOutlineProgram;
-	private int glComputeProgram;
-	private int glSmallComputeProgram;
 	private int glUnorderedComputeProgram;
 	private int glUiProgram;
+	private int glUpscaleProgram;
 
 	private int glHandProgram;
 
@@ -274,6 +320,8 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 	private int vaoCompute;
 	private int vaoTemp;
+	private int vaoZone;
+	private int vaoStatic;
 
 	private int vaoOutlineTemp;
 
@@ -303,39 +351,39 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 	private final com.vr.GLBuffer sceneVertexBuffer = new com.vr.GLBuffer("scene vertex buffer");
 	private final com.vr.GLBuffer sceneUvBuffer = new com.vr.GLBuffer("scene tex buffer");
+	private final com.vr.GLBuffer sceneIndexBuffer = new com.vr.GLBuffer("scene index buffer");
+	private final com.vr.GLBuffer sceneZoneVertexBuffer = new com.vr.GLBuffer("scene zone vertex buffer");
+	private final com.vr.GLBuffer sceneZoneUvBuffer = new com.vr.GLBuffer("scene zone uv buffer");
 	private final com.vr.GLBuffer tmpVertexBuffer = new com.vr.GLBuffer("tmp vertex buffer");
 	private final com.vr.GLBuffer tmpOutlineVertexBuffer = new com.vr.GLBuffer("tmp outline vertex buffer");
 	private final com.vr.GLBuffer tmpUvBuffer = new com.vr.GLBuffer("tmp tex buffer");
-	private final com.vr.GLBuffer tmpModelBufferLarge = new com.vr.GLBuffer("model buffer large");
-	private final com.vr.GLBuffer tmpModelBufferSmall = new com.vr.GLBuffer("model buffer small");
 	private final com.vr.GLBuffer tmpModelBufferUnordered = new com.vr.GLBuffer("model buffer unordered");
 	private final com.vr.GLBuffer tmpOutBuffer = new com.vr.GLBuffer("out vertex buffer");
 	private final com.vr.GLBuffer tmpOutUvBuffer = new com.vr.GLBuffer("out tex buffer");
 
+	private final com.vr.PersistentBuffer streamVertexBuffer = new com.vr.PersistentBuffer("stream vertex buffer");
+	private final com.vr.PersistentBuffer streamUvBuffer = new com.vr.PersistentBuffer("stream tex buffer");
+	private final com.vr.PersistentBuffer streamModelBufferUnordered = new com.vr.PersistentBuffer("stream model buffer unordered");
+
 	private int textureArrayId;
 	private int tileHeightTex;
 
 	private final com.vr.GLBuffer uniformBuffer = new com.vr.GLBuffer("uniform buffer");
+	// the camera of the retained frame, the client thread overwrites uniformBuffer while it is drawn
+	private final com.vr.GLBuffer retainedUniformBuffer = new com.vr.GLBuffer("retained uniform buffer");
 
 	private com.vr.GpuIntBuffer vertexBuffer;
 	private com.vr.GpuIntBuffer outlineVertexBuffer;
 	private com.vr.GpuFloatBuffer uvBuffer;
 
 	private com.vr.GpuIntBuffer modelBufferUnordered;
-	private com.vr.GpuIntBuffer modelBufferSmall;
-	private com.vr.GpuIntBuffer modelBuffer;
 
 	private int unorderedModels;
 
 	/**
-	 * number of models in small buffer
-	 */
-	private int smallModels;
-
-	/**
-	 * number of models in large buffer
+	 * size buckets for models sorted by the compute shaders, smallest first
 	 */
-	private int largeModels;
+	private com.vr.ComputeTier[] computeTiers;
 
 	/**
 	 * offset in the target buffer for model
@@ -344,6 +392,62 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 	private int targetOutlineBufferOffset;
 
+	/**
+	 * the last frame handed to the render thread, null while there is nothing to draw
+	 */
+	private volatile RetainedFrame retainedFrame;
+	private volatile int retainedOverlayColor;
+	private RetainedFrame boundFrame;
+
+	/**
+	 * held by whichever thread is using gl objects shared between the client and render contexts.
+	 * The fences are the last commands each side issued on them, which the other side waits on.
+	 */
+	private final ReentrantLock frameLock = new ReentrantLock();
+	private long clientFence;
+	private long renderFence;
+
+	private long uploadWindow;
+	/**
+	 * Consecutive render thread failures before the plugin gives up and stops
+	 */
+	private static final int MAX_RENDER_FAILURES = 10;
+	private Thread renderThread;
+	private volatile boolean renderThreadRunning;
+
+	/**
+	 * faces of the zone buffer drawn this frame
+	 */
+	private final BitSet zoneFaces = new BitSet();
+
+	/**
+	 * ranges of the zone buffer to draw, as glMultiDrawArrays arguments
+	 */
+	private final com.vr.GpuIntBuffer zoneDrawFirst = new com.vr.GpuIntBuffer();
+	private final com.vr.GpuIntBuffer zoneDrawCount = new com.vr.GpuIntBuffer();
+	private int zoneDraws;
+
+	/**
+	 * merged terrain rectangles of the zone buffer, see {@link SceneUploader#uploadZones}
+	 */
+	private int[] zoneMerges = new int[0];
+
+	/**
+	 * simplified meshes of the scene models, and the squared distances at which they are used
+	 */
+	private LodTable lodTable = LodTable.EMPTY;
+
+	/**
+	 * draw order of the chunks of a model with more than MAX_TRIANGLE faces, see {@link #orderChunks}
+	 */
+	private long[] chunkOrder = new long[16];
+	private final long[] lodDistancesSq = new long[2];
+
+	/**
+	 * buffer offsets of the scene models which need no face sorting
+	 */
+	private int[] unorderedOffsets = new int[0];
+
 	/**
 	 * offset into the temporary scene vertex buffer
 	 */
@@ -356,6 +460,9 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 	private int lastCanvasWidth;
 	private int lastCanvasHeight;
+	// hashes of the last uploaded interface and menu, to tell if the quad layers need redrawing
+	private long lastInterfaceHash;
+	private long lastMenuHash;
 	private int lastStretchedCanvasWidth;
 	private int lastStretchedCanvasHeight;
 	private AntiAliasingMode lastAntiAliasingMode;
@@ -395,9 +502,8 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 	private int uniTextures;
 	private int uniTextureAnimations;
-	private int uniBlockSmall;
-	private int uniBlockLarge;
 	private int uniBlockMain;
+	private int uniBlockUnordered;
 	private int uniSmoothBanding;
 	private int uniTextureLightMode;
 	private int uniTick;
@@ -405,9 +511,12 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	private boolean lwjglInitted = false;
 
 	private int sceneId;
-	private int nextSceneId;
-	private com.vr.GpuIntBuffer nextSceneVertexBuffer;
-	private com.vr.GpuFloatBuffer nextSceneTexBuffer;
+	// scene geometry is packed on the scene loader thread and handed to GL once it is done
+	private ExecutorService sceneLoader;
+	private Future<PreparedScene> nextScene;
+	// the scene the client has swapped to, whose geometry may still be packing
+	private Scene pendingScene;
+	private Future<PreparedScene> pendingSceneGeometry;
 
 	private int uniUiMap;
 	private int uniUiProjection;
@@ -670,10 +779,6 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 				computeMode = ComputeMode.NONE;
 			}
 
-			if (computeMode == ComputeMode.NONE)
-			{
-				sceneUploader.initSortingBuffers();
-			}
 			//sceneUploader.setStack(stack);
 
 			// Check if OpenGL version is supported by OpenXR runtime
@@ -1078,55 +1183,85 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 					throw new IllegalStateException("No compatable swapchain / framebuffer format availible");
 				}
 
-				swapchains = new Swapchain[viewCountNumber];
-				for (int i = 0; i < viewCountNumber; i++) {
+				int swapchainCount = layeredStereo ? 1 : viewCountNumber;
+				swapchains = new Swapchain[swapchainCount];
+				for (int i = 0; i < swapchainCount; i++) {
 					XrViewConfigurationView viewConfig = viewConfigs.get(i);
+					int width = viewConfig.recommendedImageRectWidth();
+					int height = viewConfig.recommendedImageRectHeight();
+					int layers = 1;
+
+					if (layeredStereo) {
+						// One image array holds every view, sized to fit the largest of them
+						for (int j = 1; j < viewCountNumber; j++) {
+							width = Math.max(width, viewConfigs.get(j).recommendedImageRectWidth());
+							height = Math.max(height, viewConfigs.get(j).recommendedImageRectHeight());
+						}
+						layers = viewCountNumber;
+					}
 
-					Swapchain swapchainWrapper = new Swapchain();
-
-					XrSwapchainCreateInfo swapchainCreateInfo = XrSwapchainCreateInfo.malloc(stack)
-							.type$Default()
-							.next(NULL)
-							.createFlags(0)
-							.usageFlags(XR_SWAPCHAIN_USAGE_SAMPLED_BIT | XR_SWAPCHAIN_USAGE_COLOR_ATTACHMENT_BIT)
-							.format(glColorFormat)
-							.sampleCount(viewConfig.recommendedSwapchainSampleCount())
-							.width(viewConfig.recommendedImageRectWidth())
-							.height(viewConfig.recommendedImageRectHeight())
-							.faceCount(1)
-							.arraySize(1)
-							.mipCount(1);
-
-					PointerBuffer pp = stack.mallocPointer(1);
-					check(xrCreateSwapchain(xrSession, swapchainCreateInfo, pp));
-
-					swapchainWrapper.handle = new XrSwapchain(pp.get(0), xrSession);
-					swapchainWrapper.width = swapchainCreateInfo.width();
-					swapchainWrapper.height = swapchainCreateInfo.height();
-
-					check(xrEnumerateSwapchainImages(swapchainWrapper.handle, pi, null));
-					int imageCount = pi.get(0);
-
-					XrSwapchainImageOpenGLKHR.Buffer swapchainImageBuffer = XRHelper.fill(
-							XrSwapchainImageOpenGLKHR.calloc(imageCount),
-							XrSwapchainImageOpenGLKHR.TYPE,
-							XR_TYPE_SWAPCHAIN_IMAGE_OPENGL_KHR
-					);
-
-					check(xrEnumerateSwapchainImages(swapchainWrapper.handle, pi, XrSwapchainImageBaseHeader.create(swapchainImageBuffer)));
-					swapchainWrapper.images = swapchainImageBuffer;
-					swapchains[i] = swapchainWrapper;
+					swapchains[i] = createSwapchain(width, height, layers, viewConfig.recommendedSwapchainSampleCount());
 				}
 			}
 		}
 	}
 
+	private Swapchain createSwapchain(int width, int height, int layers, int sampleCount) {
+		try (MemoryStack stack = stackPush()) {
+			IntBuffer pi = stack.mallocInt(1);
+			Swapchain swapchainWrapper = new Swapchain();
+
+			XrSwapchainCreateInfo swapchainCreateInfo = XrSwapchainCreateInfo.malloc(stack)
+					.type$Default()
+					.next(NULL)
+					.createFlags(0)
+					.usageFlags(XR_SWAPCHAIN_USAGE_SAMPLED_BIT | XR_SWAPCHAIN_USAGE_COLOR_ATTACHMENT_BIT)
+					.format(glColorFormat)
+					.sampleCount(sampleCount)
+					.width(width)
+					.height(height)
+					.faceCount(1)
+					.arraySize(layers)
+					.mipCount(1);
+
+			PointerBuffer pp = stack.mallocPointer(1);
+			check(xrCreateSwapchain(xrSession, swapchainCreateInfo, pp));
+
+			swapchainWrapper.handle = new XrSwapchain(pp.get(0), xrSession);
+			swapchainWrapper.width = swapchainCreateInfo.width();
+			swapchainWrapper.height = swapchainCreateInfo.height();
+			swapchainWrapper.layers = layers;
+
+			check(xrEnumerateSwapchainImages(swapchainWrapper.handle, pi, null));
+			int imageCount = pi.get(0);
+
+			XrSwapchainImageOpenGLKHR.Buffer swapchainImageBuffer = XRHelper.fill(
+					XrSwapchainImageOpenGLKHR.calloc(imageCount),
+					XrSwapchainImageOpenGLKHR.TYPE,
+					XR_TYPE_SWAPCHAIN_IMAGE_OPENGL_KHR
+			);
+
+			check(xrEnumerateSwapchainImages(swapchainWrapper.handle, pi, XrSwapchainImageBaseHeader.create(swapchainImageBuffer)));
+			swapchainWrapper.images = swapchainImageBuffer;
+			return swapchainWrapper;
+		}
+	}
+
 	private void createOpenGLResourses() {
 		swapchainFramebuffer = glGenFramebuffers();
 		depthTextures = new HashMap<>(0);
 		for (Swapchain swapchain : swapchains) {
 			for (XrSwapchainImageOpenGLKHR swapchainImage : swapchain.images) {
 				int texture = glGenTextures();
+				if (swapchain.layers > 1) {
+					GL43C.glBindTexture(GL43C.GL_TEXTURE_2D_ARRAY, texture);
+					GL43C.glTexParameteri(GL43C.GL_TEXTURE_2D_ARRAY, GL43C.GL_TEXTURE_MAG_FILTER, GL43C.GL_NEAREST);
+					GL43C.glTexParameteri(GL43C.GL_TEXTURE_2D_ARRAY, GL43C.GL_TEXTURE_MIN_FILTER, GL43C.GL_NEAREST);
+					GL43C.glTexImage3D(GL43C.GL_TEXTURE_2D_ARRAY, 0, GL43C.GL_DEPTH_COMPONENT32, swapchain.width, swapchain.height, swapchain.layers, 0, GL43C.GL_DEPTH_COMPONENT, GL43C.GL_FLOAT, (ByteBuffer) null);
+					GL43C.glBindTexture(GL43C.GL_TEXTURE_2D_ARRAY, 0);
+					depthTextures.put(swapchainImage, texture);
+					continue;
+				}
 				glBindTexture(GL_TEXTURE_2D, texture);
 				glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
 				glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
@@ -1137,6 +1272,17 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 			}
 		}
 		glBindTexture(GL_TEXTURE_2D, 0);
+
+		if (config.dynamicResolution()) {
+			int width = 0;
+			int height = 0;
+			for (Swapchain swapchain : swapchains) {
+				width = Math.max(width, swapchain.width);
+				height = Math.max(height, swapchain.height);
+			}
+			eyeTarget = new EyeTarget();
+			eyeTarget.init(glUpscaleProgram, width, height, views.capacity(), (int) glColorFormat, config.minimumResolutionScale() / 100f);
+		}
 	}
 
 	private int pollEvents() {
@@ -1259,12 +1405,12 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 				fboSceneHandle = rboSceneHandle = -1; // AA FBO
 				targetBufferOffset = targetOutlineBufferOffset = 0;
-				unorderedModels = smallModels = largeModels = 0;
+				unorderedModels = 0;
 
 				//AWTContext.loadNatives();
 
 				canvas = client.getCanvas();
-				robot = new VRRobot(canvas);
+				robot = new VRRobot();
 
 				/*synchronized (canvas.getTreeLock())
 				{
@@ -1284,6 +1430,13 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 				computeMode = config.useComputeShaders()
 					? (OSType.getOSType() == OSType.MacOS ? ComputeMode.OPENCL : ComputeMode.OPENGL)
 					: ComputeMode.NONE;
+				// the packed layout is only understood by the GL compute shaders
+				packedVertices = computeMode == ComputeMode.OPENGL && config.packedVertices();
+				indexedScene = computeMode == ComputeMode.OPENGL && config.indexedSceneGeometry();
+				zoneGeometry = computeMode != ComputeMode.NONE && config.zoneTileGeometry();
+				modelCacheEnabled = computeMode == ComputeMode.OPENGL && config.modelCacheSize() > 0;
+				unorderedModelsEnabled = computeMode == ComputeMode.OPENGL && config.skipOpaqueSorting();
+				staticGeometryEnabled = unorderedModelsEnabled && config.staticGeometrySize() > 0;
 
 				// lwjgl defaults to lwjgl- + user.name, but this breaks if the username would cause an invalid path
 				// to be created.
@@ -1295,6 +1448,12 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 				initializeAndBindOpenGL();
 				registerXRControllerActions();
 
+				// geometry shader invocations are needed to route each eye's copy of a triangle to its layer
+				layeredStereo = config.singlePassStereo() && glCapabilities.OpenGL40;
+				// the render thread redraws the compute output, the temp buffers are rebuilt every frame
+				decoupledRendering = config.decoupledRendering() && computeMode == ComputeMode.OPENGL;
+				quadLayers = config.quadLayers();
+
 				lwjglInitted = true;
 
 				checkGLErrors();
@@ -1321,17 +1480,34 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 					}
 				}
 
-				vertexBuffer = new com.vr.GpuIntBuffer();
+				vertexBuffer = new com.vr.GpuIntBuffer(packedVertices);
 				outlineVertexBuffer = new com.vr.GpuIntBuffer();
-				uvBuffer = new com.vr.GpuFloatBuffer();
+				uvBuffer = new com.vr.GpuFloatBuffer(packedVertices);
 
 				modelBufferUnordered = new com.vr.GpuIntBuffer();
-				modelBufferSmall = new com.vr.GpuIntBuffer();
-				modelBuffer = new com.vr.GpuIntBuffer();
+				computeTiers = com.vr.ComputeTier.create(config.computeTiers());
+				for (com.vr.ComputeTier tier : computeTiers)
+				{
+					tier.modelBuffer = new com.vr.GpuIntBuffer();
+				}
 
 				setupSyncMode();
 
 				initBuffers();
+				if (modelCacheEnabled)
+				{
+					modelCache.init(config.modelCacheSize() * 1024 * 1024, packedVertices);
+				}
+				if (staticGeometryEnabled)
+				{
+					staticGeometry.init(config.staticGeometrySize() * 1024 * 1024);
+				}
+				persistentBuffers = computeMode == ComputeMode.OPENGL && config.persistentBuffers()
+					&& glCapabilities.glBufferStorage != 0L;
+				if (persistentBuffers)
+				{
+					initStreamBuffers();
+				}
 				initVao();
 				try
 				{
@@ -1344,6 +1520,11 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 				initInterfaceTexture();
 				initUniformBuffer();
 
+				sceneLoader = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+					.setNameFormat("vr-scene-loader")
+					.setDaemon(true)
+					.build());
+
 				client.setDrawCallbacks(this);
 				client.setGpuFlags(DrawCallbacks.GPU
 					| (computeMode == ComputeMode.NONE ? 0 : DrawCallbacks.HILLSKEW)
@@ -1381,6 +1562,11 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 					}
 				}
 
+				if (decoupledRendering)
+				{
+					startRenderThread();
+				}
+
 				if (client.getGameState() == GameState.LOGGED_IN)
 				{
 					Scene scene = client.getScene();
@@ -1432,6 +1618,10 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	{
 		clientThread.invoke(() ->
 		{
+			if (renderThread != null)
+			{
+				stopRenderThread();
+			}
 
 			glFinish();
 
@@ -1444,6 +1634,7 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 				xrDestroySwapchain(swapchain.handle);
 				swapchain.images.free();
 			}
+			destroyQuadLayers();
 
 			xrDestroySpace(xrHeadSpace);
 			xrDestroySpace(xrAppSpace);
@@ -1458,13 +1649,30 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 				glDeleteTextures(texture);
 			}
 			glDeleteFramebuffers(swapchainFramebuffer);
+			if (eyeTarget != null) {
+				eyeTarget.destroy();
+				eyeTarget = null;
+			}
 
 			client.setGpuFlags(0);
 			client.setDrawCallbacks(null);
 			client.setUnlockedFps(false);
 			client.setExpandedMapLoading(0);
 
-			sceneUploader.releaseSortingBuffers();
+			if (sceneLoader != null)
+			{
+				// let the loader finish what it has so the scenes it packed can be freed
+				discardScene(nextScene);
+				discardScene(pendingSceneGeometry);
+				sceneLoader.shutdown();
+				sceneLoader = null;
+			}
+			nextScene = null;
+			pendingScene = null;
+			pendingSceneGeometry = null;
+
+			faceSortQueue.release();
+			staticGeometry.free();
 
 			if (lwjglInitted)
 			{
@@ -1481,6 +1689,7 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 				}
 
 				destroyGlBuffer(uniformBuffer);
+				destroyGlBuffer(retainedUniformBuffer);
 
 				shutdownInterfaceTexture();
 				shutdownProgram();
@@ -1506,12 +1715,29 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 			glCapabilities = null;
 
+			if (vertexBuffer != null)
+			{
+				vertexBuffer.free();
+				outlineVertexBuffer.free();
+				uvBuffer.free();
+				modelBufferUnordered.free();
+			}
+			zoneDrawFirst.free();
+			zoneDrawCount.free();
+			modelCache.free();
+			if (computeTiers != null)
+			{
+				for (com.vr.ComputeTier tier : computeTiers)
+				{
+					tier.modelBuffer.free();
+					tier.modelBuffer = null;
+				}
+				computeTiers = null;
+			}
 			vertexBuffer = null;
 			outlineVertexBuffer = null;
 			uvBuffer = null;
 
-			modelBufferSmall = null;
-			modelBuffer = null;
 			modelBufferUnordered = null;
 
 			lastAnisotropicFilteringLevel = -1;
@@ -1602,10 +1828,22 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 				return "#define THREAD_COUNT " + threadCount + "\n" +
 					"#define FACES_PER_THREAD " + facesPerThread + "\n";
 			}
+			if ("geometry_header".equals(key))
+			{
+				return layeredStereo
+					? "#version 400\n#define STEREO_VIEWS " + STEREO_VIEWS + "\n"
+					: "#version 330\n";
+			}
 			if ("texture_config".equals(key))
 			{
 				return "#define TEXTURE_COUNT " + TextureManager.TEXTURE_COUNT + "\n";
 			}
+			if ("vertex_config".equals(key))
+			{
+				return (packedVertices ? "#define PACKED_VERTICES\n" : "")
+					+ (indexedScene ? "#define INDEXED_SCENE\n" : "")
+					+ (modelCacheEnabled ? "#define MODEL_CACHE\n" : "");
+			}
 			return null;
 		});
 		template.addInclude(VRPlugin.class);
@@ -1638,6 +1876,7 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		glProgram = PROGRAM.compile(template);
 		glOutlineProgram = OUTLINE_PROGRAM.compile(template);
 		glUiProgram = UI_PROGRAM.compile(template);
+		glUpscaleProgram = UPSCALE_PROGRAM.compile(template);
 		glHandProgram = HAND_PROGRAM.compile(template);
 		glMenuProgram = MENU_PROGRAM.compile(template);
 		hudHelper.glHintProgram = HINT_PROGRAM.compile(template);
@@ -1648,13 +1887,15 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 		if (computeMode == ComputeMode.OPENGL)
 		{
-			glComputeProgram = COMPUTE_PROGRAM.compile(createTemplate(1024, 6));
-			glSmallComputeProgram = SMALL_COMPUTE_PROGRAM.compile(createTemplate(512, 1));
+			for (com.vr.ComputeTier tier : computeTiers)
+			{
+				tier.glProgram = COMPUTE_PROGRAM.compile(createTemplate(tier.threadCount, tier.facesPerThread));
+			}
 			glUnorderedComputeProgram = UNORDERED_COMPUTE_PROGRAM.compile(template);
 		}
 		/*else if (computeMode == ComputeMode.OPENCL)
 		{
-			openCLManager.init(awtContext);
+			openCLManager.init(awtContext, computeTiers);
 		}*/
 
 		initUniforms();
@@ -1719,8 +1960,11 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 		if (computeMode == ComputeMode.OPENGL)
 		{
-			uniBlockSmall = GL43C.glGetUniformBlockIndex(glSmallComputeProgram, "uniforms");
-			uniBlockLarge = GL43C.glGetUniformBlockIndex(glComputeProgram, "uniforms");
+			for (com.vr.ComputeTier tier : computeTiers)
+			{
+				tier.uniBlock = GL43C.glGetUniformBlockIndex(tier.glProgram, "uniforms");
+			}
+			uniBlockUnordered = GL43C.glGetUniformBlockIndex(glUnorderedComputeProgram, "uniforms");
 		}
 	}
 
@@ -1732,11 +1976,14 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		GL43C.glDeleteProgram(glOutlineProgram);
 		glOutlineProgram = -1;
 
-		GL43C.glDeleteProgram(glComputeProgram);
-		glComputeProgram = -1;
-
-		GL43C.glDeleteProgram(glSmallComputeProgram);
-		glSmallComputeProgram = -1;
+		if (computeTiers != null)
+		{
+			for (com.vr.ComputeTier tier : computeTiers)
+			{
+				GL43C.glDeleteProgram(tier.glProgram);
+				tier.glProgram = -1;
+			}
+		}
 
 		GL43C.glDeleteProgram(glUnorderedComputeProgram);
 		glUnorderedComputeProgram = -1;
@@ -1744,6 +1991,9 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		GL43C.glDeleteProgram(glUiProgram);
 		glUiProgram = -1;
 
+		GL43C.glDeleteProgram(glUpscaleProgram);
+		glUpscaleProgram = -1;
+
 		GL43C.glDeleteProgram(glHandProgram);
 		glHandProgram = -1;
 
@@ -1755,34 +2005,22 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	{
 		// Create compute VAO
 		vaoCompute = GL43C.glGenVertexArrays();
-		GL43C.glBindVertexArray(vaoCompute);
-
-		GL43C.glEnableVertexAttribArray(0);
-		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, tmpOutBuffer.glBufferId);
-		GL43C.glVertexAttribIPointer(0, 4, GL43C.GL_INT, 0, 0);
-
-		GL43C.glEnableVertexAttribArray(1);
-		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, tmpOutUvBuffer.glBufferId);
-		GL43C.glVertexAttribPointer(1, 4, GL43C.GL_FLOAT, false, 0, 0);
+		attachVertexBuffers(vaoCompute, tmpOutBuffer, tmpOutUvBuffer);
 
 		// Create temp VAO
 		vaoTemp = GL43C.glGenVertexArrays();
-		GL43C.glBindVertexArray(vaoTemp);
+		attachVertexBuffers(vaoTemp, tmpVertexBuffer, tmpUvBuffer);
 
-		GL43C.glEnableVertexAttribArray(0);
-		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, tmpVertexBuffer.glBufferId);
-		GL43C.glVertexAttribIPointer(0, 4, GL43C.GL_INT, 0, 0);
+		// Create zone VAO, for tile geometry which is already in world space
+		vaoZone = GL43C.glGenVertexArrays();
+		attachVertexBuffers(vaoZone, sceneZoneVertexBuffer, sceneZoneUvBuffer);
 
-		GL43C.glEnableVertexAttribArray(1);
-		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, tmpUvBuffer.glBufferId);
-		GL43C.glVertexAttribPointer(1, 4, GL43C.GL_FLOAT, false, 0, 0);
+		// Create static VAO, for scene models transformed once into world space
+		vaoStatic = GL43C.glGenVertexArrays();
+		attachVertexBuffers(vaoStatic, staticGeometry.vertexBuffer, staticGeometry.uvBuffer);
 
 		vaoOutlineTemp = GL43C.glGenVertexArrays();
-		GL43C.glBindVertexArray(vaoOutlineTemp);
-
-		GL43C.glEnableVertexAttribArray(0);
-		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, tmpOutlineVertexBuffer.glBufferId);
-		GL43C.glVertexAttribIPointer(0, 4, GL43C.GL_INT, 0, 0);
+		attachVertexBuffers(vaoOutlineTemp, tmpOutlineVertexBuffer, null);
 
 		vaoMenuHandle = GL43C.glGenVertexArrays();
 		vboMenuHandle = GL43C.glGenBuffers();
@@ -1867,6 +2105,25 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, 0);
 	}
 
+	/**
+	 * Bind the vao with ivec4 positions in attribute 0 and, if given, vec4 uvs in attribute 1
+	 */
+	private static void attachVertexBuffers(int vao, com.vr.GLBuffer vertexBuffer, @Nullable com.vr.GLBuffer uvBuffer)
+	{
+		GL43C.glBindVertexArray(vao);
+
+		GL43C.glEnableVertexAttribArray(0);
+		GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, vertexBuffer.glBufferId);
+		GL43C.glVertexAttribIPointer(0, 4, GL43C.GL_INT, 0, 0);
+
+		if (uvBuffer != null)
+		{
+			GL43C.glEnableVertexAttribArray(1);
+			GL43C.glBindBuffer(GL43C.GL_ARRAY_BUFFER, uvBuffer.glBufferId);
+			GL43C.glVertexAttribPointer(1, 4, GL43C.GL_FLOAT, false, 0, 0);
+		}
+	}
+
 	private void shutdownVao()
 	{
 		GL43C.glDeleteVertexArrays(vaoCompute);
@@ -1875,6 +2132,12 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		GL43C.glDeleteVertexArrays(vaoTemp);
 		vaoTemp = -1;
 
+		GL43C.glDeleteVertexArrays(vaoZone);
+		vaoZone = -1;
+
+		GL43C.glDeleteVertexArrays(vaoStatic);
+		vaoStatic = -1;
+
 		GL43C.glDeleteVertexArrays(vaoOutlineTemp);
 		vaoOutlineTemp = -1;
 
@@ -1892,14 +2155,24 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	{
 		initGlBuffer(sceneVertexBuffer);
 		initGlBuffer(sceneUvBuffer);
+		initGlBuffer(sceneIndexBuffer);
+		initGlBuffer(sceneZoneVertexBuffer);
+		initGlBuffer(sceneZoneUvBuffer);
 		initGlBuffer(tmpVertexBuffer);
 		initGlBuffer(tmpOutlineVertexBuffer);
 		initGlBuffer(tmpUvBuffer);
-		initGlBuffer(tmpModelBufferLarge);
-		initGlBuffer(tmpModelBufferSmall);
+		for (com.vr.ComputeTier tier : computeTiers)
+		{
+			initGlBuffer(tier.glBuffer);
+		}
 		initGlBuffer(tmpModelBufferUnordered);
 		initGlBuffer(tmpOutBuffer);
 		initGlBuffer(tmpOutUvBuffer);
+		initGlBuffer(modelCache.vertexBuffer);
+		initGlBuffer(modelCache.uvBuffer);
+		initGlBuffer(staticGeometry.vertexBuffer);
+		initGlBuffer(staticGeometry.uvBuffer);
+		initGlBuffer(staticGeometry.modelBuffer);
 	}
 
 	private void initGlBuffer(com.vr.GLBuffer glBuffer)
@@ -1911,15 +2184,120 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	{
 		destroyGlBuffer(sceneVertexBuffer);
 		destroyGlBuffer(sceneUvBuffer);
+		destroyGlBuffer(sceneIndexBuffer);
+		destroyGlBuffer(sceneZoneVertexBuffer);
+		destroyGlBuffer(sceneZoneUvBuffer);
 
 		destroyGlBuffer(tmpVertexBuffer);
 		destroyGlBuffer(tmpOutlineVertexBuffer);
 		destroyGlBuffer(tmpUvBuffer);
-		destroyGlBuffer(tmpModelBufferLarge);
-		destroyGlBuffer(tmpModelBufferSmall);
 		destroyGlBuffer(tmpModelBufferUnordered);
 		destroyGlBuffer(tmpOutBuffer);
 		destroyGlBuffer(tmpOutUvBuffer);
+
+		modelCache.clear();
+		destroyGlBuffer(modelCache.vertexBuffer);
+		destroyGlBuffer(modelCache.uvBuffer);
+
+		staticGeometry.clear();
+		destroyGlBuffer(staticGeometry.vertexBuffer);
+		destroyGlBuffer(staticGeometry.uvBuffer);
+		destroyGlBuffer(staticGeometry.modelBuffer);
+
+		streamVertexBuffer.destroy();
+		streamUvBuffer.destroy();
+		streamModelBufferUnordered.destroy();
+
+		if (computeTiers != null)
+		{
+			for (com.vr.ComputeTier tier : computeTiers)
+			{
+				destroyGlBuffer(tier.glBuffer);
+				tier.streamBuffer.destroy();
+			}
+		}
+	}
+
+	private void initStreamBuffers()
+	{
+		streamVertexBuffer.init(4 * 1024 * 1024);
+		streamUvBuffer.init(4 * 1024 * 1024);
+		streamModelBufferUnordered.init(256 * 1024);
+		for (com.vr.ComputeTier tier : computeTiers)
+		{
+			tier.streamBuffer.init(64 * 1024);
+		}
+		mapStreamBuffers();
+	}
+
+	private void mapStreamBuffers()
+	{
+		vertexBuffer.map(streamVertexBuffer.map());
+		uvBuffer.map(streamUvBuffer.map());
+		modelBufferUnordered.map(streamModelBufferUnordered.map());
+		for (com.vr.ComputeTier tier : computeTiers)
+		{
+			tier.modelBuffer.map(tier.streamBuffer.map());
+		}
+	}
+
+	/**
+	 * Fence this frame's sections of the stream buffers and map the next ones
+	 */
+	private void advanceStreamBuffers()
+	{
+		streamVertexBuffer.advance();
+		streamUvBuffer.advance();
+		streamModelBufferUnordered.advance();
+		for (com.vr.ComputeTier tier : computeTiers)
+		{
+			tier.streamBuffer.advance();
+		}
+		mapStreamBuffers();
+	}
+
+	/**
+	 * Make the frame's data available in the stream buffer. Data written in place needs nothing,
+	 * data which outgrew the mapped section is copied after growing the buffer.
+	 */
+	private void streamBuffer(com.vr.PersistentBuffer stream, com.vr.GpuIntBuffer buffer)
+	{
+		if (!buffer.isMapped())
+		{
+			IntBuffer data = buffer.getBuffer();
+			int size = data.remaining() * Integer.BYTES;
+			if (size > stream.sectionSize())
+			{
+				stream.grow(nextPowerOfTwo(size));
+			}
+			stream.map().asIntBuffer().put(data);
+		}
+	}
+
+	private void streamBuffer(com.vr.PersistentBuffer stream, com.vr.GpuFloatBuffer buffer)
+	{
+		if (!buffer.isMapped())
+		{
+			FloatBuffer data = buffer.getBuffer();
+			int size = data.remaining() * Float.BYTES;
+			if (size > stream.sectionSize())
+			{
+				stream.grow(nextPowerOfTwo(size));
+			}
+			stream.map().asFloatBuffer().put(data);
+		}
+	}
+
+	private void bindStorageBuffer(int index, com.vr.GLBuffer glBuffer, com.vr.PersistentBuffer stream)
+	{
+		if (persistentBuffers)
+		{
+			stream.bind(GL43C.GL_SHADER_STORAGE_BUFFER, index);
+		}
+		else
+		{
+			GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, index, glBuffer.glBufferId);
+		}
 	}
 
 	private void destroyGlBuffer(com.vr.GLBuffer glBuffer)
@@ -1987,6 +2365,11 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		uniformBuf.flip();
 
 		updateBuffer(uniformBuffer, GL43C.GL_UNIFORM_BUFFER, uniformBuf, GL43C.GL_DYNAMIC_DRAW, CL12.CL_MEM_READ_ONLY);
+		if (decoupledRendering)
+		{
+			initGlBuffer(retainedUniformBuffer);
+			updateBuffer(retainedUniformBuffer, GL43C.GL_UNIFORM_BUFFER, uniformBuf, GL43C.GL_DYNAMIC_DRAW, 0L);
+		}
 		GL43C.glBindBuffer(GL43C.GL_UNIFORM_BUFFER, 0);
 	}
 
@@ -2037,129 +2420,31 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		}
 	}*/
 
-	boolean foundHoverRender = false;
-	boolean foundInteractRender = false;
-
-	private void renderMouseover(Projection projection, int orientation, int x, int y, int z,Renderable renderable)
+	/**
+	 * Outline targets for the current frame, resolved once in drawScene. Object outlines are pushed by the
+	 * first draw call of the frame, since that is where the scene projection is available, and NPC outlines
+	 * when the NPC itself is drawn.
+	 */
+	private static final class FrameTargets
 	{
-		MenuEntry[] menuEntries = client.getMenuEntries();
-		if (menuEntries.length == 0)
-		{
-			return;
-		}
+		TileObject hoverObject;
+		NPC hoverNpc;
+		int hoverNpcColor;
 
-		MenuEntry entry = client.isMenuOpen() ? hoveredMenuEntry(menuEntries) : menuEntries[menuEntries.length - 1];
-		MenuAction menuAction = entry.getType();
+		TileObject interactObject;
+		int interactObjectColor;
+		NPC interactNpc;
+		int interactNpcColor;
 
-		switch (menuAction)
+		void clear()
 		{
-			case WIDGET_TARGET_ON_GAME_OBJECT:
-			case GAME_OBJECT_FIRST_OPTION:
-			case GAME_OBJECT_SECOND_OPTION:
-			case GAME_OBJECT_THIRD_OPTION:
-			case GAME_OBJECT_FOURTH_OPTION:
-			case GAME_OBJECT_FIFTH_OPTION:
-			case EXAMINE_OBJECT:
-			{
-				int x3 = entry.getParam0();
-				int y3 = entry.getParam1();
-				int id = entry.getIdentifier();
-				TileObject tileObject = findTileObject(x3, y3, id);
-
-				if (tileObject != null && (tileObject != getInteractedObject()))
-				{
-					int x2 = tileObject.getX();
-					int y2 = tileObject.getY();
-					int z2 = tileObject.getZ();
-					//System.out.println("1");
-					if(tileObject instanceof WallObject){
-						//System.out.println("1");
-						if(((WallObject) tileObject).getRenderable1() != null) {
-							Renderable rend = (((WallObject) tileObject).getRenderable1() instanceof Model)?((WallObject) tileObject).getRenderable1():((WallObject) tileObject).getRenderable1().getModel();
-							foundHoverRender = true;
-							targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase1(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer);
-						}
-						if(((WallObject) tileObject).getRenderable2() != null) {
-							Renderable rend = (((WallObject) tileObject).getRenderable2() instanceof Model)?((WallObject) tileObject).getRenderable2():((WallObject) tileObject).getRenderable2().getModel();
-							foundHoverRender = true;
-							targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase1(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer);
-						}
-						if(((WallObject) tileObject).getRenderable1() != null) {
-							Renderable rend = (((WallObject) tileObject).getRenderable1() instanceof Model)?((WallObject) tileObject).getRenderable1():((WallObject) tileObject).getRenderable1().getModel();
-							foundHoverRender = true;
-							targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase2(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer, OBJECT_HOVER_HIGHLIGHT_COLOR);
-						}
-						if(((WallObject) tileObject).getRenderable2() != null) {
-							Renderable rend = (((WallObject) tileObject).getRenderable2() instanceof Model)?((WallObject) tileObject).getRenderable2():((WallObject) tileObject).getRenderable2().getModel();
-							foundHoverRender = true;
-							targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase2(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer, OBJECT_HOVER_HIGHLIGHT_COLOR);
-						}
-					} else if (tileObject instanceof GroundObject){
-						if(((GroundObject) tileObject).getRenderable() != null) {
-							Renderable rend = (((GroundObject) tileObject).getRenderable() instanceof Model)?((GroundObject) tileObject).getRenderable():((GroundObject) tileObject).getRenderable().getModel();
-							foundHoverRender = true;
-							targetOutlineBufferOffset += sceneUploader.pushModelOutlineCombined(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer, OBJECT_HOVER_HIGHLIGHT_COLOR);
-						}
-						//System.out.println("2");
-					} else if (tileObject instanceof DecorativeObject){
-						if(((DecorativeObject) tileObject).getRenderable() != null) {
-							Renderable rend = (((DecorativeObject) tileObject).getRenderable() instanceof Model)?((DecorativeObject) tileObject).getRenderable():((DecorativeObject) tileObject).getRenderable().getModel();
-							foundHoverRender = true;
-							targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase1(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer);
-						}
-						if(((DecorativeObject) tileObject).getRenderable2() != null) {
-							Renderable rend = (((DecorativeObject) tileObject).getRenderable2() instanceof Model)?((DecorativeObject) tileObject).getRenderable2():((DecorativeObject) tileObject).getRenderable2().getModel();
-							foundHoverRender = true;
-							targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase1(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer);
-						}
-						if(((DecorativeObject) tileObject).getRenderable() != null) {
-							Renderable rend = (((DecorativeObject) tileObject).getRenderable() instanceof Model)?((DecorativeObject) tileObject).getRenderable():((DecorativeObject) tileObject).getRenderable().getModel();
-							foundHoverRender = true;
-							targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase2(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer, OBJECT_HOVER_HIGHLIGHT_COLOR);
-						}
-						if(((DecorativeObject) tileObject).getRenderable2() != null) {
-							Renderable rend = (((DecorativeObject) tileObject).getRenderable2() instanceof Model)?((DecorativeObject) tileObject).getRenderable2():((DecorativeObject) tileObject).getRenderable2().getModel();
-							foundHoverRender = true;
-							targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase2(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer, OBJECT_HOVER_HIGHLIGHT_COLOR);
-						}
-						//System.out.println("3");
-					} else if (tileObject instanceof GameObject){
-						if(((GameObject) tileObject).getRenderable() != null) {
-							Renderable rend = (((GameObject) tileObject).getRenderable() instanceof Model) ? ((GameObject) tileObject).getRenderable() : ((GameObject) tileObject).getRenderable().getModel();
-							foundHoverRender = true;
-							targetOutlineBufferOffset += sceneUploader.pushModelOutlineCombined(projection, (Model) rend, ((GameObject) tileObject).getModelOrientation(), x2, z2, y2, outlineVertexBuffer, OBJECT_HOVER_HIGHLIGHT_COLOR);
-						}
-					}
-					//modelOutlineRenderer.drawOutline(tileObject, config.borderWidth(), OBJECT_HOVER_HIGHLIGHT_COLOR, config.outlineFeather());
-				}
-				break;
-			}
-			case WIDGET_TARGET_ON_NPC:
-			case NPC_FIRST_OPTION:
-			case NPC_SECOND_OPTION:
-			case NPC_THIRD_OPTION:
-			case NPC_FOURTH_OPTION:
-			case NPC_FIFTH_OPTION:
-			case EXAMINE_NPC:
-			{
-				NPC npc = entry.getNpc();
-				if (npc != null && (npc != getInteractedTarget()) && npc == renderable)
-				{
-					int highlightColor = menuAction == MenuAction.NPC_SECOND_OPTION
-							|| menuAction == MenuAction.WIDGET_TARGET_ON_NPC && WidgetUtil.componentToInterface(client.getSelectedWidget().getId()) == InterfaceID.SPELLBOOK
-							? NPC_ATTACK_HOVER_HIGHLIGHT_COLOR : NPC_HOVER_HIGHLIGHT_COLOR;
-					targetOutlineBufferOffset += sceneUploader.pushModelOutlineCombined(projection,((NPC)npc).getModel(),orientation, x, y, z,outlineVertexBuffer,highlightColor);
-					foundHoverRender = true;
-				}
-				//System.out.println("5");
-				break;
-			}
-		}
-		if(targetOutlineBufferOffset > 0) {
-			//System.out.println("HERE: " + targetOutlineBufferOffset);
+			hoverObject = interactObject = null;
+			hoverNpc = interactNpc = null;
 		}
 	}
 
+	private final FrameTargets frameTargets = new FrameTargets();
+
 	private static final int INTERACT_CLICK_COLOR = 0xFFFFFF;
 	private static final int OBJECT_HOVER_HIGHLIGHT_COLOR = 0x00FFFF;
 	private static final int NPC_ATTACK_HOVER_HIGHLIGHT_COLOR = 0xFFFF00;
@@ -2168,96 +2453,175 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	private static final int OBJECT_INTERACT_HIGHLIGHT_COLOR = 0xFF0000;
 	private static final int NPC_INTERACT_HIGHLIGHT_COLOR = 0xFF0000;
 
-	private void renderTarget(Projection projection, int orientation, int x, int y, int z,Renderable renderable)
+	private void resolveFrameTargets()
 	{
-		TileObject interactedObject = getInteractedObject();
-		if (interactedObject != null)
-		{
-			int x2 = interactedObject.getX();
-			int y2 = interactedObject.getY();
-			int z2 = interactedObject.getZ();
-
-			int clickColor = getClickColor(OBJECT_HOVER_HIGHLIGHT_COLOR, OBJECT_INTERACT_HIGHLIGHT_COLOR,
-					client.getGameCycle() - getGameCycle());
-			//modelOutlineRenderer.drawOutline(interactedObject, config.borderWidth(), clickColor, config.outlineFeather());
-			if(interactedObject instanceof WallObject){
-				//System.out.println("6");
-				if(((WallObject) interactedObject).getRenderable1() != null) {
-					Renderable rend = (((WallObject) interactedObject).getRenderable1() instanceof Model)?((WallObject) interactedObject).getRenderable1():((WallObject) interactedObject).getRenderable1().getModel();
-					foundInteractRender = true;
-					targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase1(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer);
-				}
-				if(((WallObject) interactedObject).getRenderable2() != null) {
-					Renderable rend = (((WallObject) interactedObject).getRenderable2() instanceof Model)?((WallObject) interactedObject).getRenderable2():((WallObject) interactedObject).getRenderable2().getModel();
-					foundInteractRender = true;
-					targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase1(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer);
-				}
-				if(((WallObject) interactedObject).getRenderable1() != null) {
-					Renderable rend = (((WallObject) interactedObject).getRenderable1() instanceof Model)?((WallObject) interactedObject).getRenderable1():((WallObject) interactedObject).getRenderable1().getModel();
-					foundInteractRender = true;
-					targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase2(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer, clickColor);
-				}
-				if(((WallObject) interactedObject).getRenderable2() != null) {
-					Renderable rend = (((WallObject) interactedObject).getRenderable2() instanceof Model)?((WallObject) interactedObject).getRenderable2():((WallObject) interactedObject).getRenderable2().getModel();
-					foundInteractRender = true;
-					targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase2(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer, clickColor);
-				}
-			} else if (interactedObject instanceof GroundObject){
-				//System.out.println("7");
-				if(((GroundObject) interactedObject).getRenderable() != null) {
-					Renderable rend = (((GroundObject) interactedObject).getRenderable() instanceof Model) ? ((GroundObject) interactedObject).getRenderable() : ((GroundObject) interactedObject).getRenderable().getModel();
-					foundInteractRender = true;
-					targetOutlineBufferOffset += sceneUploader.pushModelOutlineCombined(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer, clickColor);
-				}
-			} else if (interactedObject instanceof DecorativeObject){
-				//System.out.println("8");
-				if(((DecorativeObject) interactedObject).getRenderable() != null) {
-					Renderable rend = (((DecorativeObject) interactedObject).getRenderable() instanceof Model)?((DecorativeObject) interactedObject).getRenderable():((DecorativeObject) interactedObject).getRenderable().getModel();
-					foundInteractRender = true;
-					targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase1(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer);
-				}
-				if(((DecorativeObject) interactedObject).getRenderable2() != null) {
-					Renderable rend = (((DecorativeObject) interactedObject).getRenderable2() instanceof Model)?((DecorativeObject) interactedObject).getRenderable2():((DecorativeObject) interactedObject).getRenderable2().getModel();
-					foundInteractRender = true;
-					targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase1(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer);
-				}
-				if(((DecorativeObject) interactedObject).getRenderable() != null) {
-					Renderable rend = (((DecorativeObject) interactedObject).getRenderable() instanceof Model)?((DecorativeObject) interactedObject).getRenderable():((DecorativeObject) interactedObject).getRenderable().getModel();
-					foundInteractRender = true;
-					targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase2(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer, clickColor);
-				}
-				if(((DecorativeObject) interactedObject).getRenderable2() != null) {
-					Renderable rend = (((DecorativeObject) interactedObject).getRenderable2() instanceof Model)?((DecorativeObject) interactedObject).getRenderable2():((DecorativeObject) interactedObject).getRenderable2().getModel();
-					foundInteractRender = true;
-					targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase2(projection,(Model)rend,0, x2, z2, y2, outlineVertexBuffer, clickColor);
-				}
-			} else if (interactedObject instanceof GameObject){
-				if(((GameObject) interactedObject).getRenderable() != null) {
-					Renderable rend = (((GameObject) interactedObject).getRenderable() instanceof Model) ? ((GameObject) interactedObject).getRenderable() : ((GameObject) interactedObject).getRenderable().getModel();
-					foundInteractRender = true;
-					targetOutlineBufferOffset += sceneUploader.pushModelOutlineCombined(projection, (Model) rend, ((GameObject) interactedObject).getModelOrientation(), x2, z2, y2, outlineVertexBuffer, clickColor);
-				}
-			}
-		}
+		final FrameTargets targets = frameTargets;
+		targets.clear();
 
-		Actor target = getInteractedTarget();
-		if (target instanceof NPC && target == renderable)
+		final TileObject interactedObject = getInteractedObject();
+		final MenuEntry[] menuEntries = client.getMenuEntries();
+		if (menuEntries.length > 0)
 		{
-			int startColor = isAttacked() ? NPC_ATTACK_HOVER_HIGHLIGHT_COLOR : NPC_HOVER_HIGHLIGHT_COLOR;
-			int endColor = isAttacked() ? NPC_ATTACK_HIGHLIGHT_COLOR : NPC_INTERACT_HIGHLIGHT_COLOR;
-			int clickColor = getClickColor(startColor, endColor,
-					client.getGameCycle() - getGameCycle());
-			//modelOutlineRenderer.drawOutline((NPC) target, config.borderWidth(), clickColor, config.outlineFeather());
-			targetOutlineBufferOffset += sceneUploader.pushModelOutlineCombined(projection,((NPC)target).getModel(),orientation, x, y, z,outlineVertexBuffer,clickColor);
-			//System.out.println("10");
-			foundInteractRender = true;
-		}
-		if(targetOutlineBufferOffset > 0) {
-			//System.out.println("HERE: " + targetOutlineBufferOffset);
-		}
-	}
+			MenuEntry entry = client.isMenuOpen() ? hoveredMenuEntry(menuEntries) : menuEntries[menuEntries.length - 1];
+			MenuAction menuAction = entry.getType();
 
-	private int getClickColor(int start, int end, long time)
+			switch (menuAction)
+			{
+				case WIDGET_TARGET_ON_GAME_OBJECT:
+				case GAME_OBJECT_FIRST_OPTION:
+				case GAME_OBJECT_SECOND_OPTION:
+				case GAME_OBJECT_THIRD_OPTION:
+				case GAME_OBJECT_FOURTH_OPTION:
+				case GAME_OBJECT_FIFTH_OPTION:
+				case EXAMINE_OBJECT:
+				{
+					TileObject tileObject = findTileObject(entry.getParam0(), entry.getParam1(), entry.getIdentifier());
+					if (tileObject != interactedObject)
+					{
+						targets.hoverObject = tileObject;
+					}
+					break;
+				}
+				case WIDGET_TARGET_ON_NPC:
+				case NPC_FIRST_OPTION:
+				case NPC_SECOND_OPTION:
+				case NPC_THIRD_OPTION:
+				case NPC_FOURTH_OPTION:
+				case NPC_FIFTH_OPTION:
+				case EXAMINE_NPC:
+				{
+					NPC npc = entry.getNpc();
+					if (npc != null && npc != getInteractedTarget())
+					{
+						targets.hoverNpc = npc;
+						targets.hoverNpcColor = menuAction == MenuAction.NPC_SECOND_OPTION
+							|| menuAction == MenuAction.WIDGET_TARGET_ON_NPC
+								&& client.getSelectedWidget() != null
+								&& WidgetUtil.componentToInterface(client.getSelectedWidget().getId()) == InterfaceID.SPELLBOOK
+							? NPC_ATTACK_HOVER_HIGHLIGHT_COLOR : NPC_HOVER_HIGHLIGHT_COLOR;
+					}
+					break;
+				}
+			}
+		}
+
+		final long clickTime = client.getGameCycle() - getGameCycle();
+		if (interactedObject != null)
+		{
+			targets.interactObject = interactedObject;
+			targets.interactObjectColor = getClickColor(OBJECT_HOVER_HIGHLIGHT_COLOR, OBJECT_INTERACT_HIGHLIGHT_COLOR, clickTime);
+		}
+
+		Actor target = getInteractedTarget();
+		if (target instanceof NPC)
+		{
+			int startColor = isAttacked() ? NPC_ATTACK_HOVER_HIGHLIGHT_COLOR : NPC_HOVER_HIGHLIGHT_COLOR;
+			int endColor = isAttacked() ? NPC_ATTACK_HIGHLIGHT_COLOR : NPC_INTERACT_HIGHLIGHT_COLOR;
+			targets.interactNpc = (NPC) target;
+			targets.interactNpcColor = getClickColor(startColor, endColor, clickTime);
+		}
+	}
+
+	private void renderFrameTargets(Projection projection, int orientation, int x, int y, int z, Renderable renderable)
+	{
+		final FrameTargets targets = frameTargets;
+		if (targets.hoverObject != null)
+		{
+			pushTileObjectOutline(projection, targets.hoverObject, OBJECT_HOVER_HIGHLIGHT_COLOR);
+			targets.hoverObject = null;
+		}
+
+		if (targets.interactObject != null)
+		{
+			if (pushTileObjectOutline(projection, targets.interactObject, targets.interactObjectColor))
+			{
+				// the interacted object takes precedence over the interacted npc
+				targets.interactNpc = null;
+			}
+			targets.interactObject = null;
+		}
+
+		if (renderable == targets.hoverNpc)
+		{
+			targetOutlineBufferOffset += sceneUploader.pushModelOutlineCombined(projection, targets.hoverNpc.getModel(), orientation, x, y, z, outlineVertexBuffer, targets.hoverNpcColor);
+			targets.hoverNpc = null;
+		}
+
+		if (renderable == targets.interactNpc)
+		{
+			targetOutlineBufferOffset += sceneUploader.pushModelOutlineCombined(projection, targets.interactNpc.getModel(), orientation, x, y, z, outlineVertexBuffer, targets.interactNpcColor);
+			targets.interactNpc = null;
+		}
+	}
+
+	/**
+	 * Push the outline of each model of a tile object
+	 *
+	 * @return whether the object had any models
+	 */
+	private boolean pushTileObjectOutline(Projection projection, TileObject tileObject, int color)
+	{
+		final int x = tileObject.getX();
+		final int y = tileObject.getY();
+		final int z = tileObject.getZ();
+
+		if (tileObject instanceof WallObject)
+		{
+			WallObject wallObject = (WallObject) tileObject;
+			return pushOutline(projection, outlineModel(wallObject.getRenderable1()), outlineModel(wallObject.getRenderable2()), 0, x, y, z, color);
+		}
+		else if (tileObject instanceof DecorativeObject)
+		{
+			DecorativeObject decorativeObject = (DecorativeObject) tileObject;
+			return pushOutline(projection, outlineModel(decorativeObject.getRenderable()), outlineModel(decorativeObject.getRenderable2()), 0, x, y, z, color);
+		}
+		else if (tileObject instanceof GroundObject)
+		{
+			return pushOutline(projection, outlineModel(((GroundObject) tileObject).getRenderable()), null, 0, x, y, z, color);
+		}
+		else if (tileObject instanceof GameObject)
+		{
+			GameObject gameObject = (GameObject) tileObject;
+			return pushOutline(projection, outlineModel(gameObject.getRenderable()), null, gameObject.getModelOrientation(), x, y, z, color);
+		}
+		return false;
+	}
+
+	/**
+	 * Outline up to two models, pushing both of their first phases before the second phases so that
+	 * neither model's outline is drawn over the other
+	 */
+	private boolean pushOutline(Projection projection, Model model1, Model model2, int orientation, int x, int y, int z, int color)
+	{
+		if (model1 != null && model2 != null)
+		{
+			targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase1(projection, model1, orientation, x, z, y, outlineVertexBuffer);
+			targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase1(projection, model2, orientation, x, z, y, outlineVertexBuffer);
+			targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase2(projection, model1, orientation, x, z, y, outlineVertexBuffer, color);
+			targetOutlineBufferOffset += sceneUploader.pushModelOutlinePhase2(projection, model2, orientation, x, z, y, outlineVertexBuffer, color);
+			return true;
+		}
+
+		final Model model = model1 != null ? model1 : model2;
+		if (model != null)
+		{
+			targetOutlineBufferOffset += sceneUploader.pushModelOutlineCombined(projection, model, orientation, x, z, y, outlineVertexBuffer, color);
+			return true;
+		}
+		return false;
+	}
+
+	@Nullable
+	private static Model outlineModel(@Nullable Renderable renderable)
+	{
+		if (renderable == null)
+		{
+			return null;
+		}
+		return renderable instanceof Model ? (Model) renderable : renderable.getModel();
+	}
+
+	private int getClickColor(int start, int end, long time)
 	{
 		if (time < 5)
 		{
@@ -2438,18 +2802,35 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		viewportOffsetX = client.getViewportXOffset();
 		viewportOffsetY = client.getViewportYOffset();
 
+		swapPendingScene();
+
 		final Scene scene = client.getScene();
 		scene.setDrawDistance(getDrawDistance());
 
+		final long lodDistance = (long) config.lodDistance() * Perspective.LOCAL_TILE_SIZE;
+		final long lodDistance2 = (long) config.lodDistance2() * Perspective.LOCAL_TILE_SIZE;
+		lodDistancesSq[0] = lodDistance * lodDistance;
+		lodDistancesSq[1] = lodDistance2 * lodDistance2;
+
 		// Only reset the target buffer offset right before drawing the scene. That way if there are frames
 		// after this that don't involve a scene draw, like during LOADING/HOPPING/CONNECTION_LOST, we can
 		// still redraw the previous frame's scene to emulate the client behavior of not painting over the
 		// viewport buffer.
 		hudHelper.swap(client);
 		targetBufferOffset = targetOutlineBufferOffset = 0;
+		zoneFaces.clear();
+		// anything queued belongs to a frame which never reached postDrawScene
+		faceSortQueue.clear();
+		if (staticGeometryEnabled)
+		{
+			staticGeometry.startFrame();
+		}
+		if (modelCacheEnabled)
+		{
+			modelCache.startFrame();
+		}
 
-		foundHoverRender = false;
-		foundInteractRender = false;
+		resolveFrameTargets();
 		// UBO. Only the first 32 bytes get modified here, the rest is the constant sin/cos table.
 		// We can reuse the vertex buffer since it isn't used yet.
 		vertexBuffer.clear();
@@ -2478,6 +2859,83 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 	@Override
 	public void postDrawScene()
+	{
+		beginSharedWrite();
+		try
+		{
+			computeScene();
+			if (decoupledRendering)
+			{
+				publishRetainedFrame();
+			}
+		}
+		finally
+		{
+			endSharedWrite();
+		}
+	}
+
+	/**
+	 * Take the gl objects the render thread draws from. Everything issued until {@link #endSharedWrite()}
+	 * runs on the gpu after the render thread's last draw.
+	 */
+	private void beginSharedWrite()
+	{
+		if (decoupledRendering)
+		{
+			frameLock.lock();
+			waitSync(renderFence);
+		}
+	}
+
+	private void endSharedWrite()
+	{
+		if (decoupledRendering)
+		{
+			clientFence = replaceSync(clientFence);
+			frameLock.unlock();
+		}
+	}
+
+	/**
+	 * Make the compute output of this frame the one the render thread draws, with the camera it was sorted for
+	 */
+	private void publishRetainedFrame()
+	{
+		GL43C.glMemoryBarrier(GL43C.GL_VERTEX_ATTRIB_ARRAY_BARRIER_BIT | GL43C.GL_SHADER_STORAGE_BARRIER_BIT);
+
+		// only the camera at the start of the uniform block changes between frames
+		GL43C.glBindBuffer(GL43C.GL_COPY_READ_BUFFER, uniformBuffer.glBufferId);
+		GL43C.glBindBuffer(GL43C.GL_COPY_WRITE_BUFFER, retainedUniformBuffer.glBufferId);
+		GL43C.glCopyBufferSubData(GL43C.GL_COPY_READ_BUFFER, GL43C.GL_COPY_WRITE_BUFFER, 0, 0, 32);
+		GL43C.glBindBuffer(GL43C.GL_COPY_READ_BUFFER, 0);
+		GL43C.glBindBuffer(GL43C.GL_COPY_WRITE_BUFFER, 0);
+
+		retainedFrame = retainFrame(client.getSkyboxColor(), (float) client.getTextureProvider().getBrightness(), client.getGameState(),
+			client.getViewportWidth(), client.getViewportHeight());
+	}
+
+	private static void waitSync(long sync)
+	{
+		if (sync != 0L)
+		{
+			GL43C.glWaitSync(sync, 0, GL43C.GL_TIMEOUT_IGNORED);
+		}
+	}
+
+	private static long replaceSync(long sync)
+	{
+		if (sync != 0L)
+		{
+			GL43C.glDeleteSync(sync);
+		}
+		sync = GL43C.glFenceSync(GL43C.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+		// the other context can only wait on a fence which has been flushed to the gpu
+		GL43C.glFlush();
+		return sync;
+	}
+
+	private void computeScene()
 	{
 		outlineVertexBuffer.flip();
 		IntBuffer outlineVertexBuffer = this.outlineVertexBuffer.getBuffer();
@@ -2485,6 +2943,8 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 		if (computeMode == ComputeMode.NONE)
 		{
+			targetBufferOffset -= faceSortQueue.run(vertexBuffer, uvBuffer, config.parallelFaceSorting());
+
 			// Upload buffers
 			vertexBuffer.flip();
 			uvBuffer.flip();
@@ -2499,27 +2959,49 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 			return;
 		}
 
+		prepareZoneDraws();
+		if (staticGeometryEnabled)
+		{
+			staticGeometry.prepareDraws();
+		}
+
 		// Upload buffers
 		vertexBuffer.flip();
 		uvBuffer.flip();
-		modelBuffer.flip();
-		modelBufferSmall.flip();
 		modelBufferUnordered.flip();
+		for (com.vr.ComputeTier tier : computeTiers)
+		{
+			tier.modelBuffer.flip();
+		}
 
 		IntBuffer vertexBuffer = this.vertexBuffer.getBuffer();
 		FloatBuffer uvBuffer = this.uvBuffer.getBuffer();
-		IntBuffer modelBuffer = this.modelBuffer.getBuffer();
-		IntBuffer modelBufferSmall = this.modelBufferSmall.getBuffer();
 		IntBuffer modelBufferUnordered = this.modelBufferUnordered.getBuffer();
 
-		// temp buffers
-		updateBuffer(tmpVertexBuffer, GL43C.GL_ARRAY_BUFFER, vertexBuffer, GL43C.GL_DYNAMIC_DRAW, CL12.CL_MEM_READ_ONLY);
-		updateBuffer(tmpUvBuffer, GL43C.GL_ARRAY_BUFFER, uvBuffer, GL43C.GL_DYNAMIC_DRAW, CL12.CL_MEM_READ_ONLY);
+		if (persistentBuffers)
+		{
+			// the draw path wrote straight into the mapped buffers
+			streamBuffer(streamVertexBuffer, this.vertexBuffer);
+			streamBuffer(streamUvBuffer, this.uvBuffer);
+			streamBuffer(streamModelBufferUnordered, this.modelBufferUnordered);
+			for (com.vr.ComputeTier tier : computeTiers)
+			{
+				streamBuffer(tier.streamBuffer, tier.modelBuffer);
+			}
+		}
+		else
+		{
+			// temp buffers
+			updateBuffer(tmpVertexBuffer, GL43C.GL_ARRAY_BUFFER, vertexBuffer, GL43C.GL_DYNAMIC_DRAW, CL12.CL_MEM_READ_ONLY);
+			updateBuffer(tmpUvBuffer, GL43C.GL_ARRAY_BUFFER, uvBuffer, GL43C.GL_DYNAMIC_DRAW, CL12.CL_MEM_READ_ONLY);
 
-		// model buffers
-		updateBuffer(tmpModelBufferLarge, GL43C.GL_ARRAY_BUFFER, modelBuffer, GL43C.GL_DYNAMIC_DRAW, CL12.CL_MEM_READ_ONLY);
-		updateBuffer(tmpModelBufferSmall, GL43C.GL_ARRAY_BUFFER, modelBufferSmall, GL43C.GL_DYNAMIC_DRAW, CL12.CL_MEM_READ_ONLY);
-		updateBuffer(tmpModelBufferUnordered, GL43C.GL_ARRAY_BUFFER, modelBufferUnordered, GL43C.GL_DYNAMIC_DRAW, CL12.CL_MEM_READ_ONLY);
+			// model buffers
+			updateBuffer(tmpModelBufferUnordered, GL43C.GL_ARRAY_BUFFER, modelBufferUnordered, GL43C.GL_DYNAMIC_DRAW, CL12.CL_MEM_READ_ONLY);
+			for (com.vr.ComputeTier tier : computeTiers)
+			{
+				updateBuffer(tier.glBuffer, GL43C.GL_ARRAY_BUFFER, tier.modelBuffer.getBuffer(), GL43C.GL_DYNAMIC_DRAW, CL12.CL_MEM_READ_ONLY);
+			}
+		}
 
 		// Output buffers
 		updateBuffer(tmpOutBuffer,
@@ -2541,10 +3023,10 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 			// GL43C.glFinish();
 
 			openCLManager.compute(
-				unorderedModels, smallModels, largeModels,
+				unorderedModels, computeTiers,
 				sceneVertexBuffer, sceneUvBuffer,
 				tmpVertexBuffer, tmpUvBuffer,
-				tmpModelBufferUnordered, tmpModelBufferSmall, tmpModelBufferLarge,
+				tmpModelBufferUnordered,
 				tmpOutBuffer, tmpOutUvBuffer,
 				uniformBuffer);
 
@@ -2553,54 +3035,126 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		}
 
 		/*
-		 * Compute is split into three separate programs: 'unordered', 'small', and 'large'
-		 * to save on GPU resources. Small will sort <= 512 faces, large will do <= 6144.
+		 * Compute is split into an 'unordered' program plus one sorting program per size tier
+		 * to save on GPU resources. Each tier sorts models of up to its size in faces.
 		 */
 
 		// Bind UBO to compute programs
-		GL43C.glUniformBlockBinding(glSmallComputeProgram, uniBlockSmall, 0);
-		GL43C.glUniformBlockBinding(glComputeProgram, uniBlockLarge, 0);
+		for (com.vr.ComputeTier tier : computeTiers)
+		{
+			GL43C.glUniformBlockBinding(tier.glProgram, tier.uniBlock, 0);
+		}
+		GL43C.glUniformBlockBinding(glUnorderedComputeProgram, uniBlockUnordered, 0);
+
+		if (indexedScene)
+		{
+			GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 7, sceneIndexBuffer.glBufferId);
+		}
+
+		if (modelCacheEnabled)
+		{
+			modelCache.flush();
+			GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 8, modelCache.vertexBuffer.glBufferId);
+			GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 9, modelCache.uvBuffer.glBufferId);
+		}
 
 		// unordered
 		GL43C.glUseProgram(glUnorderedComputeProgram);
 
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 0, tmpModelBufferUnordered.glBufferId);
+		bindStorageBuffer(0, tmpModelBufferUnordered, streamModelBufferUnordered);
 		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 1, sceneVertexBuffer.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 2, tmpVertexBuffer.glBufferId);
+		bindStorageBuffer(2, tmpVertexBuffer, streamVertexBuffer);
 		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 3, tmpOutBuffer.glBufferId);
 		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 4, tmpOutUvBuffer.glBufferId);
 		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 5, sceneUvBuffer.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 6, tmpUvBuffer.glBufferId);
+		bindStorageBuffer(6, tmpUvBuffer, streamUvBuffer);
 
 		GL43C.glDispatchCompute(unorderedModels, 1, 1);
 
-		// small
-		GL43C.glUseProgram(glSmallComputeProgram);
+		if (staticGeometryEnabled && staticGeometry.pendingModels() > 0)
+		{
+			// placements drawn for the first time are transformed into the static buffers instead
+			updateBuffer(staticGeometry.modelBuffer, GL43C.GL_ARRAY_BUFFER, staticGeometry.flipPending(), GL43C.GL_DYNAMIC_DRAW, 0L);
+			GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 0, staticGeometry.modelBuffer.glBufferId);
+			GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 3, staticGeometry.vertexBuffer.glBufferId);
+			GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 4, staticGeometry.uvBuffer.glBufferId);
+			GL43C.glDispatchCompute(staticGeometry.pendingModels(), 1, 1);
+			staticGeometry.clearPending();
+
+			GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 3, tmpOutBuffer.glBufferId);
+			GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 4, tmpOutUvBuffer.glBufferId);
+		}
 
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 0, tmpModelBufferSmall.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 1, sceneVertexBuffer.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 2, tmpVertexBuffer.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 3, tmpOutBuffer.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 4, tmpOutUvBuffer.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 5, sceneUvBuffer.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 6, tmpUvBuffer.glBufferId);
+		// sorted, bindings 1-6 are shared with the unordered program
+		for (com.vr.ComputeTier tier : computeTiers)
+		{
+			if (tier.models == 0)
+			{
+				continue;
+			}
 
-		GL43C.glDispatchCompute(smallModels, 1, 1);
+			GL43C.glUseProgram(tier.glProgram);
+			bindStorageBuffer(0, tier.glBuffer, tier.streamBuffer);
+			GL43C.glDispatchCompute(tier.models, 1, 1);
+		}
 
-		// large
-		GL43C.glUseProgram(glComputeProgram);
+		checkGLErrors();
+	}
 
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 0, tmpModelBufferLarge.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 1, sceneVertexBuffer.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 2, tmpVertexBuffer.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 3, tmpOutBuffer.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 4, tmpOutUvBuffer.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 5, sceneUvBuffer.glBufferId);
-		GL43C.glBindBufferBase(GL43C.GL_SHADER_STORAGE_BUFFER, 6, tmpUvBuffer.glBufferId);
+	/**
+	 * Coalesce the zone buffer faces drawn this frame into ranges for glMultiDrawArrays
+	 */
+	private void prepareZoneDraws()
+	{
+		zoneDrawFirst.clear();
+		zoneDrawCount.clear();
+		zoneDraws = 0;
 
-		GL43C.glDispatchCompute(largeModels, 1, 1);
+		// draw merged terrain in place of its tiles when all of them are drawn
+		final int[] merges = zoneMerges;
+		for (int i = 0; i < merges.length; i += 2 + merges[i + 1])
+		{
+			final int tiles = merges[i + 1];
+			boolean all = true;
+			for (int j = 0; j < tiles && all; ++j)
+			{
+				all = zoneFaces.get(merges[i + 2 + j]);
+			}
 
-		checkGLErrors();
+			if (all)
+			{
+				for (int j = 0; j < tiles; ++j)
+				{
+					final int face = merges[i + 2 + j];
+					zoneFaces.clear(face, face + 2);
+				}
+				zoneFaces.set(merges[i], merges[i] + 2);
+			}
+		}
+
+		for (int start = zoneFaces.nextSetBit(0); start >= 0; )
+		{
+			final int end = zoneFaces.nextClearBit(start);
+
+			zoneDrawFirst.ensureCapacity(1);
+			zoneDrawCount.ensureCapacity(1);
+			zoneDrawFirst.getBuffer().put(start * 3);
+			zoneDrawCount.getBuffer().put((end - start) * 3);
+			++zoneDraws;
+
+			start = zoneFaces.nextSetBit(end);
+		}
+
+		zoneDrawFirst.flip();
+		zoneDrawCount.flip();
+	}
+
+	private void drawZoneTile(int offset, int len)
+	{
+		if (len > 0)
+		{
+			zoneFaces.set(offset / 3, (offset + len) / 3);
+		}
 	}
 
 	@Override
@@ -2616,6 +3170,19 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 					true
 			);
 		}
+		else if (pendingSceneGeometry != null)
+		{
+			// the scene buffer doesn't hold this scene yet
+			int len = sceneUploader.upload(scene, paint,
+					plane, tileX, tileY,
+					vertexBuffer, uvBuffer,
+					0, 0, false);
+			drawTemporaryTile(len, paint.getTexture() != -1, tileX, tileY);
+		}
+		else if (zoneGeometry)
+		{
+			drawZoneTile(paint.getBufferOffset(), paint.getBufferLen());
+		}
 		else if (paint.getBufferLen() > 0)
 		{
 			final int localX = tileX << Perspective.LOCAL_COORD_BITS;
@@ -2648,6 +3215,19 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 					vertexBuffer, uvBuffer,
 					true);
 		}
+		else if (pendingSceneGeometry != null)
+		{
+			// the scene buffer doesn't hold this scene yet
+			int len = sceneUploader.upload(model,
+					tileX << Perspective.LOCAL_COORD_BITS, tileY << Perspective.LOCAL_COORD_BITS,
+					vertexBuffer, uvBuffer,
+					false);
+			drawTemporaryTile(len, model.getTriangleTextureId() != null, tileX, tileY);
+		}
+		else if (zoneGeometry)
+		{
+			drawZoneTile(model.getBufferOffset(), model.getBufferLen());
+		}
 		else if (model.getBufferLen() > 0)
 		{
 			final int localX = tileX << Perspective.LOCAL_COORD_BITS;
@@ -2670,6 +3250,34 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		}
 	}
 
+	private void drawTemporaryTile(int len, boolean hasUv, int tileX, int tileY)
+	{
+		if (len == 0)
+		{
+			return;
+		}
+
+		GpuIntBuffer b = modelBufferUnordered;
+		++unorderedModels;
+
+		b.ensureCapacity(8);
+		IntBuffer buffer = b.getBuffer();
+		buffer.put(tempOffset);
+		buffer.put(hasUv ? tempUvOffset : -1);
+		buffer.put(len / 3);
+		buffer.put(targetBufferOffset);
+		buffer.put(0);
+		buffer.put(tileX << Perspective.LOCAL_COORD_BITS).put(0).put(tileY << Perspective.LOCAL_COORD_BITS);
+
+		tempOffset += len;
+		if (hasUv)
+		{
+			tempUvOffset += len;
+		}
+
+		targetBufferOffset += len;
+	}
+
 	private void prepareInterfaceTexture(int canvasWidth, int canvasHeight)
 	{
 		if (canvasWidth != lastCanvasWidth || canvasHeight != lastCanvasHeight)
@@ -2691,6 +3299,25 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		final int width = bufferProvider.getWidth();
 		final int height = bufferProvider.getHeight();
 
+		if (quadLayers)
+		{
+			// The interface layer is only redrawn when its pixels change, so only upload them then too.
+			// The sizes are hashed as well, a resized texture has to be filled again.
+			long hash = GeometryHash.hash(GeometryHash.SEED, canvasWidth);
+			hash = GeometryHash.hash(hash, canvasHeight);
+			hash = GeometryHash.hash(hash, width);
+			hash = GeometryHash.hash(hash, pixels, width * height);
+			if (hash == lastInterfaceHash)
+			{
+				return;
+			}
+			lastInterfaceHash = hash;
+			if (interfaceLayer != null)
+			{
+				interfaceLayer.markDirty();
+			}
+		}
+
 		GL43C.glBindBuffer(GL43C.GL_PIXEL_UNPACK_BUFFER, interfacePbo);
 		ByteBuffer interfaceBuf = GL43C.glMapBuffer(GL43C.GL_PIXEL_UNPACK_BUFFER, GL43C.GL_WRITE_ONLY);
 		if (interfaceBuf != null)
@@ -2738,6 +3365,21 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 			}
 		}
 
+		if (quadLayers)
+		{
+			long hash = GeometryHash.hash(GeometryHash.SEED, menuWidth);
+			hash = GeometryHash.hash(hash, unpackPixels, unpackPixels.length);
+			if (hash == lastMenuHash)
+			{
+				return;
+			}
+			lastMenuHash = hash;
+			if (menuLayer != null)
+			{
+				menuLayer.markDirty();
+			}
+		}
+
 		GL43C.glBindBuffer(GL43C.GL_PIXEL_UNPACK_BUFFER, menuPbo);
 		GL43C.glMapBuffer(GL43C.GL_PIXEL_UNPACK_BUFFER, GL43C.GL_WRITE_ONLY)
 				.asIntBuffer()
@@ -2749,7 +3391,154 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		GL43C.glBindTexture(GL43C.GL_TEXTURE_2D, 0);
 	}
 
-	private boolean renderFrameOpenXR(int sky, float brightness, GameState gameState,int overlayColor, float viewportWidth, float viewportHeight) {
+	/**
+	 * Give the session's context to a thread which draws the headset at its own rate, from the last
+	 * frame the client finished. The client thread carries on uploading and computing on a shared context.
+	 */
+	private void startRenderThread()
+	{
+		glfwWindowHint(GLFW_VISIBLE, GL_FALSE);
+		uploadWindow = glfwCreateWindow(1, 1, "VR Runescape uploads", NULL, window);
+		if (uploadWindow == NULL)
+		{
+			throw new RuntimeException("Unable to create the shared upload context");
+		}
+		glfwMakeContextCurrent(uploadWindow);
+		GL.setCapabilities(glCapabilities);
+
+		renderThreadRunning = true;
+		renderThread = new Thread(this::renderLoop, "vr-render");
+		renderThread.setDaemon(true);
+		renderThread.start();
+	}
+
+	private void stopRenderThread()
+	{
+		renderThreadRunning = false;
+		try
+		{
+			renderThread.join();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		renderThread = null;
+
+		// the session and everything else is torn down from the client thread
+		glfwMakeContextCurrent(window);
+		GL.setCapabilities(glCapabilities);
+		glfwDestroyWindow(uploadWindow);
+		uploadWindow = NULL;
+
+		if (clientFence != 0L)
+		{
+			GL43C.glDeleteSync(clientFence);
+			clientFence = 0L;
+		}
+		if (renderFence != 0L)
+		{
+			GL43C.glDeleteSync(renderFence);
+			renderFence = 0L;
+		}
+		retainedFrame = boundFrame = null;
+	}
+
+	private void renderLoop()
+	{
+		glfwMakeContextCurrent(window);
+		GL.setCapabilities(glCapabilities);
+
+		int failures = 0;
+		while (renderThreadRunning)
+		{
+			try
+			{
+				// xrWaitFrame paces this loop to the headset
+				if (retainedFrame == null || !renderFrameOpenXR(null, retainedOverlayColor))
+				{
+					Thread.sleep(10);
+				}
+				failures = 0;
+			}
+			catch (InterruptedException ex)
+			{
+				break;
+			}
+			catch (RuntimeException ex)
+			{
+				log.error("Error rendering retained frame", ex);
+				if (++failures < MAX_RENDER_FAILURES)
+				{
+					continue;
+				}
+
+				// stop rather than leave the headset frozen on the last frame it got
+				clientThread.invoke(() -> client.addChatMessage(ChatMessageType.GAMEMESSAGE, "",
+					"VR rendering failed and the plugin has been stopped, see the client log for details.", null));
+				shutdown();
+				break;
+			}
+		}
+
+		glfwMakeContextCurrent(NULL);
+	}
+
+	/**
+	 * Draw the last frame the client thread published. The lock keeps the client from replacing its
+	 * geometry halfway through, the fences order the two contexts' commands on the gpu.
+	 */
+	private boolean renderRetainedLayer(FrameInput frameInput, MemoryStack stack, long predictedDisplayTime, XrCompositionLayerProjection layer, int overlayColor)
+	{
+		frameLock.lock();
+		try
+		{
+			RetainedFrame frame = retainedFrame;
+			if (frame == null)
+			{
+				return false;
+			}
+
+			waitSync(clientFence);
+			bindRetainedState(frame);
+			boolean rendered = renderLayerOpenXR(frame, frameInput, stack, predictedDisplayTime, layer, overlayColor);
+			renderFence = replaceSync(renderFence);
+			return rendered;
+		}
+		finally
+		{
+			frameLock.unlock();
+		}
+	}
+
+	/**
+	 * The client context changed the buffers since the last retained frame, they are only guaranteed
+	 * to be seen by this context once attached again. Bindings made on the client context are its own.
+	 */
+	private void bindRetainedState(RetainedFrame frame)
+	{
+		if (frame == boundFrame)
+		{
+			return;
+		}
+		boundFrame = frame;
+
+		attachVertexBuffers(vaoCompute, tmpOutBuffer, tmpOutUvBuffer);
+		attachVertexBuffers(vaoZone, sceneZoneVertexBuffer, sceneZoneUvBuffer);
+		attachVertexBuffers(vaoStatic, staticGeometry.vertexBuffer, staticGeometry.uvBuffer);
+		attachVertexBuffers(vaoOutlineTemp, tmpOutlineVertexBuffer, null);
+		GL43C.glBindVertexArray(0);
+
+		GL43C.glBindBufferBase(GL43C.GL_UNIFORM_BUFFER, 0, retainedUniformBuffer.glBufferId);
+		if (textureArrayId != -1)
+		{
+			GL43C.glActiveTexture(GL43C.GL_TEXTURE1);
+			GL43C.glBindTexture(GL43C.GL_TEXTURE_2D_ARRAY, textureArrayId);
+			GL43C.glActiveTexture(GL43C.GL_TEXTURE0);
+		}
+	}
+
+	private boolean renderFrameOpenXR(@Nullable RetainedFrame frame, int overlayColor) {
 		if(pollEvents() == ENDING_POLLED) return false;
 		try (MemoryStack stack = stackPush()) {
 			XrFrameState frameState = XrFrameState.calloc(stack)
@@ -2866,6 +3655,8 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 							.subactionPath(leftHandPath),
 					xClick
 			));
+			final InputSnapshot input = inputSnapshot;
+			robot.setInput(input);
 			if(lClick.changedSinceLastSync()){
 				if(state != HandSelectState.OUT_OF_BOUNDS || hovering)
 					robot.leftClick(lClick.currentState());
@@ -2901,21 +3692,38 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 			XrCompositionLayerProjection layerProjection = XrCompositionLayerProjection.calloc(stack)
 					.type$Default();
 
-			PointerBuffer layers = stack.callocPointer(1);
+			// the projection, then the interface panel and menu quads drawn over it
+			PointerBuffer layers = stack.callocPointer(3);
 
 			boolean didRender = false;
 			//System.out.println(frameState.shouldRender()+" "+frameState.predictedDisplayTime());
 			if (frameState.shouldRender()) {
-				if (renderLayerOpenXR(sky, brightness, gameState, stack, frameState.predictedDisplayTime(), layerProjection, viewportWidth, viewportHeight, overlayColor)) {
-					layers.put(0, layerProjection);
+				// Input is resolved once here, the views below only draw it
+				FrameInput frameInput = updateFrameInput(input);
+				if (eyeTarget != null) {
+					eyeTarget.beginFrame();
+				}
+				boolean rendered = decoupledRendering
+					? renderRetainedLayer(frameInput, stack, frameState.predictedDisplayTime(), layerProjection, overlayColor)
+					: renderLayerOpenXR(frame, frameInput, stack, frameState.predictedDisplayTime(), layerProjection, overlayColor);
+				if (eyeTarget != null) {
+					eyeTarget.endFrame(frameState.predictedDisplayPeriod());
+				}
+				if (rendered) {
+					layers.put(layerProjection);
 					didRender = true;
 				} else {
 					System.out.println("Didn't render");
 				}
+				if (quadLayers) {
+					renderQuadLayers(frame, frameInput, stack, layers, overlayColor);
+				}
 			} else {
 				System.out.println("Shouldn't render");
 			}
 			//System.out.println(stack.getFrameIndex()+" "+stack.getSize()+" "+stack.getAddress());
+			layers.flip();
+			didRender = layers.hasRemaining();
 
 			check(xrEndFrame(
 					xrSession,
@@ -2933,7 +3741,7 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 	private boolean eye = true;
 
-	private boolean renderLayerOpenXR(int sky, float brightness, GameState gameState, MemoryStack stack, long predictedDisplayTime, XrCompositionLayerProjection layer, float viewportWidth, float viewportHeight, int overlayColor) {
+	private boolean renderLayerOpenXR(RetainedFrame frame, FrameInput frameInput, MemoryStack stack, long predictedDisplayTime, XrCompositionLayerProjection layer, int overlayColor) {
 		XrViewState viewState = XrViewState.calloc(stack)
 				.type$Default();
 
@@ -2959,7 +3767,7 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		int viewCountOutput = pi.get(0);
 		assert (viewCountOutput == views.capacity());
 		assert (viewCountOutput == viewConfigs.capacity());
-		assert (viewCountOutput == swapchains.length);
+		assert (viewCountOutput == (layeredStereo ? STEREO_VIEWS : swapchains.length));
 
 		XrCompositionLayerProjectionView.Buffer projectionLayerViews = XRHelper.fill(
 				XrCompositionLayerProjectionView.calloc(viewCountOutput, stack),
@@ -2968,31 +3776,43 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		);
 
 		// Render view to the appropriate part of the swapchain image.
+		XrSwapchainImageOpenGLKHR swapchainImage = null;
 		for (int viewIndex = 0; viewIndex < viewCountOutput; viewIndex++) {
-			// Each view has a separate swapchain which is acquired, rendered to, and released.
-			Swapchain viewSwapchain = swapchains[viewIndex];
-
-			check(xrAcquireSwapchainImage(
-					viewSwapchain.handle,
-					XrSwapchainImageAcquireInfo.calloc(stack)
-							.type$Default(),
-					pi
-			));
-			int swapchainImageIndex = pi.get(0);
-
-			check(xrWaitSwapchainImage(
-					viewSwapchain.handle,
-					XrSwapchainImageWaitInfo.malloc(stack)
-							.type$Default()
-							.next(NULL)
-							.timeout(XR_INFINITE_DURATION)
-			));
+			// Each view has a separate swapchain which is acquired, rendered to, and released,
+			// unless both views are layers of one swapchain image which is only acquired once.
+			Swapchain viewSwapchain = swapchains[layeredStereo ? 0 : viewIndex];
+			final int imageArrayIndex = layeredStereo ? viewIndex : 0;
+
+			if (swapchainImage == null || !layeredStereo) {
+				check(xrAcquireSwapchainImage(
+						viewSwapchain.handle,
+						XrSwapchainImageAcquireInfo.calloc(stack)
+								.type$Default(),
+						pi
+				));
+				swapchainImage = viewSwapchain.images.get(pi.get(0));
+
+				check(xrWaitSwapchainImage(
+						viewSwapchain.handle,
+						XrSwapchainImageWaitInfo.malloc(stack)
+								.type$Default()
+								.next(NULL)
+								.timeout(XR_INFINITE_DURATION)
+				));
+
+				if (layeredStereo) {
+					beginEyeDraw();
+					OpenGLRenderStereoScene(frame, swapchainImage, viewSwapchain);
+					endEyeDraw();
+				}
+			}
 
 			XrCompositionLayerProjectionView projectionLayerView = projectionLayerViews.get(viewIndex)
 					.pose(views.get(viewIndex).pose())
 					.fov(views.get(viewIndex).fov())
 					.subImage(si -> si
 							.swapchain(viewSwapchain.handle)
+							.imageArrayIndex(imageArrayIndex)
 							.imageRect(rect -> rect
 									.offset(offset -> offset
 											.x(0)
@@ -3002,13 +3822,17 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 											.height(viewSwapchain.height)
 									)));
 
-			OpenGLRenderView(sky, brightness, gameState,projectionLayerView, viewSwapchain.images.get(swapchainImageIndex), viewIndex, viewportWidth, viewportHeight, overlayColor);
+			beginEyeDraw();
+			OpenGLRenderView(frame, frameInput, projectionLayerView, swapchainImage, viewIndex, overlayColor);
+			endEyeDraw();
 
-			check(xrReleaseSwapchainImage(
-					viewSwapchain.handle,
-					XrSwapchainImageReleaseInfo.calloc(stack)
-							.type$Default()
-			));
+			if (!layeredStereo || viewIndex == viewCountOutput - 1) {
+				check(xrReleaseSwapchainImage(
+						viewSwapchain.handle,
+						XrSwapchainImageReleaseInfo.calloc(stack)
+								.type$Default()
+				));
+			}
 		}
 
 		layer.space(xrAppSpace);
@@ -3016,6 +3840,165 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		return true;
 	}
 
+	/**
+	 * Time the eye draws for the resolution scale. Waiting on the client's fence and on the compositor
+	 * for swapchain images happens outside of these, so only the eyes' own GPU work is measured.
+	 */
+	private void beginEyeDraw() {
+		if (eyeTarget != null) {
+			eyeTarget.beginDraw();
+		}
+	}
+
+	private void endEyeDraw() {
+		if (eyeTarget != null) {
+			eyeTarget.endDraw();
+		}
+	}
+
+	// drawUi's panel is 0.4m across, scaled up to fill the quad layer's viewport
+	private static final Matrix4f QUAD_FILL = new Matrix4f().scaling(5f, 5f, 1f);
+	private static final Matrix4f QUAD_IDENTITY = new Matrix4f();
+	// size of a menu pixel in meters, as drawn by drawMenu
+	private static final float MENU_PIXEL_SIZE = 0.002f;
+
+	/**
+	 * Add the interface panel and the menu to the frame as quad layers. The compositor samples and
+	 * reprojects them for each eye, so they are not drawn into the eyes at all, and their images
+	 * are only redrawn when their content changed.
+	 */
+	private void renderQuadLayers(@Nullable RetainedFrame frame, FrameInput frameInput, MemoryStack stack, PointerBuffer layers, int overlayColor) {
+		if (!frameInput.handTracked || lastCanvasWidth <= 0 || lastCanvasHeight <= 0) {
+			return;
+		}
+
+		if (decoupledRendering) {
+			// the interface and menu textures are uploaded from the client context
+			frameLock.lock();
+			waitSync(clientFence);
+			frame = retainedFrame;
+		}
+		try {
+			if (interfaceLayer == null || interfaceLayer.swapchain.width != lastCanvasWidth || interfaceLayer.swapchain.height != lastCanvasHeight) {
+				// The menu is cut out of the canvas, so an image of the canvas' size fits both
+				destroyQuadLayers();
+				interfaceLayer = new QuadLayer(createSwapchain(lastCanvasWidth, lastCanvasHeight, 1, 1));
+				menuLayer = new QuadLayer(createSwapchain(lastCanvasWidth, lastCanvasHeight, 1, 1));
+			}
+
+			if (frameInput.mapVisible) {
+				if (interfaceLayer.isDirty() || interfaceLayer.overlayColor != overlayColor) {
+					drawQuadLayer(interfaceLayer, stack, interfaceTexture, lastCanvasWidth, lastCanvasHeight, overlayColor);
+				}
+				Vector3f center = frameInput.mapMatrix.getTranslation(new Vector3f());
+				layers.put(interfaceLayer.layer(stack, xrAppSpace,
+						XR_COMPOSITION_LAYER_BLEND_TEXTURE_SOURCE_ALPHA_BIT | XR_COMPOSITION_LAYER_UNPREMULTIPLIED_ALPHA_BIT,
+						center.x, center.y, center.z - 0.02f, 0.4f, 0.4f));
+			}
+
+			if (frameInput.menuOpen && !frameInput.hovering && frame != null && lastMenuWidth > 0 && lastMenuHeight > 0) {
+				if (menuLayer.isDirty() || menuLayer.overlayColor != overlayColor) {
+					drawQuadLayer(menuLayer, stack, menuTexture, lastMenuWidth, lastMenuHeight, overlayColor);
+				}
+				// The same placement drawMenu and vertmenu.glsl give the menu
+				float width = lastMenuWidth * MENU_PIXEL_SIZE;
+				float height = lastMenuHeight * MENU_PIXEL_SIZE;
+				float depth = 0.044f + 0.088f * menuTiles() + menuDepth(frame.sceneProjection);
+				// the menu texture is premultiplied, drawMenu blends it with GL_ONE
+				layers.put(menuLayer.layer(stack, xrAppSpace, XR_COMPOSITION_LAYER_BLEND_TEXTURE_SOURCE_ALPHA_BIT,
+						menuIntersect.x + width / 2, menuIntersect.y + height / 2, depth, width, height));
+			}
+		} finally {
+			if (decoupledRendering) {
+				renderFence = replaceSync(renderFence);
+				frameLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Copy a texture into the next image of a quad layer, applying the overlay color and colorblind
+	 * mode the same way drawing it into the eyes would.
+	 */
+	private void drawQuadLayer(QuadLayer quad, MemoryStack stack, int texture, int width, int height, int overlayColor) {
+		quad.beginDraw();
+		IntBuffer pi = stack.mallocInt(1);
+		check(xrAcquireSwapchainImage(
+				quad.swapchain.handle,
+				XrSwapchainImageAcquireInfo.calloc(stack)
+						.type$Default(),
+				pi
+		));
+		XrSwapchainImageOpenGLKHR image = quad.swapchain.images.get(pi.get(0));
+
+		check(xrWaitSwapchainImage(
+				quad.swapchain.handle,
+				XrSwapchainImageWaitInfo.malloc(stack)
+						.type$Default()
+						.next(NULL)
+						.timeout(XR_INFINITE_DURATION)
+		));
+
+		quad.contentWidth = Math.min(width, quad.swapchain.width);
+		quad.contentHeight = Math.min(height, quad.swapchain.height);
+
+		glBindFramebuffer(GL_FRAMEBUFFER, swapchainFramebuffer);
+		glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, image.image(), 0);
+		glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, 0, 0);
+		glViewport(0, 0, quad.contentWidth, quad.contentHeight);
+		glDisable(GL_DEPTH_TEST);
+		glDisable(GL_BLEND);
+
+		// The compositor does the scaling, the texture is copied texel for texel
+		drawUiQuad(texture, UIScalingMode.NEAREST, overlayColor, height, width, QUAD_IDENTITY, QUAD_IDENTITY, QUAD_FILL);
+
+		glEnable(GL_DEPTH_TEST);
+		glBindFramebuffer(GL_FRAMEBUFFER, 0);
+		glFlush();
+
+		check(xrReleaseSwapchainImage(
+				quad.swapchain.handle,
+				XrSwapchainImageReleaseInfo.calloc(stack)
+						.type$Default()
+		));
+		quad.overlayColor = overlayColor;
+		quad.released();
+	}
+
+	private void destroyQuadLayers() {
+		if (interfaceLayer != null) {
+			interfaceLayer.destroy();
+			interfaceLayer = null;
+		}
+		if (menuLayer != null) {
+			menuLayer.destroy();
+			menuLayer = null;
+		}
+	}
+
+	/**
+	 * How far toward the viewer the menu is drawn for the size of the actor it was opened on
+	 */
+	private float menuTiles() {
+		return menuActor==null?0:((((menuActor.getWorldArea().getWidth()-1)/2)+
+				((menuActor.getWorldArea().getHeight()-1)/2))/2.0f);
+	}
+
+	/**
+	 * The depth offset vertmenu.glsl gives the menu: the menu tile through the game camera projection
+	 */
+	private float menuDepth(float[] sceneProjection) {
+		if (menuTileX == null || menuTileY == null) {
+			return -1f;
+		}
+		float x = menuTileX << Perspective.LOCAL_COORD_BITS;
+		float z = menuTileY << Perspective.LOCAL_COORD_BITS;
+		// column major, the tile's y is 0 and its w is 1
+		float depth = sceneProjection[2] * x + sceneProjection[10] * z + sceneProjection[14];
+		float w = sceneProjection[3] * x + sceneProjection[11] * z + sceneProjection[15];
+		return depth / w;
+	}
+
 	@Subscribe
 	void onWorldChanged(WorldChanged worldChanged){
 		forceMap = false;
@@ -3023,43 +4006,37 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	}
 
 	private static FloatBuffer mvpMatrix = BufferUtils.createFloatBuffer(16);
+	private static FloatBuffer stereoViewMatrices = BufferUtils.createFloatBuffer(16 * STEREO_VIEWS);
+	private static FloatBuffer stereoProjectionMatrices = BufferUtils.createFloatBuffer(16 * STEREO_VIEWS);
 	//int screenShader = ShadersGL.createShaderProgram(ShadersGL.screenVertShader, ShadersGL.texFragShader);
 
-	private boolean hovering = false;
-	private void OpenGLRenderView(int sky, float brightness, GameState gameState, XrCompositionLayerProjectionView layerView, XrSwapchainImageOpenGLKHR swapchainImage, int viewIndex, float viewportWidth, float viewportHeight, int overlayColor) {
+	private void setupSceneProgram(RetainedFrame frame)
+	{
+		final int sky = frame.sky;
 		GL43C.glUseProgram(glProgram);
 
-		final int drawDistance = getDrawDistance();
 		final int fogDepth = config.fogDepth();
 		GL43C.glUniform1i(uniUseFog, fogDepth > 0 ? 1 : 0);
 		GL43C.glUniform4f(uniFogColor, (sky >> 16 & 0xFF) / 255f, (sky >> 8 & 0xFF) / 255f, (sky & 0xFF) / 255f, 1f);
 		GL43C.glUniform1i(uniFogDepth, fogDepth);
-		GL43C.glUniform1i(uniDrawDistance, drawDistance * Perspective.LOCAL_TILE_SIZE);
-		GL43C.glUniform1i(uniExpandedMapLoadingChunks, client.getExpandedMapLoading());
+		GL43C.glUniform1i(uniDrawDistance, frame.drawDistance * Perspective.LOCAL_TILE_SIZE);
+		GL43C.glUniform1i(uniExpandedMapLoadingChunks, frame.expandedMapLoading);
 
 		// Brightness happens to also be stored in the texture provider, so we use that
-		GL43C.glUniform1f(uniBrightness, brightness);
+		GL43C.glUniform1f(uniBrightness, frame.brightness);
 		GL43C.glUniform1f(uniSmoothBanding, config.smoothBanding() ? 0f : 1f);
 		GL43C.glUniform1i(uniColorBlindMode, config.colorBlindMode().ordinal());
 		GL43C.glUniform1f(uniTextureLightMode, config.brightTextures() ? 1f : 0f);
-		if (gameState == GameState.LOGGED_IN)
+		if (frame.gameState == GameState.LOGGED_IN)
 		{
 			// avoid textures animating during loading
-			GL43C.glUniform1i(uniTick, client.getGameCycle());
+			GL43C.glUniform1i(uniTick, frame.gameCycle);
 		}
 
 		// Bind uniforms
 		GL43C.glUniformBlockBinding(glProgram, uniBlockMain, 0);
 		GL43C.glUniform1i(uniTextures, 1); // texture sampler array is bound to texture1
 
-		// We just allow the GL to do face culling. Note this requires the priority renderer
-		// to have logic to disregard culled faces in the priority depth testing.
-		GL43C.glEnable(GL43C.GL_CULL_FACE);
-
-		// Enable blending for alpha
-		GL43C.glEnable(GL43C.GL_BLEND);
-		GL43C.glBlendFuncSeparate(GL43C.GL_SRC_ALPHA, GL43C.GL_ONE_MINUS_SRC_ALPHA, GL43C.GL_ONE, GL43C.GL_ONE);
-
 		// Draw buffers
 		if (computeMode != ComputeMode.NONE)
 		{
@@ -3082,12 +4059,91 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 			// Only use the temporary buffers, which will contain the full scene
 			GL43C.glBindVertexArray(vaoTemp);
 		}
+	}
+
+	private boolean hovering = false;
+
+	// written by the client thread each frame, read by whichever thread resolves the controller input
+	private volatile InputSnapshot inputSnapshot = InputSnapshot.NONE;
+
+	/**
+	 * Casts the controller rays, moves the cursor and updates the selection state. This runs once
+	 * per XR frame so the mouse is only moved and the menu only scanned once, not once per eye.
+	 * The client state comes from the snapshot of the last client frame, so this is safe off the client thread.
+	 */
+	private FrameInput updateFrameInput(InputSnapshot input) {
+		final boolean menuOpen = input.menuOpen;
+		if(rightPose != null) {
+			handMatrix.translation(rightPose.position$().x(), (float) rightPose.position$().y(), (float) rightPose.position$().z())
+					.rotate(new Quaternionf(rightPose.orientation().x(), rightPose.orientation().y(), rightPose.orientation().z(), rightPose.orientation().w()));
+
+			Vector3f playAreaIntersect = CalcHelper.getPlayAreaIntersect(rightPose.position$(), rightPose.orientation());
+
+			//System.out.println(playAreaIntersect.x()+" "+playAreaIntersect.y());
+			//mapMatrix.translation(rightPose.position$().x(), (float) rightPose.position$().y(), (float) rightPose.position$().z())
+			//		.rotate(new Quaternionf(rightPose.orientation().x(), rightPose.orientation().y(), rightPose.orientation().z(), rightPose.orientation().w()))
+			//		.translate(-(playAreaIntersect.x()+1)*0.15f*VRRobot.estimatedXRatio, -(playAreaIntersect.y()-1)*0.15f*VRRobot.estimatedYRatio, (float) 0.0);
+
+			cursorMatrix.translation(playAreaIntersect.x(), playAreaIntersect.y(), playAreaIntersect.z());
+
+			if(leftPose != null && (forceMap || mapVisible)) {
+				mapMatrix.translation(leftPose.position$().x()+0.21f, (float) leftPose.position$().y()+0.21f, (float) leftPose.position$().z()-0.01f);
+				Vector3f mapPlaneIntersect = CalcHelper.getMapPlaneIntersect(leftPose.position$(), leftPose.orientation(), rightPose.position$(), rightPose.orientation(), 0.21f, 0.21f, -0.01f);
+				float dist = new Vector3f(leftPose.position$().x(),leftPose.position$().y(),leftPose.position$().z()).add(new Vector3f(0.21f,0.21f,0.01f)).distance(new Vector3f(rightPose.position$().x(),rightPose.position$().y(),rightPose.position$().z()));
+				if(Math.abs(mapPlaneIntersect.x) <= 0.2 && Math.abs(mapPlaneIntersect.y) <= 0.2 && dist <= 0.22*Math.sqrt(2.0) && rightPose.position$().z()-(leftPose.position$().z()-0.01f)<0.05){
+					hovering = true;
+					robot.setCursorByMapPct((mapPlaneIntersect.x+0.2f)/0.4f, (mapPlaneIntersect.y+0.2f)/0.4f);
+				} else {
+					hovering = false;
+				}
+			} else {
+				hovering = false;
+			}
+
+			if(!hovering){
+				if (!menuOpen) {
+					state = HandSelectState.IDLE;
+				} else {
+					if (state != HandSelectState.SELECTING) {
+						robot.startSelecting();
+					}
+					state = HandSelectState.SELECTING;
+				}
+				if (state != HandSelectState.SELECTING) {
+					boolean inBounds = robot.setCursorByXY(playAreaIntersect.x(), playAreaIntersect.y());
+					state = (!inBounds || !input.targetingWorld)? HandSelectState.OUT_OF_BOUNDS : HandSelectState.IDLE;
+				}
+			}
+		}
+
+		return new FrameInput(rightPose != null, handMatrix, cursorMatrix, mapMatrix, state, hovering, mapVisible || forceMap, menuOpen,
+			input.menuWidth, input.menuHeight);
+	}
+
+	private void OpenGLRenderView(RetainedFrame frame, FrameInput frameInput, XrCompositionLayerProjectionView layerView, XrSwapchainImageOpenGLKHR swapchainImage, int viewIndex, int overlayColor) {
+		if (!layeredStereo)
+		{
+			setupSceneProgram(frame);
+		}
+
+		// We just allow the GL to do face culling. Note this requires the priority renderer
+		// to have logic to disregard culled faces in the priority depth testing.
+		GL43C.glEnable(GL43C.GL_CULL_FACE);
+
+		// Enable blending for alpha
+		GL43C.glEnable(GL43C.GL_BLEND);
+		GL43C.glBlendFuncSeparate(GL43C.GL_SRC_ALPHA, GL43C.GL_ONE_MINUS_SRC_ALPHA, GL43C.GL_ONE, GL43C.GL_ONE);
 
 		/*THE ACTUAL START OF THE CODE*/
 		glBindFramebuffer(GL_FRAMEBUFFER, swapchainFramebuffer);
 
-		glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, swapchainImage.image(), 0);
-		glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, depthTextures.get(swapchainImage), 0);
+		if (layeredStereo) {
+			glFramebufferTextureLayer(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, swapchainImage.image(), 0, viewIndex);
+			glFramebufferTextureLayer(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, depthTextures.get(swapchainImage), 0, viewIndex);
+		} else {
+			glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, swapchainImage.image(), 0);
+			glFramebufferTexture2D(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, GL_TEXTURE_2D, depthTextures.get(swapchainImage), 0);
+		}
 
 		XrRect2Di imageRect = layerView.subImage().imageRect();
 		//System.out.println(imageRect.offset().x()+" "+imageRect.offset().y()+" "+imageRect.extent().width()+" "+imageRect.extent().height());
@@ -3098,19 +4154,19 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 				imageRect.extent().height()
 		);
 
-		float[] DarkSlateGray = {0.184313729f, 0.309803933f, 0.309803933f};
-		glClearColor(DarkSlateGray[0], DarkSlateGray[1], DarkSlateGray[2], 1.0f);
-		glClearDepth(1.0f);
-		glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT | GL_STENCIL_BUFFER_BIT);
+		// The scene can be drawn at a reduced resolution and upscaled, everything on top of it isn't
+		final boolean scaled = eyeTarget != null && eyeTarget.scaling();
+		if (!layeredStereo) {
+			if (scaled) {
+				eyeTarget.bindLayer(viewIndex, imageRect.extent().width(), imageRect.extent().height());
+			}
+			clearSwapchainImage();
+		}
 
 		glFrontFace(GL_CW);
 		glCullFace(GL_BACK);
 		glEnable(GL_DEPTH_TEST);
 
-		XrPosef       pose        = layerView.pose();
-		XrVector3f    pos         = pose.position$();
-		XrQuaternionf orientation = pose.orientation();
-
 
 		//glUniformMatrix4fv(uniModel, false, modelviewMatrix.get(mvpMatrix));
 
@@ -3121,8 +4177,6 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		//		1, 1, 1
 		//);
 
-		glDisable(GL_CULL_FACE); // Disable back-face culling so we can see the inside of the world-space cube and backside of the plane
-
 		//modelviewMatrix.identity();
 		//XRHelper.applyProjectionToMatrix(projectionMatrix.identity(), layerView.fov(), 0.1f, 100f, false);
 
@@ -3160,13 +4214,7 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		//modelviewMatrix.identity();
 		//XRHelper.applyProjectionToMatrix(projectionMatrix.identity(), layerView.fov(), 0.1f, 100f, false);
 		//System.out.println("HERE: "+layerView.fov().angleDown()+" "+layerView.fov().angleUp()+" "+layerView.fov().angleLeft()+" "+layerView.fov().angleRight());
-		XRHelper.applyProjectionToMatrix(projectionMatrix.identity(), layerView.fov(), 0.1f, 10000f, false);
-		//System.out.println("("+pos.x()+","+pos.y()+","+pos.z()+")"+"("+orientation.x()+","+orientation.y()+","+orientation.z()+","+orientation.w()+")");
-		viewMatrix.translationRotateScaleInvert(
-				(float) pos.x(), (float) pos.y(), (float) pos.z(),
-				orientation.x(), orientation.y(), orientation.z(), orientation.w(),
-				1, 1,1
-		);
+		setEyeMatrices(layerView.pose(), layerView.fov());
 
 		//glUniformMatrix4fv(uniProjection, false, projectionMatrix.identity().get(mvpMatrix));
 		/*float[] projectionMatrix2 = com.vr.Mat4.identity();
@@ -3176,68 +4224,29 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		com.vr.Mat4.mul(projectionMatrix2, com.vr.Mat4.rotateY((float) cameraYaw));
 		com.vr.Mat4.mul(projectionMatrix2, Mat4.translate((float) -cameraX, (float) -cameraY, (float) -cameraZ+1000f*(float)(1448-client.getScale())/1448f));*/
 
-		float[] projectionMatrix2 = com.vr.Mat4.identity();
-		com.vr.Mat4.mul(projectionMatrix2, Mat4.scale(client.getScale(), client.getScale(), -1));
-		com.vr.Mat4.mul(projectionMatrix2, com.vr.Mat4.projection(viewportWidth, viewportHeight, 250));
-		com.vr.Mat4.mul(projectionMatrix2, com.vr.Mat4.rotateX((float) -(Math.PI - cameraPitch)));
-		com.vr.Mat4.mul(projectionMatrix2, com.vr.Mat4.rotateY((float) cameraYaw));
-		com.vr.Mat4.mul(projectionMatrix2, Mat4.translate((float) -cameraX, (float) -cameraY, (float) -cameraZ));
+		float[] projectionMatrix2 = frame.sceneProjection;
 
 		//float[] projectionMatrix = com.vr.Mat4.identity();
-		//com.vr.Mat4.mul(projectionMatrix, Mat4.translate((float) -pos.x(), (float) -pos.y(), (float) -pos.z()));
-
-
-		GL43C.glUniformMatrix4fv(uniProjectionMatrix, false, projectionMatrix2);
-		GL43C.glUniformMatrix4fv(uniView, false, viewMatrix.get(mvpMatrix));
-		GL43C.glUniformMatrix4fv(uniProjection, false, projectionMatrix.get(mvpMatrix));
-
-		GL43C.glDrawArrays(GL43C.GL_TRIANGLES, 0, targetBufferOffset);
-
-		if(rightPose != null) {
-			//System.out.println(rightPose.position$().x() * 4 + " " + rightPose.position$().y() * 4);
-			handMatrix.translation(rightPose.position$().x(), (float) rightPose.position$().y(), (float) rightPose.position$().z())
-					.rotate(new Quaternionf(rightPose.orientation().x(), rightPose.orientation().y(), rightPose.orientation().z(), rightPose.orientation().w()));
+		//com.vr.Mat4.mul(projectionMatrix, Mat4.translate((float) -pos.x(), (float) -pos.y(), (float) -pos.z()));
 
-			Vector3f playAreaIntersect = CalcHelper.getPlayAreaIntersect(rightPose.position$(), rightPose.orientation());
 
-			//System.out.println(playAreaIntersect.x()+" "+playAreaIntersect.y());
-			//mapMatrix.translation(rightPose.position$().x(), (float) rightPose.position$().y(), (float) rightPose.position$().z())
-			//		.rotate(new Quaternionf(rightPose.orientation().x(), rightPose.orientation().y(), rightPose.orientation().z(), rightPose.orientation().w()))
-			//		.translate(-(playAreaIntersect.x()+1)*0.15f*VRRobot.estimatedXRatio, -(playAreaIntersect.y()-1)*0.15f*VRRobot.estimatedYRatio, (float) 0.0);
+		if (!layeredStereo) {
+			GL43C.glUniformMatrix4fv(uniProjectionMatrix, false, projectionMatrix2);
+			GL43C.glUniformMatrix4fv(uniView, false, viewMatrix.get(mvpMatrix));
+			GL43C.glUniformMatrix4fv(uniProjection, false, projectionMatrix.get(mvpMatrix));
 
-			cursorMatrix.translation(playAreaIntersect.x(), playAreaIntersect.y(), playAreaIntersect.z());
+			drawSceneGeometry(frame);
+		}
 
-			if(leftPose != null && (forceMap || mapVisible)) {
-				mapMatrix.translation(leftPose.position$().x()+0.21f, (float) leftPose.position$().y()+0.21f, (float) leftPose.position$().z()-0.01f);
-				Vector3f mapPlaneIntersect = CalcHelper.getMapPlaneIntersect(leftPose.position$(), leftPose.orientation(), rightPose.position$(), rightPose.orientation(), 0.21f, 0.21f, -0.01f);
-				float dist = new Vector3f(leftPose.position$().x(),leftPose.position$().y(),leftPose.position$().z()).add(new Vector3f(0.21f,0.21f,0.01f)).distance(new Vector3f(rightPose.position$().x(),rightPose.position$().y(),rightPose.position$().z()));
-				if(Math.abs(mapPlaneIntersect.x) <= 0.2 && Math.abs(mapPlaneIntersect.y) <= 0.2 && dist <= 0.22*Math.sqrt(2.0) && rightPose.position$().z()-(leftPose.position$().z()-0.01f)<0.05){
-					hovering = true;
-					robot.setCursorByMapPct((mapPlaneIntersect.x+0.2f)/0.4f, (mapPlaneIntersect.y+0.2f)/0.4f);
-				} else {
-					hovering = false;
-				}
-			} else {
-				hovering = false;
-			}
+		glDisable(GL_CULL_FACE); // Disable back-face culling so we can see the inside of the world-space cube and backside of the plane
 
-			if(!hovering){
-				if (!client.isMenuOpen()) {
-					state = HandSelectState.IDLE;
-				} else {
-					if (state != HandSelectState.SELECTING) {
-						robot.startSelecting(client);
-					}
-					state = HandSelectState.SELECTING;
-				}
-				if (state != HandSelectState.SELECTING) {
-					boolean inBounds = robot.setCursorByXY(playAreaIntersect.x(), playAreaIntersect.y());
-					state = (!inBounds || !isTargetingWorld())? HandSelectState.OUT_OF_BOUNDS : HandSelectState.IDLE;
-				}
-			}
+		if (scaled) {
+			eyeTarget.resolve(swapchainFramebuffer, viewIndex, imageRect.extent().width(), imageRect.extent().height());
+		}
 
+		if(frameInput.handTracked) {
 			//prepareTopTexture(overlayColor, viewportHeight, viewportWidth, viewMatrix, projectionMatrix, mapMatrix);
-			drawCursor(viewMatrix, handMatrix, cursorMatrix, projectionMatrix, state);
+			drawCursor(viewMatrix, frameInput.handMatrix, frameInput.cursorMatrix, projectionMatrix, frameInput.state);
 			//drawUi(overlayColor, 100, 100, viewMatrix, projectionMatrix, mapMatrix);//mapMatrix);
 
 			GL43C.glUseProgram(glOutlineProgram);
@@ -3257,7 +4266,7 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 			GL43C.glUniformMatrix4fv(uniOutlineProjection, false, projectionMatrix.get(mvpMatrix));
 
 			GL43C.glBindVertexArray(vaoOutlineTemp);
-			GL43C.glDrawArrays(GL43C.GL_TRIANGLES, 0, targetOutlineBufferOffset);
+			GL43C.glDrawArrays(GL43C.GL_TRIANGLES, 0, frame.targetOutlineBufferOffset);
 
 			//glEnable(GL_DEPTH_TEST);
 			//glDepthMask(true);
@@ -3267,10 +4276,12 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 			GL43C.glBindVertexArray(0);
 			GL43C.glUseProgram(0);
 
-			if(client.isMenuOpen() && !hovering){
-				glClear(GL_DEPTH_BUFFER_BIT);
-				drawMenu(overlayColor, client.getMenuWidth(), Math.min(lastCanvasHeight,client.getMenuHeight()), viewMatrix, projectionMatrix, projectionMatrix2, new Matrix4f());//mapMatrix);
-			} else if(!client.isMenuOpen() && hintTarget != null && !hovering) {
+			if(frameInput.menuOpen && !frameInput.hovering){
+				if (!quadLayers) {
+					glClear(GL_DEPTH_BUFFER_BIT);
+					drawMenu(overlayColor, frameInput.menuWidth, Math.min(lastCanvasHeight,frameInput.menuHeight), viewMatrix, projectionMatrix, projectionMatrix2, new Matrix4f());//mapMatrix);
+				}
+			} else if(!frameInput.menuOpen && hintTarget != null && !frameInput.hovering) {
 				glClear(GL_DEPTH_BUFFER_BIT);
 				hudHelper.drawHint(overlayColor, viewMatrix, projectionMatrix, projectionMatrix2, hintTileX, hintTileY, hintAction, hintTarget, hintActor, hintIntersect);
 			}
@@ -3299,9 +4310,9 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 			hudHelper.drawHud(viewMatrix, projectionMatrix, projectionMatrix2);
 
 			glClear(GL_DEPTH_BUFFER_BIT);
-			drawHand(viewMatrix, handMatrix, cursorMatrix, projectionMatrix, state);
-			if(mapVisible || forceMap) {
-				drawUi(overlayColor, 100, 100, viewMatrix, projectionMatrix, mapMatrix);//mapMatrix);
+			drawHand(viewMatrix, frameInput.handMatrix, frameInput.cursorMatrix, projectionMatrix, frameInput.state);
+			if(frameInput.mapVisible && !quadLayers) {
+				drawUi(overlayColor, 100, 100, viewMatrix, projectionMatrix, frameInput.mapMatrix);//mapMatrix);
 			}
 			//glEnable(GL_DEPTH_TEST);
 		}
@@ -3332,12 +4343,121 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 			glDisable(GL_DEPTH_TEST);
 			glBindTexture(GL_TEXTURE_2D, swapchainImage.image());
 			glDrawArrays(GL_TRIANGLES, 0, 6);*/
-			if (viewIndex == swapchains.length - 1) {
+			if (viewIndex == views.capacity() - 1) {
 				glFlush();
 			}
 		//}
 	}
 
+	/**
+	 * Draws the scene into every layer of an array swapchain image at once. The geometry shader
+	 * is invoked once per eye and sends its copy of each triangle to that eye's layer, so the
+	 * scene geometry is only submitted once per frame.
+	 */
+	private void OpenGLRenderStereoScene(RetainedFrame frame, XrSwapchainImageOpenGLKHR swapchainImage, Swapchain swapchain) {
+		setupSceneProgram(frame);
+
+		GL43C.glEnable(GL43C.GL_BLEND);
+		GL43C.glBlendFuncSeparate(GL43C.GL_SRC_ALPHA, GL43C.GL_ONE_MINUS_SRC_ALPHA, GL43C.GL_ONE, GL43C.GL_ONE);
+
+		// Attaching the whole array makes the framebuffer layered, so clears cover every eye
+		if (eyeTarget != null && eyeTarget.scaling()) {
+			// each eye is upscaled into its layer of the swapchain image before its view is drawn
+			eyeTarget.bindLayered(swapchain.width, swapchain.height);
+		} else {
+			glBindFramebuffer(GL_FRAMEBUFFER, swapchainFramebuffer);
+			GL43C.glFramebufferTexture(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, swapchainImage.image(), 0);
+			GL43C.glFramebufferTexture(GL_FRAMEBUFFER, GL_DEPTH_ATTACHMENT, depthTextures.get(swapchainImage), 0);
+			glViewport(0, 0, swapchain.width, swapchain.height);
+		}
+		clearSwapchainImage();
+
+		glFrontFace(GL_CW);
+		glEnable(GL_DEPTH_TEST);
+		// the scene is culled the same as when it is drawn per eye, the geometry shader keeps the winding
+		glEnable(GL_CULL_FACE);
+		glCullFace(GL_BACK);
+
+		for (int viewIndex = 0; viewIndex < STEREO_VIEWS; viewIndex++) {
+			setEyeMatrices(views.get(viewIndex).pose(), views.get(viewIndex).fov());
+			viewMatrix.get(viewIndex * 16, stereoViewMatrices);
+			projectionMatrix.get(viewIndex * 16, stereoProjectionMatrices);
+		}
+
+		GL43C.glUniformMatrix4fv(uniProjectionMatrix, false, frame.sceneProjection);
+		GL43C.glUniformMatrix4fv(uniView, false, stereoViewMatrices);
+		GL43C.glUniformMatrix4fv(uniProjection, false, stereoProjectionMatrices);
+
+		drawSceneGeometry(frame);
+
+		glDisable(GL_CULL_FACE);
+	}
+
+	private void clearSwapchainImage() {
+		float[] DarkSlateGray = {0.184313729f, 0.309803933f, 0.309803933f};
+		glClearColor(DarkSlateGray[0], DarkSlateGray[1], DarkSlateGray[2], 1.0f);
+		glClearDepth(1.0f);
+		glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT | GL_STENCIL_BUFFER_BIT);
+	}
+
+	private static void setEyeMatrices(XrPosef pose, XrFovf fov) {
+		XrVector3f    pos         = pose.position$();
+		XrQuaternionf orientation = pose.orientation();
+
+		XRHelper.applyProjectionToMatrix(projectionMatrix.identity(), fov, 0.1f, 10000f, false);
+		viewMatrix.translationRotateScaleInvert(
+				(float) pos.x(), (float) pos.y(), (float) pos.z(),
+				orientation.x(), orientation.y(), orientation.z(), orientation.w(),
+				1, 1,1
+		);
+	}
+
+	private float[] sceneProjectionMatrix(float viewportWidth, float viewportHeight) {
+		float[] projectionMatrix2 = com.vr.Mat4.identity();
+		com.vr.Mat4.mul(projectionMatrix2, Mat4.scale(client.getScale(), client.getScale(), -1));
+		com.vr.Mat4.mul(projectionMatrix2, com.vr.Mat4.projection(viewportWidth, viewportHeight, 250));
+		com.vr.Mat4.mul(projectionMatrix2, com.vr.Mat4.rotateX((float) -(Math.PI - cameraPitch)));
+		com.vr.Mat4.mul(projectionMatrix2, com.vr.Mat4.rotateY((float) cameraYaw));
+		com.vr.Mat4.mul(projectionMatrix2, Mat4.translate((float) -cameraX, (float) -cameraY, (float) -cameraZ));
+		return projectionMatrix2;
+	}
+
+	private void drawSceneGeometry(RetainedFrame frame)
+	{
+		if (frame.zoneDrawFirst.length > 0)
+		{
+			// Tile geometry doesn't go through compute, draw the visible zone ranges directly
+			GL43C.glBindVertexArray(vaoZone);
+			GL43C.glMultiDrawArrays(GL43C.GL_TRIANGLES, frame.zoneDrawFirst, frame.zoneDrawCount);
+			GL43C.glBindVertexArray(vaoCompute);
+		}
+
+		if (frame.staticDrawFirst.length > 0)
+		{
+			// Opaque scene models were transformed once, draw the visible placements directly
+			GL43C.glBindVertexArray(vaoStatic);
+			GL43C.glMultiDrawArrays(GL43C.GL_TRIANGLES, frame.staticDrawFirst, frame.staticDrawCount);
+			GL43C.glBindVertexArray(vaoCompute);
+		}
+
+		GL43C.glDrawArrays(GL43C.GL_TRIANGLES, 0, frame.targetBufferOffset);
+	}
+
+	/**
+	 * Snapshot what the views need to draw the scene as it is now
+	 */
+	private RetainedFrame retainFrame(int sky, float brightness, GameState gameState, float viewportWidth, float viewportHeight)
+	{
+		final boolean zones = computeMode != ComputeMode.NONE && zoneDraws > 0;
+		final boolean statics = staticGeometryEnabled && staticGeometry.draws() > 0;
+		return new RetainedFrame(sky, brightness, gameState,
+			getDrawDistance(), client.getExpandedMapLoading(), client.getGameCycle(),
+			sceneProjectionMatrix(viewportWidth, viewportHeight),
+			targetBufferOffset, targetOutlineBufferOffset,
+			zoneDrawFirst.getBuffer(), zoneDrawCount.getBuffer(), zones ? zoneDraws : 0,
+			staticGeometry.drawFirst(), staticGeometry.drawCount(), statics ? staticGeometry.draws() : 0);
+	}
+
 	@Override
 	public void draw(int overlayColor)
 	{
@@ -3353,13 +4473,24 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		final int viewportHeight = client.getViewportHeight();
 		final int viewportWidth = client.getViewportWidth();
 
-		prepareInterfaceTexture(canvasWidth, canvasHeight);
-		if(client.isMenuOpen()) {
-			final int menuHeight = Math.min(lastCanvasHeight,client.getMenuHeight());
-			final int menuWidth = client.getMenuWidth();
-			prepareMenuTexture(menuWidth, menuHeight);
-		} else {
-			generateHint();
+		final InputSnapshot input = captureInput();
+		inputSnapshot = input;
+
+		beginSharedWrite();
+		try
+		{
+			prepareInterfaceTexture(canvasWidth, canvasHeight);
+			if(input.menuOpen) {
+				final int menuHeight = Math.min(lastCanvasHeight,input.menuHeight);
+				final int menuWidth = input.menuWidth;
+				prepareMenuTexture(menuWidth, menuHeight);
+			} else {
+				generateHint();
+			}
+		}
+		finally
+		{
+			endSharedWrite();
 		}
 
 		// Setup anti-aliasing
@@ -3534,7 +4665,12 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 				GL43C.glBindVertexArray(vaoTemp);
 			}*/
 
-			if(!renderFrameOpenXR(sky, (float)textureProvider.getBrightness(), gameState,overlayColor, viewportWidth, viewportHeight)) return;
+			if (decoupledRendering)
+			{
+				// the render thread draws the frame published by postDrawScene
+				retainedOverlayColor = overlayColor;
+			}
+			else if(!renderFrameOpenXR(retainFrame(sky, (float)textureProvider.getBrightness(), gameState, viewportWidth, viewportHeight), overlayColor)) return;
 
 			/*projectionMatrix = com.vr.Mat4.scale(client.getScale(), client.getScale(), 1);
 			com.vr.Mat4.mul(projectionMatrix, com.vr.Mat4.projection(viewportWidth, viewportHeight, 50));
@@ -3578,11 +4714,18 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		vertexBuffer.clear();
 		outlineVertexBuffer.clear();
 		uvBuffer.clear();
-		modelBuffer.clear();
-		modelBufferSmall.clear();
 		modelBufferUnordered.clear();
+		for (com.vr.ComputeTier tier : computeTiers)
+		{
+			tier.modelBuffer.clear();
+			tier.models = 0;
+		}
+		if (persistentBuffers)
+		{
+			advanceStreamBuffers();
+		}
 
-		smallModels = largeModels = unorderedModels = 0;
+		unorderedModels = 0;
 		tempOffset = 0;
 		tempUvOffset = 0;
 
@@ -3759,10 +4902,18 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	{
 		GL43C.glEnable(GL43C.GL_BLEND);
 		GL43C.glBlendFunc(GL43C.GL_SRC_ALPHA, GL43C.GL_ONE_MINUS_SRC_ALPHA);
-		GL43C.glBindTexture(GL43C.GL_TEXTURE_2D, interfaceTexture);
+
+		drawUiQuad(interfaceTexture, config.uiScalingMode(), overlayColor, canvasHeight, canvasWidth, viewMatrix, projectionMatrix, mapMatrix);
+
+		GL43C.glBlendFunc(GL43C.GL_SRC_ALPHA, GL43C.GL_ONE_MINUS_SRC_ALPHA);
+		GL43C.glDisable(GL43C.GL_BLEND);
+	}
+
+	private void drawUiQuad(final int texture, final UIScalingMode uiScalingMode, final int overlayColor, final int canvasHeight, final int canvasWidth, Matrix4f viewMatrix, Matrix4f projectionMatrix, Matrix4f mapMatrix)
+	{
+		GL43C.glBindTexture(GL43C.GL_TEXTURE_2D, texture);
 
 		// Use the texture bound in the first pass
-		final UIScalingMode uiScalingMode = config.uiScalingMode();
 		GL43C.glUseProgram(glUiProgram);
 		GL43C.glUniformMatrix4fv(uniUiView, false, viewMatrix.get(mvpMatrix));
 		GL43C.glUniformMatrix4fv(uniUiProjection, false, projectionMatrix.get(mvpMatrix));
@@ -3809,8 +4960,6 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		GL43C.glBindTexture(GL43C.GL_TEXTURE_2D, 0);
 		GL43C.glBindVertexArray(0);
 		GL43C.glUseProgram(0);
-		GL43C.glBlendFunc(GL43C.GL_SRC_ALPHA, GL43C.GL_ONE_MINUS_SRC_ALPHA);
-		GL43C.glDisable(GL43C.GL_BLEND);
 	}
 
 	//TODO: Move this inside the XR rendering.
@@ -3874,8 +5023,7 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 		float w = menuHeight*scale;
 		float h = menuWidth*scale;
-		float tiles = menuActor==null?0:((((menuActor.getWorldArea().getWidth()-1)/2)+
-						((menuActor.getWorldArea().getHeight()-1)/2))/2.0f);
+		float tiles = menuTiles();
 		//System.out.println(cha+" "+xpos+" "+ypos+" "+w+" "+h);
 		// update VBO for each character
 		float[] vertices = new float[]{
@@ -3967,6 +5115,12 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 		{
 			// Avoid drawing the last frame's buffer during LOADING after LOGIN_SCREEN
 			targetBufferOffset = targetOutlineBufferOffset = 0;
+			zoneFaces.clear();
+			zoneDraws = 0;
+			if (staticGeometryEnabled)
+			{
+				staticGeometry.clear();
+			}
 		}
 		if (gameStateChanged.getGameState() == GameState.STARTING)
 		{
@@ -4019,8 +5173,28 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 	Vector3f hintIntersect = new Vector3f(0.0f, 0.0f, 0.0f);
 
-	public boolean isTargetingWorld(){
-		MenuEntry[] menuEntries = client.getMenuEntries();
+	/**
+	 * Capture the client state the controller input reads, see {@link InputSnapshot}
+	 */
+	private InputSnapshot captureInput()
+	{
+		final InputSnapshot last = inputSnapshot;
+		int canvasX = last.canvasX;
+		int canvasY = last.canvasY;
+		// the location can only be read while the canvas is on screen
+		if (canvas.isShowing())
+		{
+			final java.awt.Point location = canvas.getLocationOnScreen();
+			canvasX = location.x;
+			canvasY = location.y;
+		}
+
+		final MenuEntry[] menuEntries = client.getMenuEntries();
+		return new InputSnapshot(client.isMenuOpen(), client.getMenuX(), client.getMenuY(), client.getMenuWidth(), client.getMenuHeight(),
+			menuEntries.length, isTargetingWorld(menuEntries), canvasX, canvasY, canvas.getWidth(), canvas.getHeight());
+	}
+
+	public boolean isTargetingWorld(MenuEntry[] menuEntries){
 		if (menuEntries.length == 0)
 		{
 			return false;
@@ -4241,24 +5415,81 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	@Override
 	public void loadScene(Scene scene)
 	{
-		//System.out.println("UPLOADING: "+sceneUploader.sceneId);
 		if (computeMode == ComputeMode.NONE)
 		{
 			return;
 		}
 
-		com.vr.GpuIntBuffer vertexBuffer = new com.vr.GpuIntBuffer();
-		com.vr.GpuFloatBuffer uvBuffer = new com.vr.GpuFloatBuffer();
+		discardScene(nextScene);
+		nextScene = sceneLoader.submit(() -> prepareScene(scene));
+	}
+
+	/**
+	 * Drop a scene that was superseded before it was swapped in, giving back its staging memory. A scene
+	 * still being packed is freed by the loader once it is done, the loader runs one task at a time so
+	 * this is queued behind it.
+	 */
+	private void discardScene(Future<PreparedScene> scene)
+	{
+		if (scene == null)
+		{
+			return;
+		}
+
+		if (scene.isDone())
+		{
+			freePreparedScene(scene);
+		}
+		else
+		{
+			sceneLoader.submit(() -> freePreparedScene(scene));
+		}
+	}
+
+	private static void freePreparedScene(Future<PreparedScene> scene)
+	{
+		try
+		{
+			scene.get().free();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException | CancellationException ex)
+		{
+			// nothing was packed
+		}
+	}
 
-		sceneUploader.upload(scene, vertexBuffer, uvBuffer);
+	private PreparedScene prepareScene(Scene scene)
+	{
+		com.vr.GpuIntBuffer vertexBuffer = new com.vr.GpuIntBuffer(packedVertices);
+		com.vr.GpuFloatBuffer uvBuffer = new com.vr.GpuFloatBuffer(packedVertices);
+		com.vr.GpuIntBuffer indexBuffer = indexedScene ? new com.vr.GpuIntBuffer() : null;
+		com.vr.GpuIntBuffer zoneVertexBuffer = null;
+		com.vr.GpuFloatBuffer zoneUvBuffer = null;
+		int[] zoneMerges = null;
+
+		SceneUploader.Upload upload = sceneUploader.upload(scene, vertexBuffer, uvBuffer, indexBuffer, zoneGeometry);
+		if (zoneGeometry)
+		{
+			zoneVertexBuffer = new com.vr.GpuIntBuffer();
+			zoneUvBuffer = new com.vr.GpuFloatBuffer();
+			zoneMerges = sceneUploader.uploadZones(scene, zoneVertexBuffer, zoneUvBuffer, config.simplifyTerrain());
+			zoneVertexBuffer.flip();
+			zoneUvBuffer.flip();
+		}
 
 		vertexBuffer.flip();
 		uvBuffer.flip();
+		if (indexBuffer != null)
+		{
+			indexBuffer.flip();
+		}
 
-		nextSceneVertexBuffer = vertexBuffer;
-		nextSceneTexBuffer = uvBuffer;
-		nextSceneId = sceneUploader.sceneId;
-		//System.out.println("UPLOADED: "+sceneUploader.sceneId);
+		return new PreparedScene(scene, upload.sceneId, vertexBuffer, uvBuffer, indexBuffer,
+			zoneVertexBuffer, zoneUvBuffer, zoneMerges, upload.lodTable, upload.unorderedOffsets);
 	}
 
 	private void uploadTileHeights(Scene scene)
@@ -4311,11 +5542,45 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	@Override
 	public void swapScene(Scene scene)
 	{
-		if (computeMode == ComputeMode.NONE)
+		if (computeMode == ComputeMode.NONE || nextScene == null)
+		{
+			return;
+		}
+
+		discardScene(pendingSceneGeometry);
+		pendingScene = scene;
+		pendingSceneGeometry = nextScene;
+		nextScene = null;
+
+		swapPendingScene();
+	}
+
+	/**
+	 * Hand the pending scene to GL once its geometry has been packed. Until then the previous
+	 * scene buffer stays bound, and the new scene is drawn from the temporary buffers.
+	 */
+	private void swapPendingScene()
+	{
+		if (pendingSceneGeometry == null || !pendingSceneGeometry.isDone())
 		{
 			return;
 		}
 
+		Scene scene = pendingScene;
+		PreparedScene prepared;
+		try
+		{
+			prepared = pendingSceneGeometry.get();
+		}
+		catch (InterruptedException | ExecutionException ex)
+		{
+			log.warn("Error preparing scene off thread, uploading on the client thread", ex);
+			prepared = prepareScene(scene);
+		}
+
+		pendingScene = null;
+		pendingSceneGeometry = null;
+
 		if (computeMode == ComputeMode.OPENCL)
 		{
 			openCLManager.uploadTileHeights(scene);
@@ -4326,17 +5591,52 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 			uploadTileHeights(scene);
 		}
 
-		sceneId = nextSceneId;
-		updateBuffer(sceneVertexBuffer, GL43C.GL_ARRAY_BUFFER, nextSceneVertexBuffer.getBuffer(), GL43C.GL_STATIC_COPY, CL12.CL_MEM_READ_ONLY);
-		updateBuffer(sceneUvBuffer, GL43C.GL_ARRAY_BUFFER, nextSceneTexBuffer.getBuffer(), GL43C.GL_STATIC_COPY, CL12.CL_MEM_READ_ONLY);
+		sceneId = prepared.sceneId;
+		lodTable = prepared.lodTable;
+		unorderedOffsets = prepared.unorderedOffsets;
+		if (staticGeometryEnabled)
+		{
+			// placements were transformed from the old scene buffers
+			staticGeometry.clear();
+		}
+		updateBuffer(sceneVertexBuffer, GL43C.GL_ARRAY_BUFFER, prepared.vertexBuffer.getBuffer(), GL43C.GL_STATIC_COPY, CL12.CL_MEM_READ_ONLY);
+		updateBuffer(sceneUvBuffer, GL43C.GL_ARRAY_BUFFER, prepared.uvBuffer.getBuffer(), GL43C.GL_STATIC_COPY, CL12.CL_MEM_READ_ONLY);
+		if (prepared.indexBuffer != null)
+		{
+			updateBuffer(sceneIndexBuffer, GL43C.GL_ARRAY_BUFFER, prepared.indexBuffer.getBuffer(), GL43C.GL_STATIC_COPY, CL12.CL_MEM_READ_ONLY);
+		}
+		if (prepared.zoneVertexBuffer != null)
+		{
+			beginSharedWrite();
+			try
+			{
+				// the retained zone ranges are into the old scene
+				retainedFrame = null;
+				// only drawn, never read by compute
+				updateBuffer(sceneZoneVertexBuffer, GL43C.GL_ARRAY_BUFFER, prepared.zoneVertexBuffer.getBuffer(), GL43C.GL_STATIC_DRAW, 0L);
+				updateBuffer(sceneZoneUvBuffer, GL43C.GL_ARRAY_BUFFER, prepared.zoneUvBuffer.getBuffer(), GL43C.GL_STATIC_DRAW, 0L);
+			}
+			finally
+			{
+				endSharedWrite();
+			}
+			zoneMerges = prepared.zoneMerges;
+		}
 
-		nextSceneVertexBuffer = null;
-		nextSceneTexBuffer = null;
-		nextSceneId = -1;
+		prepared.free();
+		com.vr.OffHeapArena.trim();
 
 		checkGLErrors();
 	}
 
+	/**
+	 * Whether scene geometry is being packed, in which case model buffer offsets may be in flux
+	 */
+	private boolean isSceneLoading()
+	{
+		return nextScene != null || pendingSceneGeometry != null;
+	}
+
 	@Override
 	public boolean tileInFrustum(Scene scene, float pitchSin, float pitchCos, float yawSin, float yawCos, int cameraX, int cameraY, int cameraZ, int plane, int msx, int msy)
 	{
@@ -4431,12 +5731,7 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 	@Override
 	public void draw(Projection projection, Scene scene, Renderable renderable, int orientation, int x, int y, int z, long hash)
 	{
-		if(!foundHoverRender) {
-			renderMouseover(projection, orientation, x, y, z, renderable);
-		}
-		if(!foundInteractRender) {
-			renderTarget(projection, orientation, x, y, z, renderable);
-		}
+		renderFrameTargets(projection, orientation, x, y, z, renderable);
 
 		Model model, offsetModel;
 		if (renderable instanceof Model)
@@ -4483,14 +5778,14 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 			client.checkClickbox(projection, model, orientation, x, y, z, hash);
 
-			targetBufferOffset += sceneUploader.pushSortedModel(
+			targetBufferOffset += faceSortQueue.queue(
 					projection,
 					model, orientation,
 					x, y, z,
 					vertexBuffer, uvBuffer);
 		}
 		// Model may be in the scene buffer
-		else if (offsetModel.getSceneId() == sceneId)
+		else if (!isSceneLoading() && offsetModel.getSceneId() == sceneId)
 		{
 			assert model == renderable;
 
@@ -4511,23 +5806,42 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 			client.checkClickbox(projection, model, orientation, x, y, z, hash);
 
-			int tc = Math.min(MAX_TRIANGLE, offsetModel.getFaceCount());
+			int tc = offsetModel.getFaceCount();
+			int bufferOffset = offsetModel.getBufferOffset();
+			boolean unordered = unorderedModelsEnabled && Arrays.binarySearch(unorderedOffsets, bufferOffset) >= 0;
 			int uvOffset = offsetModel.getUvBufferOffset();
 			int plane = (int) ((hash >> TileObject.HASH_PLANE_SHIFT) & 3);
 			boolean hillskew = offsetModel != model;
+			// the faces of simplified meshes don't line up with the model's
+			Model chunkModel = offsetModel;
 
-			GpuIntBuffer b = bufferForTriangles(tc);
+			int lod = lodTable.size() > 0 ? lodTable.find(bufferOffset) : -1;
+			if (lod != -1)
+			{
+				final double dx = x - cameraX;
+				final double dz = z - cameraZ;
+				final double distanceSq = dx * dx + dz * dz;
+				for (int level = lodTable.levels() - 1; level >= 0; --level)
+				{
+					if (distanceSq > lodDistancesSq[level] && lodTable.faces(lod, level) > 0)
+					{
+						tc = lodTable.faces(lod, level);
+						bufferOffset = lodTable.offset(lod, level);
+						uvOffset = lodTable.uvOffset(lod, level);
+						chunkModel = null;
+						break;
+					}
+				}
+			}
 
-			b.ensureCapacity(8);
-			IntBuffer buffer = b.getBuffer();
-			buffer.put(offsetModel.getBufferOffset());
-			buffer.put(uvOffset);
-			buffer.put(tc);
-			buffer.put(targetBufferOffset);
-			buffer.put(FLAG_SCENE_BUFFER | (hillskew ? (1 << 26) : 0) | (plane << 24) | orientation);
-			buffer.put(x).put(y).put(z);
+			int flags = FLAG_SCENE_BUFFER | (hillskew ? (1 << 26) : 0) | (plane << 24) | orientation;
+			// only models whose faces are all drawn without holes can keep the order they are baked in
+			if (unordered && staticGeometryEnabled && staticGeometry.draw(bufferOffset, uvOffset, tc, flags, x, y, z))
+			{
+				return;
+			}
 
-			targetBufferOffset += tc * 3;
+			pushModelInfo(chunkModel, bufferOffset, uvOffset, tc, flags, orientation, x, y, z, unordered);
 		}
 		else
 		{
@@ -4558,47 +5872,147 @@ public class VRPlugin extends Plugin implements DrawCallbacks
 
 			boolean hasUv = model.getFaceTextures() != null;
 
-			int len = sceneUploader.pushModel(model, vertexBuffer, uvBuffer);
+			int cacheOffset = modelCacheEnabled ? modelCache.get(model) : -1;
+			if (cacheOffset != -1)
+			{
+				// classified when the model was last uploaded to the cache
+				boolean unordered = unorderedModelsEnabled && modelCache.isUnordered(model);
+				pushModelInfo(model, cacheOffset, hasUv ? cacheOffset : -1, model.getFaceCount(),
+					FLAG_MODEL_CACHE | orientation, orientation, x, y, z, unordered);
+				return;
+			}
 
-			GpuIntBuffer b = bufferForTriangles(len / 3);
+			// classified on every push, animations change the transparencies of shared models in place.
+			// The scan is no more than pushModel already does for the same faces.
+			boolean unordered = unorderedModelsEnabled && SceneUploader.isUnordered(model);
 
-			b.ensureCapacity(8);
-			IntBuffer buffer = b.getBuffer();
-			buffer.put(tempOffset);
-			buffer.put(hasUv ? tempUvOffset : -1);
-			buffer.put(len / 3);
-			buffer.put(targetBufferOffset);
-			buffer.put(orientation);
-			buffer.put(x).put(y).put(z);
+			int len = sceneUploader.pushModel(model, vertexBuffer, uvBuffer);
+
+			pushModelInfo(model, tempOffset, hasUv ? tempUvOffset : -1, len / 3,
+				orientation, orientation, x, y, z, unordered);
 
 			tempOffset += len;
 			if (hasUv)
 			{
 				tempUvOffset += len;
 			}
+		}
+	}
+
+	/**
+	 * Queue a model for the compute programs and reserve its faces in the target buffer. Models with more
+	 * faces than the largest sorting program holds are split into chunks of up to {@link #MAX_TRIANGLE}
+	 * faces which are each sorted on their own, laid out back to front by the centre of their faces.
+	 *
+	 * @param model the model the faces come from, used to order the chunks, or null to keep them in order
+	 */
+	private void pushModelInfo(@Nullable Model model, int offset, int uvOffset, int faces, int flags,
+		int orientation, int x, int y, int z, boolean unordered)
+	{
+		if (unordered || faces <= MAX_TRIANGLE)
+		{
+			// the unordered program loops over any number of faces
+			pushModelInfo(bufferForTriangles(faces, unordered), offset, uvOffset, faces, flags, x, y, z);
+			return;
+		}
+
+		final int chunks = (faces + MAX_TRIANGLE - 1) / MAX_TRIANGLE;
+		orderChunks(model, chunks, orientation, x, y, z);
+		for (int i = 0; i < chunks; ++i)
+		{
+			final int start = (int) chunkOrder[i] * MAX_TRIANGLE;
+			final int count = Math.min(MAX_TRIANGLE, faces - start);
+			pushModelInfo(bufferForTriangles(count, false), offset + start * 3, uvOffset < 0 ? -1 : uvOffset + start * 3,
+				count, flags, x, y, z);
+		}
+	}
+
+	private void pushModelInfo(com.vr.GpuIntBuffer b, int offset, int uvOffset, int faces, int flags, int x, int y, int z)
+	{
+		b.ensureCapacity(8);
+		IntBuffer buffer = b.getBuffer();
+		buffer.put(offset);
+		buffer.put(uvOffset);
+		buffer.put(faces);
+		buffer.put(targetBufferOffset);
+		buffer.put(flags);
+		buffer.put(x).put(y).put(z);
+
+		targetBufferOffset += faces * 3;
+	}
+
+	/**
+	 * Fill {@link #chunkOrder} with the chunks of a model, farthest from the camera first. Each chunk is
+	 * placed by the average of the first vertex of its faces, which is only a coarse order, faces of
+	 * different chunks which overlap each other can still be drawn in the wrong order.
+	 */
+	private void orderChunks(@Nullable Model model, int chunks, int orientation, int x, int y, int z)
+	{
+		if (chunkOrder.length < chunks)
+		{
+			chunkOrder = new long[chunks];
+		}
+
+		if (model == null)
+		{
+			for (int chunk = 0; chunk < chunks; ++chunk)
+			{
+				chunkOrder[chunk] = chunk;
+			}
+			return;
+		}
+
+		final float[] verticesX = model.getVerticesX();
+		final float[] verticesY = model.getVerticesY();
+		final float[] verticesZ = model.getVerticesZ();
+		final int[] indices1 = model.getFaceIndices1();
+		final int faceCount = model.getFaceCount();
+		final int sin = Perspective.SINE[orientation];
+		final int cos = Perspective.COSINE[orientation];
+
+		for (int chunk = 0; chunk < chunks; ++chunk)
+		{
+			final int start = chunk * MAX_TRIANGLE;
+			final int end = Math.min(faceCount, start + MAX_TRIANGLE);
+			double sx = 0, sy = 0, sz = 0;
+			for (int face = start; face < end; ++face)
+			{
+				final int v = indices1[face];
+				sx += verticesX[v];
+				sy += verticesY[v];
+				sz += verticesZ[v];
+			}
 
-			targetBufferOffset += len;
+			final int n = Math.max(1, end - start);
+			final double cx = sx / n, cy = sy / n, cz = sz / n;
+			final double dx = x + (cz * sin + cx * cos) / 65536 - cameraX;
+			final double dy = y + cy - cameraY;
+			final double dz = z + (cz * cos - cx * sin) / 65536 - cameraZ;
+			final long distance = (long) Math.sqrt(dx * dx + dy * dy + dz * dz);
+			// negated so the farthest chunk sorts first
+			chunkOrder[chunk] = (-distance << 32) | chunk;
 		}
+		Arrays.sort(chunkOrder, 0, chunks);
 	}
 
 	/**
 	 * returns the correct buffer based on triangle count and updates model count
 	 *
 	 * @param triangles
+	 * @param unordered whether the model's faces need no sorting
 	 * @return
 	 */
-	private com.vr.GpuIntBuffer bufferForTriangles(int triangles)
+	private com.vr.GpuIntBuffer bufferForTriangles(int triangles, boolean unordered)
 	{
-		if (triangles <= SMALL_TRIANGLE_COUNT)
-		{
-			++smallModels;
-			return modelBufferSmall;
-		}
-		else
+		if (unordered)
 		{
-			++largeModels;
-			return modelBuffer;
+			++unorderedModels;
+			return modelBufferUnordered;
 		}
+
+		com.vr.ComputeTier tier = com.vr.ComputeTier.forTriangles(computeTiers, triangles);
+		++tier.models;
+		return tier.modelBuffer;
 	}
 
 	private int getScaledValue(final double scale, final int value)
@@ -218,4 +218,254 @@ public interface VRPluginConfig extends Config
 	{
 		return 60;
 	}
+
+	@ConfigItem(
+		keyName = "parallelSceneUpload",
+		name = "Parallel scene upload",
+		description = "Pack scene geometry on multiple threads when loading a new map area",
+		position = 13
+	)
+	default boolean parallelSceneUpload()
+	{
+		return true;
+	}
+
+	@Range(
+		max = 4096
+	)
+	@ConfigItem(
+		keyName = "sceneCacheSize",
+		name = "Scene cache size",
+		description = "Disk space in MB for caching packed scene geometry between visits. 0 disables the cache.",
+		position = 14
+	)
+	default int sceneCacheSize()
+	{
+		return 256;
+	}
+
+	@ConfigItem(
+		keyName = "packedVertices",
+		name = "Packed vertices",
+		description = "Store scene and model geometry in a compact 16-bit format to reduce GPU memory bandwidth. Requires compute shaders and a plugin restart.",
+		position = 15
+	)
+	default boolean packedVertices()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		keyName = "indexedSceneGeometry",
+		name = "Indexed scene geometry",
+		description = "Store each distinct scene vertex once and reference it by index, reducing GPU memory for the scene. Requires compute shaders and a plugin restart.",
+		position = 16
+	)
+	default boolean indexedSceneGeometry()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		keyName = "zoneTileGeometry",
+		name = "Zone tile geometry",
+		description = "Draw ground tiles from world space zone buffers with a single multi-draw, instead of positioning each tile with compute every frame. Requires compute shaders and a plugin restart.",
+		position = 17
+	)
+	default boolean zoneTileGeometry()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		keyName = "simplifyTerrain",
+		name = "Simplify terrain",
+		description = "Merge flat, single colour ground tiles into larger rectangles to reduce the triangle count. Requires zone tile geometry, takes effect on the next scene load.",
+		position = 18
+	)
+	default boolean simplifyTerrain()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		keyName = "modelLods",
+		name = "Model LODs",
+		description = "Generate simplified meshes of static models when a scene loads, and draw them at a distance. Takes effect on the next scene load.",
+		position = 19
+	)
+	default boolean modelLods()
+	{
+		return false;
+	}
+
+	@Range(
+		max = MAX_DISTANCE
+	)
+	@ConfigItem(
+		keyName = "lodDistance",
+		name = "LOD distance",
+		description = "Distance in tiles beyond which models are drawn with half of their faces",
+		position = 20
+	)
+	default int lodDistance()
+	{
+		return 40;
+	}
+
+	@Range(
+		max = MAX_DISTANCE
+	)
+	@ConfigItem(
+		keyName = "lodDistance2",
+		name = "Far LOD distance",
+		description = "Distance in tiles beyond which models are drawn with a quarter of their faces",
+		position = 21
+	)
+	default int lodDistance2()
+	{
+		return 70;
+	}
+
+	@Range(
+		max = 256
+	)
+	@ConfigItem(
+		keyName = "modelCacheSize",
+		name = "Model cache size (MB)",
+		description = "GPU memory used to keep animated and moving models resident between frames, 0 to disable. Requires compute shaders",
+		position = 22
+	)
+	default int modelCacheSize()
+	{
+		return 32;
+	}
+
+	@ConfigItem(
+		keyName = "persistentBuffers",
+		name = "Persistent mapped buffers",
+		description = "Write per frame geometry straight into gpu memory instead of uploading it. Requires compute shaders and OpenGL 4.4",
+		position = 23
+	)
+	default boolean persistentBuffers()
+	{
+		return true;
+	}
+
+	@ConfigItem(
+		keyName = "parallelFaceSorting",
+		name = "Parallel face sorting",
+		description = "Sort model faces on multiple threads when compute shaders are off",
+		position = 24
+	)
+	default boolean parallelFaceSorting()
+	{
+		return true;
+	}
+
+	@ConfigItem(
+		keyName = "faceOrderCache",
+		name = "Reuse face order",
+		description = "Reuse the face order of models from previous frames while the camera barely moves, when compute shaders are off",
+		position = 25
+	)
+	default boolean faceOrderCache()
+	{
+		return true;
+	}
+
+	@ConfigItem(
+		keyName = "computeTiers",
+		name = "Compute tiers",
+		description = "Comma separated face counts of the model size buckets sorted by the compute shaders. Requires a restart",
+		position = 26
+	)
+	default String computeTiers()
+	{
+		return ComputeTier.DEFAULT_TIERS;
+	}
+
+	@ConfigItem(
+		keyName = "skipOpaqueSorting",
+		name = "Skip sorting opaque models",
+		description = "Draw the faces of untextured models without transparency and with a single render priority in any order. Requires compute shaders",
+		position = 27
+	)
+	default boolean skipOpaqueSorting()
+	{
+		return false;
+	}
+
+	@Range(
+		max = 256
+	)
+	@ConfigItem(
+		keyName = "staticGeometrySize",
+		name = "Static geometry size (MB)",
+		description = "GPU memory for opaque, untextured scene models transformed once instead of every frame, 0 to disable. Requires skipping opaque sorting",
+		position = 28
+	)
+	default int staticGeometrySize()
+	{
+		return 0;
+	}
+
+	@ConfigItem(
+		keyName = "singlePassStereo",
+		name = "Single pass stereo",
+		description = "Draw the scene for both eyes in one pass into a layered swapchain. Requires OpenGL 4.0 and a restart",
+		position = 29
+	)
+	default boolean singlePassStereo()
+	{
+		return true;
+	}
+
+	@ConfigItem(
+		keyName = "decoupledRendering",
+		name = "Decouple headset frame rate",
+		description = "Draw the headset from its own thread at its refresh rate, reusing the last client frame with new head poses. Requires compute shaders and a restart",
+		position = 30
+	)
+	default boolean decoupledRendering()
+	{
+		return false;
+	}
+
+	@ConfigItem(
+		keyName = "dynamicResolution",
+		name = "Dynamic resolution",
+		description = "Draw the scene at a lower resolution and upscale it when the GPU can't keep up with the headset. Requires a restart",
+		position = 31
+	)
+	default boolean dynamicResolution()
+	{
+		return false;
+	}
+
+	@Range(
+		min = 50,
+		max = 100
+	)
+	@ConfigItem(
+		keyName = "minimumResolutionScale",
+		name = "Minimum resolution (%)",
+		description = "The lowest resolution dynamic resolution draws the scene at, as a percentage of the headset's recommended resolution. Requires a restart",
+		position = 32
+	)
+	default int minimumResolutionScale()
+	{
+		return 70;
+	}
+
+	@ConfigItem(
+		keyName = "quadLayers",
+		name = "Interface as quad layers",
+		description = "Submit the interface panel and menus to the headset as their own layers, which are sharper and only redrawn when they change. They are then always shown in front of the hands. Requires a restart",
+		position = 33
+	)
+	default boolean quadLayers()
+	{
+		return false;
+	}
 }
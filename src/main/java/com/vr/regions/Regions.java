@@ -51,10 +51,14 @@ public class Regions
 	@Getter(AccessLevel.PACKAGE)
 	private final List<Region> regions = new ArrayList<>();
 
-	private static final int REGION_MAP_SIZE = 70 * 200 / 8;
-	private final byte[] regionMap = new byte[REGION_MAP_SIZE];
-
-	private Region last;
+	/*
+	 * Region id + 1 of each chunk, or 0 if the chunk isn't in a region. Stored as an 8x8 block of
+	 * chunks per map region, indexed by rx * regionsY + ry, with blocks only allocated for regions
+	 * that have chunks in the file.
+	 */
+	private short[][] chunkIds;
+	private int regionsX;
+	private int regionsY;
 
 	public Regions(InputStream is, String filename) throws IOException
 	{
@@ -143,68 +147,75 @@ public class Regions
 						r.cx2 = cx2;
 						r.cy2 = cy2;
 						regions.add(r);
-
-						// mark the affected regions as in uses
-						for (int rx = rx1; rx <= rx2; ++rx)
-						{
-							for (int ry = ry1; ry <= ry2; ++ry)
-							{
-								markRegion(rx, ry);
-							}
-						}
 				}
 			}
 		}
+
+		buildIndex();
 	}
 
-	public int getRegionId(int cx, int cy)
+	private void buildIndex()
 	{
-		int rx = cx / 8;
-		int ry = cy / 8;
-		if (!isMarked(rx, ry))
+		int maxCx = 0, maxCy = 0;
+		for (Region r : regions)
 		{
-			return 0;
+			if (r.id + 1 > Short.MAX_VALUE)
+			{
+				throw new IllegalArgumentException("Too many regions");
+			}
+			maxCx = Math.max(maxCx, r.cx2);
+			maxCy = Math.max(maxCy, r.cy2);
 		}
 
-		if (last != null && intersects(cx, cy, last))
-		{
-			return last.id;
-		}
+		regionsX = maxCx / 8 + 1;
+		regionsY = maxCy / 8 + 1;
+		chunkIds = new short[regionsX * regionsY][];
 
+		// regions earlier in the file take precedence
 		for (Region r : regions)
 		{
-			if (intersects(cx, cy, r))
+			for (int cx = Math.max(0, r.cx1); cx <= r.cx2; ++cx)
 			{
-				last = r;
-				return r.id;
+				for (int cy = Math.max(0, r.cy1); cy <= r.cy2; ++cy)
+				{
+					int block = (cx / 8) * regionsY + cy / 8;
+					short[] ids = chunkIds[block];
+					if (ids == null)
+					{
+						ids = chunkIds[block] = new short[64];
+					}
+
+					int idx = (cx % 8) * 8 + cy % 8;
+					if (ids[idx] == 0)
+					{
+						ids[idx] = (short) (r.id + 1);
+					}
+				}
 			}
 		}
-		return 0;
 	}
 
-	private static boolean intersects(int cx, int cy, Region r)
+	public int getRegionId(int cx, int cy)
 	{
-		return cx >= r.cx1 && cy >= r.cy1 && cx <= r.cx2 && cy <= r.cy2;
-	}
+		if (cx < 0 || cy < 0)
+		{
+			return 0;
+		}
 
-	private void markRegion(int rx, int ry)
-	{
-		int id = (rx << 8) | ry;
-		int idx = id / 8;
-		if (idx < regionMap.length)
+		int rx = cx / 8;
+		int ry = cy / 8;
+		if (rx >= regionsX || ry >= regionsY)
 		{
-			regionMap[idx] |= 1 << (idx % 8);
+			return 0;
 		}
-	}
 
-	private boolean isMarked(int rx, int ry)
-	{
-		int id = (rx << 8) | ry;
-		int idx = id / 8;
-		if (idx < regionMap.length)
+		short[] ids = chunkIds[rx * regionsY + ry];
+		if (ids == null)
 		{
-			return (regionMap[idx] & (1 << (idx % 8))) != 0;
+			return 0;
 		}
-		return true;
+
+		int id = ids[(cx % 8) * 8 + cy % 8];
+		return id > 0 ? id - 1 : 0;
 	}
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class ComputeTierTest
+{
+	@Test
+	public void testCreate()
+	{
+		ComputeTier[] tiers = ComputeTier.create(" 512,128, ,abc,0,-4,99999,512");
+		assertEquals(3, tiers.length);
+		assertEquals(128, tiers[0].size);
+		assertEquals(512, tiers[1].size);
+		assertEquals(VRPlugin.MAX_TRIANGLE, tiers[2].size);
+	}
+
+	@Test
+	public void testCreateAlwaysHasLargestTier()
+	{
+		ComputeTier[] tiers = ComputeTier.create("");
+		assertEquals(1, tiers.length);
+		assertEquals(VRPlugin.MAX_TRIANGLE, tiers[0].size);
+
+		tiers = ComputeTier.create(String.valueOf(VRPlugin.MAX_TRIANGLE));
+		assertEquals(1, tiers.length);
+	}
+
+	@Test
+	public void testThreads()
+	{
+		ComputeTier[] tiers = ComputeTier.create("100,1024,1500");
+		assertEquals(100, tiers[0].threadCount);
+		assertEquals(1, tiers[0].facesPerThread);
+		assertEquals(1024, tiers[1].threadCount);
+		assertEquals(1, tiers[1].facesPerThread);
+		assertEquals(1024, tiers[2].threadCount);
+		assertEquals(2, tiers[2].facesPerThread);
+		assertEquals(1024, tiers[3].threadCount);
+		assertEquals(VRPlugin.MAX_TRIANGLE / 1024, tiers[3].facesPerThread);
+	}
+
+	@Test
+	public void testForTriangles()
+	{
+		ComputeTier[] tiers = ComputeTier.create(ComputeTier.DEFAULT_TIERS);
+		assertSame(tiers[0], ComputeTier.forTriangles(tiers, 1));
+		assertSame(tiers[0], ComputeTier.forTriangles(tiers, 128));
+		assertSame(tiers[1], ComputeTier.forTriangles(tiers, 129));
+		assertSame(tiers[tiers.length - 1], ComputeTier.forTriangles(tiers, VRPlugin.MAX_TRIANGLE));
+		assertSame(tiers[tiers.length - 1], ComputeTier.forTriangles(tiers, VRPlugin.MAX_TRIANGLE + 1));
+	}
+}
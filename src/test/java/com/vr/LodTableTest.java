@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class LodTableTest
+{
+	@Test
+	public void testFind()
+	{
+		LodTable table = new LodTable(new int[]{0, 300, 900}, new int[18], 2);
+		assertEquals(3, table.size());
+		assertEquals(0, table.find(0));
+		assertEquals(1, table.find(300));
+		assertEquals(2, table.find(900));
+		assertEquals(-1, table.find(301));
+		assertEquals(-1, table.find(-1));
+		assertEquals(-1, table.find(1000));
+	}
+
+	@Test
+	public void testLevels()
+	{
+		LodTable table = new LodTable(new int[]{0, 300}, new int[]{
+			1000, 2000, 50, // model 0, level 0
+			1150, 2150, 0, // model 0, level 1, not kept
+			1300, 2300, 40, // model 1, level 0
+			1420, 2420, 20, // model 1, level 1
+		}, 2);
+		assertEquals(2, table.levels());
+		assertEquals(1000, table.offset(0, 0));
+		assertEquals(2000, table.uvOffset(0, 0));
+		assertEquals(50, table.faces(0, 0));
+		assertEquals(0, table.faces(0, 1));
+		assertEquals(1420, table.offset(1, 1));
+		assertEquals(2420, table.uvOffset(1, 1));
+		assertEquals(20, table.faces(1, 1));
+	}
+
+	@Test
+	public void testEmpty()
+	{
+		assertEquals(0, LodTable.EMPTY.size());
+		assertEquals(-1, LodTable.EMPTY.find(0));
+	}
+}
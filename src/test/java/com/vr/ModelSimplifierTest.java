@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import net.runelite.api.Model;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class ModelSimplifierTest
+{
+	// vertices along each side of the grid
+	private static final int N = 5;
+	private static final int FACES = (N - 1) * (N - 1) * 2;
+
+	@Test
+	public void testFlatGrid()
+	{
+		Model model = grid(new int[FACES], null);
+		int[][] remaps = ModelSimplifier.simplify(model, new float[]{0.5f, 0.25f});
+		assertEquals(2, remaps.length);
+
+		for (int[] remap : remaps)
+		{
+			assertEquals(N * N, remap.length);
+			for (int v = 0; v < remap.length; ++v)
+			{
+				// collapses are resolved to the final vertex
+				assertEquals(remap[v], remap[remap[v]]);
+				if (border(v))
+				{
+					assertEquals(v, remap[v]);
+				}
+			}
+		}
+
+		// the interior is flat and free to collapse, down to the triangulation of the locked border
+		assertEquals(FACES / 2, faces(model, remaps[0]));
+		assertEquals((N - 1) * 4 - 2, faces(model, remaps[1]));
+	}
+
+	@Test
+	public void testColourBorder()
+	{
+		int[] colors = new int[FACES];
+		for (int face = 0; face < FACES; ++face)
+		{
+			// the left and right half of the grid
+			int column = (face / 2) % (N - 1);
+			colors[face] = column < (N - 1) / 2 ? 0 : 20 << 7;
+		}
+
+		Model model = grid(colors, null);
+		int[] remap = ModelSimplifier.simplify(model, new float[]{0.25f})[0];
+		for (int v = 0; v < N * N; ++v)
+		{
+			if (v % N == (N - 1) / 2)
+			{
+				assertEquals(v, remap[v]);
+			}
+		}
+	}
+
+	@Test
+	public void testTextured()
+	{
+		short[] textures = new short[FACES];
+		Model model = grid(new int[FACES], textures);
+		int[] remap = ModelSimplifier.simplify(model, new float[]{0.25f})[0];
+		assertArrayEquals(identity(), remap);
+	}
+
+	private static boolean border(int v)
+	{
+		int x = v % N;
+		int z = v / N;
+		return x == 0 || z == 0 || x == N - 1 || z == N - 1;
+	}
+
+	private static int[] identity()
+	{
+		int[] identity = new int[N * N];
+		for (int v = 0; v < identity.length; ++v)
+		{
+			identity[v] = v;
+		}
+		return identity;
+	}
+
+	/**
+	 * Count the faces which still have three distinct corners
+	 */
+	private static int faces(Model model, int[] remap)
+	{
+		int faces = 0;
+		for (int face = 0; face < model.getFaceCount(); ++face)
+		{
+			int a = remap[model.getFaceIndices1()[face]];
+			int b = remap[model.getFaceIndices2()[face]];
+			int c = remap[model.getFaceIndices3()[face]];
+			if (a != b && b != c && a != c)
+			{
+				++faces;
+			}
+		}
+		return faces;
+	}
+
+	/**
+	 * A flat square grid of N by N vertices on the ground plane
+	 */
+	private static Model grid(int[] colors, short[] textures)
+	{
+		float[] x = new float[N * N];
+		float[] y = new float[N * N];
+		float[] z = new float[N * N];
+		for (int v = 0; v < N * N; ++v)
+		{
+			x[v] = (v % N) * 128;
+			z[v] = (v / N) * 128;
+		}
+
+		int[] indices1 = new int[FACES];
+		int[] indices2 = new int[FACES];
+		int[] indices3 = new int[FACES];
+		int face = 0;
+		for (int row = 0; row < N - 1; ++row)
+		{
+			for (int column = 0; column < N - 1; ++column)
+			{
+				int a = row * N + column;
+				int b = a + 1;
+				int c = a + N;
+				int d = c + 1;
+				indices1[face] = a;
+				indices2[face] = c;
+				indices3[face++] = b;
+				indices1[face] = b;
+				indices2[face] = c;
+				indices3[face++] = d;
+			}
+		}
+
+		Map<String, Object> values = new HashMap<>();
+		values.put("getVerticesCount", N * N);
+		values.put("getFaceCount", FACES);
+		values.put("getVerticesX", x);
+		values.put("getVerticesY", y);
+		values.put("getVerticesZ", z);
+		values.put("getFaceIndices1", indices1);
+		values.put("getFaceIndices2", indices2);
+		values.put("getFaceIndices3", indices3);
+		values.put("getFaceColors1", colors);
+		values.put("getFaceColors2", colors);
+		values.put("getFaceColors3", Arrays.copyOf(colors, colors.length));
+		values.put("getFaceTextures", textures);
+		return (Model) Proxy.newProxyInstance(Model.class.getClassLoader(), new Class<?>[]{Model.class},
+			(proxy, method, args) ->
+			{
+				if (values.containsKey(method.getName()))
+				{
+					return values.get(method.getName());
+				}
+				Class<?> type = method.getReturnType();
+				// the default value of the return type
+				return type.isPrimitive() && type != void.class ? Array.get(Array.newInstance(type, 1), 0) : null;
+			});
+	}
+}
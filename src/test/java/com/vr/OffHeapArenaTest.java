@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class OffHeapArenaTest
+{
+	@Test
+	public void testSizeClasses()
+	{
+		ByteBuffer small = OffHeapArena.allocate(1);
+		ByteBuffer exact = OffHeapArena.allocate(1 << 16);
+		ByteBuffer over = OffHeapArena.allocate((1 << 16) + 1);
+		try
+		{
+			assertEquals(4096, small.capacity());
+			assertEquals(1 << 16, exact.capacity());
+			assertEquals(1 << 17, over.capacity());
+			assertEquals(ByteOrder.nativeOrder(), exact.order());
+			assertEquals(0, exact.position());
+			assertEquals(exact.capacity(), exact.limit());
+		}
+		finally
+		{
+			OffHeapArena.free(small);
+			OffHeapArena.free(exact);
+			OffHeapArena.free(over);
+		}
+	}
+
+	@Test
+	public void testReuse()
+	{
+		ByteBuffer block = OffHeapArena.allocate(100_000);
+		block.position(10);
+		OffHeapArena.free(block);
+
+		ByteBuffer again = OffHeapArena.allocate(70_000);
+		try
+		{
+			assertSame(block, again);
+			assertEquals(0, again.position());
+		}
+		finally
+		{
+			OffHeapArena.free(again);
+		}
+	}
+
+	@Test
+	public void testAccounting()
+	{
+		final long live = OffHeapArena.liveBytes();
+		final long pooled = OffHeapArena.pooledBytes();
+
+		ByteBuffer block = OffHeapArena.allocate(1 << 20);
+		assertEquals(live + (1 << 20), OffHeapArena.liveBytes());
+		assertTrue(OffHeapArena.peakBytes() >= live + (1 << 20));
+
+		OffHeapArena.free(block);
+		assertEquals(live, OffHeapArena.liveBytes());
+		assertTrue(OffHeapArena.pooledBytes() >= pooled);
+
+		// the first trim may keep memory for the peak the block made, the second has no new peak to keep memory for
+		OffHeapArena.trim();
+		OffHeapArena.trim();
+		assertEquals(0, OffHeapArena.pooledBytes());
+	}
+
+	@Test(expected = OutOfMemoryError.class)
+	public void testTooLarge()
+	{
+		OffHeapArena.allocate(Integer.MAX_VALUE);
+	}
+}
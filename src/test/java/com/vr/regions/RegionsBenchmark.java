@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr.regions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Region lookups for every chunk of an extended scene, as SceneUploader does on a scene
+ * load with hideUnrelatedMaps on. Compares the chunk table with the linear scan and one entry cache
+ * it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegionsBenchmark
+{
+	// chunks along each side of the extended scene
+	private static final int SCENE_CHUNKS = 184 / 8;
+
+	/**
+	 * Map region at the south west corner of the scene
+	 */
+	@Param({"50_50", "30_74", "45_68"})
+	public String region;
+
+	private Regions regions;
+	private List<Region> list;
+	private Region last;
+	private int baseCx;
+	private int baseCy;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		try (InputStream in = Regions.class.getResourceAsStream("regions.txt"))
+		{
+			regions = new Regions(in, "regions.txt");
+		}
+		list = regions.getRegions();
+
+		String[] rxy = region.split("_");
+		baseCx = Integer.parseInt(rxy[0]) * 8;
+		baseCy = Integer.parseInt(rxy[1]) * 8;
+	}
+
+	@Benchmark
+	public void table(Blackhole bh)
+	{
+		for (int cx = baseCx; cx < baseCx + SCENE_CHUNKS; ++cx)
+		{
+			for (int cy = baseCy; cy < baseCy + SCENE_CHUNKS; ++cy)
+			{
+				bh.consume(regions.getRegionId(cx, cy));
+			}
+		}
+	}
+
+	@Benchmark
+	public void scan(Blackhole bh)
+	{
+		for (int cx = baseCx; cx < baseCx + SCENE_CHUNKS; ++cx)
+		{
+			for (int cy = baseCy; cy < baseCy + SCENE_CHUNKS; ++cy)
+			{
+				bh.consume(scan(cx, cy));
+			}
+		}
+	}
+
+	private int scan(int cx, int cy)
+	{
+		if (last != null && contains(last, cx, cy))
+		{
+			return last.id;
+		}
+
+		for (Region r : list)
+		{
+			if (contains(r, cx, cy))
+			{
+				last = r;
+				return r.id;
+			}
+		}
+		return 0;
+	}
+
+	private static boolean contains(Region r, int cx, int cy)
+	{
+		return cx >= r.cx1 && cy >= r.cy1 && cx <= r.cx2 && cy <= r.cy2;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		new Runner(new OptionsBuilder()
+			.include(RegionsBenchmark.class.getSimpleName())
+			.build()).run();
+	}
+}
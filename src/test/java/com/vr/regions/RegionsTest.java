@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2021, Adam <Adam@sigterm.info>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.vr.regions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class RegionsTest
+{
+	// chunks past the last region to check
+	private static final int MARGIN = 16;
+
+	@Test
+	public void testRegionsFile() throws IOException
+	{
+		try (InputStream in = Regions.class.getResourceAsStream("regions.txt"))
+		{
+			assertMatchesScan(new Regions(in, "regions.txt"));
+		}
+	}
+
+	@Test
+	public void testOverlappingRegions() throws IOException
+	{
+		Regions regions = new Regions(new StringReader(
+			"n r 10 10\n" +
+			"n R 9 9 11 11\n" +
+			"n m 10 10 C 2 2 30 30\n" +
+			"n m 12 12 c -1 -1\n" +
+			"n m 0 0 C -3 -3 2 2\n"), "test");
+
+		// the first region in the file wins where they overlap
+		assertEquals(1, regions.getRegionId(80, 80));
+		assertEquals(1, regions.getRegionId(87, 87));
+		assertEquals(2, regions.getRegionId(72, 72));
+		assertEquals(2, regions.getRegionId(88, 92));
+		assertEquals(3, regions.getRegionId(100, 100));
+		// entirely covered by the second region
+		assertEquals(2, regions.getRegionId(95, 95));
+		assertEquals(5, regions.getRegionId(0, 0));
+		assertEquals(5, regions.getRegionId(2, 2));
+		assertEquals(0, regions.getRegionId(3, 3));
+		assertEquals(0, regions.getRegionId(200, 200));
+		assertMatchesScan(regions);
+	}
+
+	/**
+	 * Check the chunk table against a linear scan of the regions in file order, for every chunk of the map
+	 */
+	private static void assertMatchesScan(Regions regions)
+	{
+		List<Region> list = regions.getRegions();
+		int maxCx = 0, maxCy = 0;
+		for (Region r : list)
+		{
+			maxCx = Math.max(maxCx, r.cx2);
+			maxCy = Math.max(maxCy, r.cy2);
+		}
+
+		for (int cx = 0; cx <= maxCx + MARGIN; ++cx)
+		{
+			for (int cy = 0; cy <= maxCy + MARGIN; ++cy)
+			{
+				assertEquals("chunk " + cx + ", " + cy, scan(list, cx, cy), regions.getRegionId(cx, cy));
+			}
+		}
+	}
+
+	private static int scan(List<Region> regions, int cx, int cy)
+	{
+		for (Region r : regions)
+		{
+			if (cx >= r.cx1 && cy >= r.cy1 && cx <= r.cx2 && cy <= r.cy2)
+			{
+				return r.id;
+			}
+		}
+		return 0;
+	}
+}